@@ -0,0 +1,118 @@
+package no.companybook;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The fuzzy stage and whole runs of the detector over synthetic corpora of growing size, which is where
+ * a superlinear cost shows up first. Select sizes with -p, e.g.
+ * java -jar target/benchmarks.jar CheckDuplicatesBenchmark -p size=1000,100000 -prof gc
+ * <p>
+ * The largest corpus needs a few GB of heap, see the jvmArgs of the fork. The cost of the {@link DetectorMetrics}
+ * shows with -p metrics=false,true, the effect of the {@link NeighbourhoodCache} with -p neighbourhoodCacheSize=0,8192.
+ * The pipelined run prepares the names on the given number of workers, select them with -p workers=1,2,4.
+ * Compare the allocations of the pairs and of the clusters of a run with checkDuplicates.* -prof gc.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class CheckDuplicatesBenchmark {
+
+    private static final int QUERY_SIZE = 1024;
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"false"})
+    public boolean metrics;
+
+    @Param({"8192"})
+    public int neighbourhoodCacheSize;
+
+    @Param({"2"})
+    public int workers;
+
+    private List<String> names;
+    private String[] queryFirstNames;
+    private String[] queryLastNames;
+    private NameIndex nameIndex;
+    private NameDuplicationDetector nameDuplicationDetector;
+    private int next;
+
+
+    @Setup
+    public void setUp() throws IOException {
+
+        NameCorpus nameCorpus = new NameCorpus();
+        names = nameCorpus.generate(size, 42);
+        nameDuplicationDetector = new NameDuplicationDetector();
+        if (metrics)
+            nameDuplicationDetector.setMetrics(new DetectorMetrics());
+        nameDuplicationDetector.setNeighbourhoodCacheSize(neighbourhoodCacheSize);
+
+        // the index of a sequential run over the corpus, probed with names from another corpus.
+        nameIndex = new InMemoryNameIndex();
+        for (String name : names) {
+            if (nameDuplicationDetector.findDuplicate(name, nameIndex) == null)
+                nameDuplicationDetector.acceptName(name, nameIndex);
+        }
+
+        List<String> queries = nameCorpus.generate(QUERY_SIZE, 7);
+        queryFirstNames = new String[QUERY_SIZE];
+        queryLastNames = new String[QUERY_SIZE];
+        for (int i = 0; i < QUERY_SIZE; i++) {
+
+            String[] firstLastNameSplits = nameDuplicationDetector.eliminateMiddleNames(queries.get(i)).split("\\s");
+            queryFirstNames[i] = firstLastNameSplits[0];
+            queryLastNames[i] = firstLastNameSplits[firstLastNameSplits.length - 1];
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public String checkDuplicatesByCombinations() {
+
+        int i = next++ & (QUERY_SIZE - 1);
+        return nameDuplicationDetector.checkDuplicatesByCombinations(queryFirstNames[i], queryLastNames[i], nameIndex);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public List<Pair<String, String>> checkDuplicates() {
+        return nameDuplicationDetector.checkDuplicates(names);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public DuplicateClusters checkDuplicateClusters() {
+        return nameDuplicationDetector.checkDuplicateClusters(names);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public List<Pair<String, String>> checkDuplicatesPipelined() {
+
+        final List<Pair<String, String>> duplicates = new ArrayList<>();
+        nameDuplicationDetector.checkDuplicatesPipelined(names.iterator(), new DuplicateSink() {
+            @Override
+            public void accept(Pair<String, String> duplicate) {
+                duplicates.add(duplicate);
+            }
+        }, workers);
+
+        return duplicates;
+    }
+}
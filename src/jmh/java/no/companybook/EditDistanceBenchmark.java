@@ -0,0 +1,99 @@
+package no.companybook;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One last name compared against a batch of other last names, the way the fuzzy stage verifies the
+ * candidates of a last name: the full distance by dynamic programming and by {@link BitParallelDistance},
+ * and the check for distance one by the banded kernel and by {@link BitParallelDistance}, e.g.
+ * java -jar target/benchmarks.jar EditDistanceBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EditDistanceBenchmark {
+
+    private static final int SAMPLE_SIZE = 1024;
+    private static final int BATCH_SIZE = 32;
+
+    private String[] lastNames;
+    private NameDuplicationDetector nameDuplicationDetector;
+    private BitParallelDistance bitParallelDistance;
+    private int next;
+
+
+    @Setup
+    public void setUp() throws IOException {
+
+        List<String> sample = new NameCorpus().generate(SAMPLE_SIZE, 42);
+        nameDuplicationDetector = new NameDuplicationDetector();
+        bitParallelDistance = new BitParallelDistance();
+
+        lastNames = new String[SAMPLE_SIZE];
+        for (int i = 0; i < SAMPLE_SIZE; i++)
+            lastNames[i] = nameDuplicationDetector.getLastNameOnly(sample.get(i));
+    }
+
+    @Benchmark
+    public int dynamicProgrammingDistance() {
+
+        int i = nextIndex();
+        int sum = 0;
+        for (int j = 1; j <= BATCH_SIZE; j++)
+            sum += nameDuplicationDetector.computeLevenshteinDistance(lastNames[i], lastNames[(i + j) & (SAMPLE_SIZE - 1)]);
+
+        return sum;
+    }
+
+    @Benchmark
+    public int bitParallelDistance() {
+
+        int i = nextIndex();
+        bitParallelDistance.setPattern(lastNames[i]);
+
+        int sum = 0;
+        for (int j = 1; j <= BATCH_SIZE; j++)
+            sum += bitParallelDistance.distance(lastNames[(i + j) & (SAMPLE_SIZE - 1)]);
+
+        return sum;
+    }
+
+    @Benchmark
+    public int bandedWithinDistanceOne() {
+
+        int i = nextIndex();
+        int count = 0;
+        for (int j = 1; j <= BATCH_SIZE; j++) {
+            if (nameDuplicationDetector.withinDistance(lastNames[i], lastNames[(i + j) & (SAMPLE_SIZE - 1)], 1))
+                count++;
+        }
+
+        return count;
+    }
+
+    @Benchmark
+    public int bitParallelWithinDistanceOne() {
+
+        int i = nextIndex();
+        bitParallelDistance.setPattern(lastNames[i]);
+
+        int count = 0;
+        for (int j = 1; j <= BATCH_SIZE; j++) {
+            if (bitParallelDistance.withinDistance(lastNames[(i + j) & (SAMPLE_SIZE - 1)], 1))
+                count++;
+        }
+
+        return count;
+    }
+
+    private int nextIndex() {
+        return next++ & (SAMPLE_SIZE - 1);
+    }
+}
@@ -0,0 +1,86 @@
+package no.companybook;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The last names within distance two of a last name, found by the bounded search of a {@link LastNameTrie}
+ * and by comparing the last name with every indexed one through {@link BitParallelDistance}, over the last
+ * names of corpora of growing size, e.g.
+ * java -jar target/benchmarks.jar LastNameSearchBenchmark -p size=10000,1000000
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class LastNameSearchBenchmark {
+
+    private static final int QUERY_SIZE = 1024;
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    @Param({"2"})
+    public int maxDistance;
+
+    private String[] lastNames;
+    private String[] queryLastNames;
+    private LastNameTrie lastNameTrie;
+    private BitParallelDistance bitParallelDistance;
+    private int next;
+
+
+    @Setup
+    public void setUp() throws IOException {
+
+        NameCorpus nameCorpus = new NameCorpus();
+        NameDuplicationDetector nameDuplicationDetector = new NameDuplicationDetector();
+
+        Set<String> distinctLastNames = new LinkedHashSet<>();
+        for (String name : nameCorpus.generate(size, 42))
+            distinctLastNames.add(nameDuplicationDetector.getLastNameOnly(name));
+        lastNames = distinctLastNames.toArray(new String[distinctLastNames.size()]);
+
+        lastNameTrie = new LastNameTrie();
+        for (String lastName : lastNames)
+            lastNameTrie.add(lastName);
+
+        List<String> queries = nameCorpus.generate(QUERY_SIZE, 7);
+        queryLastNames = new String[QUERY_SIZE];
+        for (int i = 0; i < QUERY_SIZE; i++)
+            queryLastNames[i] = nameDuplicationDetector.getLastNameOnly(queries.get(i));
+
+        bitParallelDistance = new BitParallelDistance();
+    }
+
+    @Benchmark
+    public List<String> trieSearch() {
+        return lastNameTrie.findWithinDistance(queryLastNames[nextIndex()], maxDistance);
+    }
+
+    @Benchmark
+    public List<String> linearScan() {
+
+        bitParallelDistance.setPattern(queryLastNames[nextIndex()]);
+
+        List<String> found = new ArrayList<>();
+        for (String lastName : lastNames) {
+            if (bitParallelDistance.withinDistance(lastName, maxDistance))
+                found.add(lastName);
+        }
+
+        return found;
+    }
+
+    private int nextIndex() {
+        return next++ & (QUERY_SIZE - 1);
+    }
+}
@@ -0,0 +1,157 @@
+package no.companybook;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Synthetic input names of any size for the benchmarks, generated from the tokens of names.input and
+ * the first names of Firstnames.txt.
+ * <p>
+ * Last names are drawn from a pool which grows with the corpus, spliced together from the bundled last
+ * names, so that large corpora do not consist of exact repetitions. Every tenth name on average is derived
+ * from an earlier one the way the detector expects duplicates to look: identical, with flipped name parts,
+ * with an added middle name, with a variation of the first name, or with a misspelled last name. The same
+ * size and seed always give the same corpus.
+ */
+final class NameCorpus {
+
+    private static final double DUPLICATE_RATIO = 0.1;
+    private static final double MIDDLE_NAME_RATIO = 0.2;
+
+    private final List<String> firstNames = new ArrayList<>();
+    private final List<String> middleNames = new ArrayList<>();
+    private final List<String> lastNames = new ArrayList<>();
+    private final Map<String, List<String>> firstNameVariants = new HashMap<>();
+
+
+    NameCorpus() throws IOException {
+
+        Set<String> first = new LinkedHashSet<>();
+        Set<String> middle = new LinkedHashSet<>();
+        Set<String> last = new LinkedHashSet<>();
+
+        for (String line : readLines("data/names.input")) {
+
+            String[] tokens = line.trim().split("\\s+");
+            if (tokens.length < 2)
+                continue;
+
+            first.add(tokens[0]);
+            last.add(tokens[tokens.length - 1]);
+            for (int i = 1; i < tokens.length - 1; i++)
+                middle.add(tokens[i]);
+        }
+
+        for (String line : readLines("data/Firstnames.txt")) {
+
+            String[] keyValueSplits = line.split("-");
+            String key = keyValueSplits[0].trim();
+            List<String> variants = new ArrayList<>();
+            for (String variant : keyValueSplits[1].split(","))
+                variants.add(variant.trim());
+
+            first.add(key);
+            firstNameVariants.put(key, variants);
+        }
+
+        firstNames.addAll(first);
+        middleNames.addAll(middle);
+        lastNames.addAll(last);
+    }
+
+    List<String> generate(int size, long seed) {
+
+        Random random = new Random(seed);
+        List<String> lastNamePool = lastNamePool(Math.max(lastNames.size(), size / 20), random);
+        List<String> names = new ArrayList<>(size);
+
+        while (names.size() < size) {
+
+            if (names.size() > 0 && random.nextDouble() < DUPLICATE_RATIO) {
+                names.add(duplicate(names.get(random.nextInt(names.size())), random));
+                continue;
+            }
+
+            StringBuilder name = new StringBuilder();
+            name.append(pick(firstNames, random)).append(' ');
+            if (!middleNames.isEmpty() && random.nextDouble() < MIDDLE_NAME_RATIO)
+                name.append(pick(middleNames, random)).append(' ');
+            name.append(pick(lastNamePool, random));
+
+            names.add(name.toString());
+        }
+
+        return names;
+    }
+
+    private List<String> lastNamePool(int size, Random random) {
+
+        Set<String> pool = new LinkedHashSet<>(lastNames);
+
+        // splice the head of one last name onto the tail of another one.
+        while (pool.size() < size) {
+
+            String head = pick(lastNames, random);
+            String tail = pick(lastNames, random);
+            pool.add(head.substring(0, 1 + random.nextInt(head.length())) + tail.substring(random.nextInt(tail.length())));
+        }
+
+        return new ArrayList<>(pool);
+    }
+
+    private String duplicate(String name, Random random) {
+
+        String[] tokens = name.split(" ");
+        String firstName = tokens[0];
+        String lastName = tokens[tokens.length - 1];
+
+        switch (random.nextInt(5)) {
+            case 0:
+                return name;
+            case 1:
+                return lastName + " " + firstName;
+            case 2:
+                return middleNames.isEmpty() ? name : firstName + " " + pick(middleNames, random) + " " + lastName;
+            case 3:
+                List<String> variants = firstNameVariants.get(firstName);
+                return (variants == null) ? name : pick(variants, random) + " " + lastName;
+            default:
+                return firstName + " " + misspell(lastName, random);
+        }
+    }
+
+    private static String misspell(String lastName, Random random) {
+
+        StringBuilder misspelled = new StringBuilder(lastName);
+        int position = random.nextInt(lastName.length());
+        char c = (char) ('a' + random.nextInt(26));
+
+        switch (random.nextInt(3)) {
+            case 0:
+                misspelled.setCharAt(position, c);
+                break;
+            case 1:
+                misspelled.insert(position, c);
+                break;
+            default:
+                if (lastName.length() > 1)
+                    misspelled.deleteCharAt(position);
+        }
+
+        return misspelled.toString();
+    }
+
+    private static String pick(List<String> values, Random random) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    private static List<String> readLines(String resource) throws IOException {
+
+        try (InputStream input = NameCorpus.class.getClassLoader().getResourceAsStream(resource)) {
+            return IOUtils.readLines(input, "UTF-8");
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package no.companybook;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per name building blocks of the detector, each invocation processing the next name of a fixed
+ * sample of synthetic names. Run with -prof gc to see the allocation per call, e.g.
+ * java -jar target/benchmarks.jar NameMethodsBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class NameMethodsBenchmark {
+
+    private static final int SAMPLE_SIZE = 1024;
+
+    private String[] names;
+    private String[] lastNames;
+    private NameDuplicationDetector nameDuplicationDetector;
+    private int next;
+
+
+    @Setup
+    public void setUp() throws IOException {
+
+        List<String> sample = new NameCorpus().generate(SAMPLE_SIZE, 42);
+        names = sample.toArray(new String[SAMPLE_SIZE]);
+
+        nameDuplicationDetector = new NameDuplicationDetector();
+        lastNames = new String[SAMPLE_SIZE];
+        for (int i = 0; i < SAMPLE_SIZE; i++)
+            lastNames[i] = nameDuplicationDetector.getLastNameOnly(names[i]);
+    }
+
+    @Benchmark
+    public int computeLevenshteinDistance() {
+
+        int i = nextIndex();
+        return nameDuplicationDetector.computeLevenshteinDistance(lastNames[i], lastNames[(i + 1) & (SAMPLE_SIZE - 1)]);
+    }
+
+    @Benchmark
+    public boolean withinDistance() {
+
+        int i = nextIndex();
+        return nameDuplicationDetector.withinDistance(lastNames[i], lastNames[(i + 1) & (SAMPLE_SIZE - 1)], 1);
+    }
+
+    @Benchmark
+    public String sortString() {
+        return nameDuplicationDetector.sortString(names[nextIndex()]);
+    }
+
+    @Benchmark
+    public String eliminateMiddleNames() {
+        return nameDuplicationDetector.eliminateMiddleNames(names[nextIndex()]);
+    }
+
+    private int nextIndex() {
+        return next++ & (SAMPLE_SIZE - 1);
+    }
+}
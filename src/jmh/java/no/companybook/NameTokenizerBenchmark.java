@@ -0,0 +1,82 @@
+package no.companybook;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Preprocessing of a name into the keys of the exact and the flip stage, its first name and its last name,
+ * with the String methods of the detector as they were before {@link NameTokenizer}, against the tokenizer.
+ * Run with -prof gc to compare the allocation rate, e.g.
+ * java -jar target/benchmarks.jar NameTokenizerBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class NameTokenizerBenchmark {
+
+    private String[] names;
+    private NameDuplicationDetector nameDuplicationDetector;
+    private NameTokenizer nameTokenizer;
+
+
+    @Setup
+    public void setUp() throws IOException {
+
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream("data/names.input")) {
+            List<String> lines = IOUtils.readLines(input, "UTF-8");
+            names = lines.toArray(new String[lines.size()]);
+        }
+
+        nameDuplicationDetector = new NameDuplicationDetector();
+        nameTokenizer = new NameTokenizer();
+    }
+
+    @Benchmark
+    public void stringMethods(Blackhole blackhole) {
+
+        for (String name : names) {
+
+            String firstLastNameOnly = nameDuplicationDetector.eliminateMiddleNames(name);
+            blackhole.consume(sort(firstLastNameOnly));
+            blackhole.consume(sort(nameDuplicationDetector.flipOrderOfNameParts(firstLastNameOnly)));
+            blackhole.consume(firstLastNameOnly.split("\\s")[0]);
+            blackhole.consume(nameDuplicationDetector.getLastNameOnly(name));
+            blackhole.consume(sort(name));
+        }
+    }
+
+    @Benchmark
+    public void tokenizer(Blackhole blackhole) {
+
+        for (String name : names) {
+
+            if (!nameTokenizer.tokenize(name))
+                continue;
+
+            // the key buffer is reused, its length stands in for consuming the key.
+            blackhole.consume(nameTokenizer.getFirstLastNameKey().length());
+            blackhole.consume(nameTokenizer.getFirstName());
+            blackhole.consume(nameTokenizer.getLastName());
+            blackhole.consume(nameTokenizer.getNameKey().length());
+        }
+    }
+
+    // sortString as it was before the tokenizer.
+    private static String sort(String unsorted) {
+
+        char[] unsortedArray = unsorted.toLowerCase().toCharArray();
+        Arrays.sort(unsortedArray);
+
+        return new String(unsortedArray);
+    }
+}
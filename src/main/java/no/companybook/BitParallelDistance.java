@@ -0,0 +1,160 @@
+package no.companybook;
+
+
+/**
+ * Levenshtein distance of one pattern to many targets with Myers' bit-vector algorithm, in the formulation
+ * of Hyyrö.
+ * <p>
+ * The column of the dynamic programming matrix for a target char is kept as two bit vectors of vertical
+ * deltas in a long, one bit per pattern char, and the whole column is updated with a few word operations
+ * instead of one cell at a time. The match masks of the pattern chars are computed once by
+ * {@link #setPattern(CharSequence)} and serve every target compared afterwards, which is how the fuzzy
+ * stage verifies the last name candidates of a last name. Chars are compared as they are, like
+ * {@link NameDuplicationDetector#computeLevenshteinDistance(String, String)} does.
+ * <p>
+ * Patterns are limited to 64 chars, the bits of a long, which is where callers fall back to the dynamic
+ * programming methods. Instances hold the masks and are not thread safe.
+ */
+final class BitParallelDistance {
+
+    static final int MAX_PATTERN_LENGTH = Long.SIZE;
+
+    private static final int LATIN_LIMIT = 0x100;
+
+    // match masks of the pattern chars, chars beyond Latin-1 are looked up in the pattern order.
+    private final long[] latinMasks = new long[LATIN_LIMIT];
+    private final char[] otherChars = new char[MAX_PATTERN_LENGTH];
+    private final long[] otherMasks = new long[MAX_PATTERN_LENGTH];
+    private int otherCount;
+
+    private final char[] patternChars = new char[MAX_PATTERN_LENGTH];
+    private int patternLength;
+    private long lastBit;
+
+
+    /**
+     * Computes the match masks of the pattern, or returns false if it is longer than 64 chars.
+     */
+    boolean setPattern(CharSequence pattern) {
+
+        clear();
+
+        if (pattern.length() > MAX_PATTERN_LENGTH)
+            return false;
+
+        this.patternLength = pattern.length();
+        this.lastBit = (patternLength == 0) ? 0 : 1L << (patternLength - 1);
+
+        for (int i = 0; i < patternLength; i++) {
+
+            char c = pattern.charAt(i);
+            patternChars[i] = c;
+            if (c < LATIN_LIMIT) {
+                latinMasks[c] |= 1L << i;
+                continue;
+            }
+
+            int slot = otherSlot(c);
+            if (slot < 0) {
+                slot = otherCount++;
+                otherChars[slot] = c;
+            }
+            otherMasks[slot] |= 1L << i;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the Levenshtein distance of the pattern and the target.
+     */
+    int distance(CharSequence target) {
+        return distance(target, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Checks whether the Levenshtein distance of the pattern and the target is at most max.
+     */
+    boolean withinDistance(CharSequence target, int max) {
+
+        // the length difference alone is a lower bound of the distance.
+        if (Math.abs(target.length() - patternLength) > max)
+            return false;
+
+        return distance(target, max) <= max;
+    }
+
+    /**
+     * The distance, or any value above max as soon as the distance is known to exceed it.
+     */
+    private int distance(CharSequence target, int max) {
+
+        int targetLength = target.length();
+        if (patternLength == 0)
+            return targetLength;
+
+        long positive = -1L;
+        long negative = 0;
+        int score = patternLength;
+
+        for (int j = 0; j < targetLength; j++) {
+
+            long match = mask(target.charAt(j));
+            long vertical = match | negative;
+            long horizontal = (((match & positive) + positive) ^ positive) | match;
+            long horizontalPositive = negative | ~(horizontal | positive);
+            long horizontalNegative = positive & horizontal;
+
+            if ((horizontalPositive & lastBit) != 0)
+                score++;
+            else if ((horizontalNegative & lastBit) != 0)
+                score--;
+
+            // the score drops by at most one per remaining target char.
+            if (score - (targetLength - j - 1) > max)
+                return max + 1;
+
+            // the first row of the matrix grows by one per target char.
+            horizontalPositive = (horizontalPositive << 1) | 1;
+            horizontalNegative = horizontalNegative << 1;
+            positive = horizontalNegative | ~(vertical | horizontalPositive);
+            negative = horizontalPositive & vertical;
+        }
+
+        return score;
+    }
+
+    private long mask(char c) {
+
+        if (c < LATIN_LIMIT)
+            return latinMasks[c];
+
+        int slot = otherSlot(c);
+        return (slot < 0) ? 0 : otherMasks[slot];
+    }
+
+    private int otherSlot(char c) {
+
+        for (int i = 0; i < otherCount; i++) {
+            if (otherChars[i] == c)
+                return i;
+        }
+
+        return -1;
+    }
+
+    // only the masks of the previous pattern's chars are set.
+    private void clear() {
+
+        for (int i = 0; i < patternLength; i++) {
+            if (patternChars[i] < LATIN_LIMIT)
+                latinMasks[patternChars[i]] = 0;
+        }
+
+        for (int i = 0; i < otherCount; i++)
+            otherMasks[i] = 0;
+
+        otherCount = 0;
+        patternLength = 0;
+    }
+}
@@ -0,0 +1,87 @@
+package no.companybook;
+
+
+/**
+ * Blocked Bloom filter of 64 bit hashes: the upper half of a hash selects one 64 bit word, and six bits of
+ * it are set from six bit slices of the lower half, so a lookup touches a single cache line. With ten bits per
+ * hash its false positive rate at capacity is about two percent, a little above a classic Bloom filter of the
+ * same size, which would touch one cache line per bit. The hashes have to be well mixed, see {@link #mix(long)}.
+ * Instances are not thread safe.
+ */
+final class BloomFilter {
+
+    private static final int BITS_PER_HASH = 10;
+    private static final int PROBES = 6;
+
+    private final long[] words;
+    private final int wordMask;
+    private final int capacity;
+    private int size;
+
+
+    /**
+     * A filter for the given number of hashes, past which the false positive rate rises.
+     */
+    BloomFilter(int capacity) {
+
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be at least one");
+
+        int wordCount = 1;
+        while ((long) wordCount * 64 < (long) capacity * BITS_PER_HASH)
+            wordCount <<= 1;
+
+        this.words = new long[wordCount];
+        this.wordMask = wordCount - 1;
+        this.capacity = capacity;
+    }
+
+    void add(long hash) {
+
+        words[(int) (hash >>> 32) & wordMask] |= bits(hash);
+        size++;
+    }
+
+    /**
+     * Returns false if the hash has certainly not been added, true if it may have been.
+     */
+    boolean mightContain(long hash) {
+
+        long bits = bits(hash);
+        return (words[(int) (hash >>> 32) & wordMask] & bits) == bits;
+    }
+
+    private static long bits(long hash) {
+
+        long bits = 0;
+        for (int i = 0; i < PROBES; i++)
+            bits |= 1L << (hash >>> (i * 6));
+
+        return bits;
+    }
+
+    /**
+     * Returns the number of hashes added, counting repeated ones every time.
+     */
+    int size() {
+        return size;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * The murmur3 finalizer, spreading the bits of a hash over both halves.
+     */
+    static long mix(long hash) {
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb93fe53e94ebL;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+}
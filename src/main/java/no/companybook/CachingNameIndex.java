@@ -0,0 +1,133 @@
+package no.companybook;
+
+
+import java.util.*;
+
+/**
+ * {@link NameIndex} which keeps the last name neighbourhoods looked up by the fuzzy matching stage in a
+ * {@link NeighbourhoodCache}, on top of any other index.
+ * <p>
+ * {@link #getLastNameCandidates(String)} answers with the indexed last names within distance one, already
+ * verified, which the caller's own verification leaves as they are. Recurring last names thus skip the
+ * lookups of their deletion keys and the distance computations. A neighbourhood only changes when a last
+ * name within distance one enters or leaves the index, so adding and removing last names invalidates the
+ * cached neighbourhoods incrementally, and only when the set of last names changes: further names with an
+ * indexed last name keep every cached entry. Everything else is passed on to the wrapped index.
+ * <p>
+ * Instances are not thread safe, like the cache.
+ */
+public class CachingNameIndex implements NameIndex {
+
+    private final NameIndex nameIndex;
+    private final NeighbourhoodCache neighbourhoodCache;
+
+
+    public CachingNameIndex(NameIndex nameIndex, int maximumCacheSize) {
+
+        if (nameIndex == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        this.nameIndex = nameIndex;
+        this.neighbourhoodCache = new NeighbourhoodCache(maximumCacheSize);
+    }
+
+    public NeighbourhoodCache getNeighbourhoodCache() {
+        return neighbourhoodCache;
+    }
+
+    @Override
+    public String get(CharSequence sortedName) {
+        return nameIndex.get(sortedName);
+    }
+
+    @Override
+    public String put(CharSequence sortedName, String originalName) {
+        return nameIndex.put(sortedName, originalName);
+    }
+
+    @Override
+    public void addLastName(String lastName) {
+
+        boolean indexed = nameIndex.containsLastName(lastName);
+        nameIndex.addLastName(lastName);
+
+        if (!indexed)
+            neighbourhoodCache.invalidateNeighbours(lastName);
+    }
+
+    @Override
+    public void removeLastName(String lastName) {
+
+        if (!nameIndex.containsLastName(lastName))
+            return;
+
+        nameIndex.removeLastName(lastName);
+
+        // the last name only leaves once the last accepted name carrying it is gone.
+        if (!nameIndex.containsLastName(lastName))
+            neighbourhoodCache.invalidateNeighbours(lastName);
+    }
+
+    @Override
+    public boolean containsLastName(String lastName) {
+        return nameIndex.containsLastName(lastName);
+    }
+
+    @Override
+    public List<String> getLastNameCandidates(String lastName) {
+
+        if (lastName == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        List<String> neighbours = neighbourhoodCache.get(lastName);
+        if (neighbours != null)
+            return neighbours;
+
+        List<String> verified = new ArrayList<>();
+        for (String candidate : nameIndex.getLastNameCandidates(lastName)) {
+            if (LastNameIndex.withinDistanceOne(lastName, candidate))
+                verified.add(candidate);
+        }
+
+        neighbours = Collections.unmodifiableList(verified);
+        neighbourhoodCache.put(lastName, neighbours);
+
+        return neighbours;
+    }
+
+    // only the neighbourhoods of distance one are cached.
+    @Override
+    public List<String> getLastNamesWithinDistance(String lastName, int maxDistance) {
+        return nameIndex.getLastNamesWithinDistance(lastName, maxDistance);
+    }
+
+    @Override
+    public String getBlockedName(CharSequence blockingKey) {
+        return nameIndex.getBlockedName(blockingKey);
+    }
+
+    @Override
+    public void addBlockedName(CharSequence blockingKey, String originalName) {
+        nameIndex.addBlockedName(blockingKey, originalName);
+    }
+
+    @Override
+    public int size() {
+        return nameIndex.size();
+    }
+
+    @Override
+    public Iterator<Pair<String, String>> entries() {
+        return nameIndex.entries();
+    }
+
+    @Override
+    public Iterator<Pair<String, Integer>> lastNames() {
+        return nameIndex.lastNames();
+    }
+
+    @Override
+    public Iterator<Pair<String, String>> blockedNames() {
+        return nameIndex.blockedNames();
+    }
+}
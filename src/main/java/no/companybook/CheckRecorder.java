@@ -0,0 +1,45 @@
+package no.companybook;
+
+
+/**
+ * Records the checks of {@link NameDuplicationDetector} for the flight recorder, see {@link NameCheckEvent}
+ * and {@link FuzzyStageEvent}. The events only exist from Java 11 (and 8u262) onwards, so the detector looks
+ * up {@link JfrCheckRecorder} reflectively, and falls back to {@link #NONE} on a JVM without jdk.jfr.
+ * <p>
+ * A check is begun before its first probe, and the object returned is handed back when it ends.
+ * Implementations are safe to use from any thread.
+ */
+interface CheckRecorder {
+
+    /**
+     * Records nothing.
+     */
+    CheckRecorder NONE = new CheckRecorder() {
+
+        @Override
+        public Object beginNameCheck() {
+            return null;
+        }
+
+        @Override
+        public void endNameCheck(Object check, String name, DetectorStage stage, boolean duplicate) {
+        }
+
+        @Override
+        public Object beginFuzzyStage() {
+            return null;
+        }
+
+        @Override
+        public void endFuzzyStage(Object check, String firstName, String lastName, int candidates, boolean prefiltered, boolean duplicate) {
+        }
+    };
+
+    Object beginNameCheck();
+
+    void endNameCheck(Object check, String name, DetectorStage stage, boolean duplicate);
+
+    Object beginFuzzyStage();
+
+    void endFuzzyStage(Object check, String firstName, String lastName, int candidates, boolean prefiltered, boolean duplicate);
+}
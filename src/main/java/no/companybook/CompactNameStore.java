@@ -0,0 +1,389 @@
+package no.companybook;
+
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Map from sorted names to original names with the containsKey / get / put semantics of the
+ * HashMap&lt;String, String&gt; it replaces, at a fraction of the memory.
+ * <p>
+ * Keys are hashed to 64 bit longs and kept in an open addressing table of primitive arrays, the sorted and
+ * the original name of an entry are encoded into a paged byte arena. A lookup compares the 64 bit hash first
+ * and resolves collisions against the encoded key in the arena, so no String is kept per entry. Names are
+ * encoded char by char (one byte for ASCII, at most three bytes per char), which decodes back to the exact
+ * same String. With two bytes of length prefix a name of n ASCII chars costs 2n + 2 bytes of arena and about
+ * 16 bytes of table, against some 150 bytes for a HashMap entry with two Strings.
+ * <p>
+ * Replacing the name of an existing key appends a new record, the old one stays in the arena. Instances
+ * are not thread safe.
+ */
+public class CompactNameStore {
+
+    private static final int PAGE_BITS = 20;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int FIRST_PAGE_SIZE = 256;
+    private static final int MAX_PAGES = 1 << (31 - PAGE_BITS);
+    private static final long EMPTY = 0L;
+
+    private long[] hashes;
+    private int[] addresses;
+    private int size;
+    private int resizeThreshold;
+
+    private byte[][] pages = new byte[4][];
+    private int pageCount;
+    private int pagePosition;
+
+
+    public CompactNameStore() {
+        this(16);
+    }
+
+    public CompactNameStore(int expectedSize) {
+
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("Expected size must not be negative");
+
+        int capacity = 16;
+        while (capacity * 3L / 4 < expectedSize)
+            capacity <<= 1;
+
+        allocateTable(capacity);
+    }
+
+    public boolean containsKey(CharSequence sortedName) {
+
+        if (sortedName == null)
+            throw new NullPointerException("Null keys are not allowed");
+
+        return findSlot(sortedName, hash(sortedName)) >= 0;
+    }
+
+    public String get(CharSequence sortedName) {
+
+        if (sortedName == null)
+            throw new NullPointerException("Null keys are not allowed");
+
+        int slot = findSlot(sortedName, hash(sortedName));
+        if (slot < 0)
+            return null;
+
+        return readOriginalName(addresses[slot]);
+    }
+
+    /**
+     * Stores the original name under the sorted name, returning the original name it replaces, or null.
+     */
+    public String put(CharSequence sortedName, String originalName) {
+
+        if (sortedName == null || originalName == null)
+            throw new NullPointerException("Null keys or values are not allowed");
+
+        long hash = hash(sortedName);
+        int slot = findSlot(sortedName, hash);
+
+        if (slot >= 0) {
+
+            String replacedName = readOriginalName(addresses[slot]);
+            addresses[slot] = append(sortedName, originalName);
+            return replacedName;
+        }
+
+        int mask = hashes.length - 1;
+        slot = (int) hash & mask;
+        while (hashes[slot] != EMPTY)
+            slot = (slot + 1) & mask;
+
+        hashes[slot] = hash;
+        addresses[slot] = append(sortedName, originalName);
+
+        if (++size > resizeThreshold)
+            resize();
+
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Iterates the entries as pairs of sorted name and original name.
+     */
+    public Iterator<Pair<String, String>> entries() {
+
+        return new Iterator<Pair<String, String>>() {
+
+            private int slot = nextSlot(0);
+
+            private int nextSlot(int from) {
+
+                while (from < hashes.length && hashes[from] == EMPTY)
+                    from++;
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return slot < hashes.length;
+            }
+
+            @Override
+            public Pair<String, String> next() {
+
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                int address = addresses[slot];
+                slot = nextSlot(slot + 1);
+
+                return new Pair<>(readSortedName(address), readOriginalName(address));
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * 64 bit FNV-1a over the chars, followed by the MurmurHash3 finalizer to spread the low bits which
+     * select the slot. Zero marks an empty slot and is never returned.
+     */
+    static long hash(CharSequence key) {
+
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return (hash == EMPTY) ? 1L : hash;
+    }
+
+    private int findSlot(CharSequence sortedName, long hash) {
+
+        int mask = hashes.length - 1;
+        for (int slot = (int) hash & mask; hashes[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && keyEquals(addresses[slot], sortedName))
+                return slot;
+        }
+
+        return -1;
+    }
+
+    private void allocateTable(int capacity) {
+
+        hashes = new long[capacity];
+        addresses = new int[capacity];
+        resizeThreshold = capacity / 4 * 3;
+    }
+
+    private void resize() {
+
+        long[] oldHashes = hashes;
+        int[] oldAddresses = addresses;
+        allocateTable(oldHashes.length << 1);
+
+        // the stored hashes are enough to place the entries, the arena is not touched.
+        int mask = hashes.length - 1;
+        for (int i = 0; i < oldHashes.length; i++) {
+
+            if (oldHashes[i] == EMPTY)
+                continue;
+
+            int slot = (int) oldHashes[i] & mask;
+            while (hashes[slot] != EMPTY)
+                slot = (slot + 1) & mask;
+
+            hashes[slot] = oldHashes[i];
+            addresses[slot] = oldAddresses[i];
+        }
+    }
+
+    // ---- arena : records of (char count, chars) for the sorted name followed by the original name.
+
+    private int append(CharSequence sortedName, String originalName) {
+
+        int recordSize = encodedSize(sortedName) + encodedSize(originalName);
+
+        if (pageCount == 0 || pagePosition + recordSize > pages[pageCount - 1].length) {
+
+            if (pageCount == MAX_PAGES)
+                throw new IllegalStateException("The name store is limited to 2 GB of names");
+            if (pageCount == pages.length) {
+                byte[][] grown = new byte[pages.length << 1][];
+                System.arraycopy(pages, 0, grown, 0, pages.length);
+                pages = grown;
+            }
+
+            // pages grow from small to PAGE_SIZE, so that small stores stay small, and an oversized record
+            // gets a page of its own.
+            int pageSize = (pageCount == 0) ? FIRST_PAGE_SIZE : Math.min(PAGE_SIZE, pages[pageCount - 1].length << 1);
+            pages[pageCount++] = new byte[Math.max(pageSize, recordSize)];
+            pagePosition = 0;
+        }
+
+        int address = ((pageCount - 1) << PAGE_BITS) | pagePosition;
+        byte[] page = pages[pageCount - 1];
+
+        pagePosition = encode(sortedName, page, pagePosition);
+        pagePosition = encode(originalName, page, pagePosition);
+
+        return address;
+    }
+
+    private boolean keyEquals(int address, CharSequence key) {
+
+        byte[] page = pages[address >>> PAGE_BITS];
+        int position = address & (PAGE_SIZE - 1);
+
+        // the char count is a varint.
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = page[position++];
+            length |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+
+        if (length != key.length())
+            return false;
+
+        for (int i = 0; i < length; i++) {
+
+            int c = page[position++];
+            if (c < 0) {
+                if ((c & 0xe0) == 0xc0) {
+                    c = ((c & 0x1f) << 6) | (page[position++] & 0x3f);
+                } else {
+                    c = ((c & 0x0f) << 12) | ((page[position++] & 0x3f) << 6);
+                    c |= page[position++] & 0x3f;
+                }
+            }
+
+            if (c != key.charAt(i))
+                return false;
+        }
+
+        return true;
+    }
+
+    private String readSortedName(int address) {
+        return decode(pages[address >>> PAGE_BITS], address & (PAGE_SIZE - 1));
+    }
+
+    private String readOriginalName(int address) {
+
+        byte[] page = pages[address >>> PAGE_BITS];
+        return decode(page, skip(page, address & (PAGE_SIZE - 1)));
+    }
+
+    private static String decode(byte[] page, int position) {
+
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = page[position++];
+            length |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+
+            int c = page[position++];
+            if (c < 0) {
+                if ((c & 0xe0) == 0xc0) {
+                    c = ((c & 0x1f) << 6) | (page[position++] & 0x3f);
+                } else {
+                    c = ((c & 0x0f) << 12) | ((page[position++] & 0x3f) << 6);
+                    c |= page[position++] & 0x3f;
+                }
+            }
+            chars[i] = (char) c;
+        }
+
+        return new String(chars);
+    }
+
+    // returns the position right after the encoded name starting at the given position.
+    private static int skip(byte[] page, int position) {
+
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = page[position++];
+            length |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+
+        for (int i = 0; i < length; i++) {
+
+            int c = page[position++];
+            if (c < 0)
+                position += ((c & 0xe0) == 0xc0) ? 1 : 2;
+        }
+
+        return position;
+    }
+
+    private static int encodedSize(CharSequence value) {
+
+        int size = varintSize(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            size += (c < 0x80) ? 1 : (c < 0x800) ? 2 : 3;
+        }
+
+        return size;
+    }
+
+    private static int varintSize(int value) {
+
+        int size = 1;
+        while ((value >>>= 7) != 0)
+            size++;
+
+        return size;
+    }
+
+    private static int encode(CharSequence value, byte[] page, int position) {
+
+        int length = value.length();
+        while ((length & ~0x7f) != 0) {
+            page[position++] = (byte) ((length & 0x7f) | 0x80);
+            length >>>= 7;
+        }
+        page[position++] = (byte) length;
+
+        // every char is encoded on its own, surrogates included, so any String decodes back unchanged.
+        for (int i = 0; i < value.length(); i++) {
+
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                page[position++] = (byte) c;
+            } else if (c < 0x800) {
+                page[position++] = (byte) (0xc0 | (c >> 6));
+                page[position++] = (byte) (0x80 | (c & 0x3f));
+            } else {
+                page[position++] = (byte) (0xe0 | (c >> 12));
+                page[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                page[position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+
+        return position;
+    }
+}
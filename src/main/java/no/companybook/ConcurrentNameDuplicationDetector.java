@@ -0,0 +1,125 @@
+package no.companybook;
+
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Long lived duplicate detector for names arriving over time from many threads.
+ * <p>
+ * {@link #checkAndInsert(String)} checks a name against every name accepted so far and accepts it if it is
+ * new, as one atomic step. The names are kept in a {@link ConcurrentNameIndex}. A check first runs without
+ * any lock, which is enough whenever a duplicate is found, as accepted names are never withdrawn. Only a
+ * name which looks new locks the stripes of its conflict hashes, see
+ * {@link NameDuplicationDetector#getConflictHashes(String)}, checks again and is accepted. Two names which
+ * may match each other always share a conflict hash and so a stripe, which keeps two concurrent near
+ * duplicates from both being accepted, while names without anything in common proceed in parallel.
+ * Stripes are taken in ascending order, so threads never wait on each other in a cycle.
+ * <p>
+ * The outcome for every name is the one a sequential run would give for some order of the names.
+ */
+public class ConcurrentNameDuplicationDetector {
+
+    private static final int DEFAULT_STRIPES = 1024;
+
+    private final NameDuplicationDetector nameDuplicationDetector;
+    private final ConcurrentNameIndex nameIndex;
+    private final ReentrantLock[] stripes;
+
+
+    public ConcurrentNameDuplicationDetector() {
+        this(new NameDuplicationDetector(), new ConcurrentNameIndex(), DEFAULT_STRIPES);
+    }
+
+    public ConcurrentNameDuplicationDetector(NameDuplicationDetector nameDuplicationDetector, ConcurrentNameIndex nameIndex, int stripes) {
+
+        if (nameDuplicationDetector == null || nameIndex == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        if (stripes < 1 || Integer.bitCount(stripes) != 1)
+            throw new IllegalArgumentException("The number of stripes must be a positive power of two");
+
+        this.nameDuplicationDetector = nameDuplicationDetector;
+        this.nameIndex = nameIndex;
+        this.stripes = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++)
+            this.stripes[i] = new ReentrantLock();
+    }
+
+    /**
+     * Returns the accepted name the given name duplicates, or accepts the name and returns null.
+     */
+    public String checkAndInsert(String originalName) {
+
+        if (originalName == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        // most duplicates are found without taking any lock.
+        String match = nameDuplicationDetector.findDuplicate(originalName, nameIndex);
+        if (match != null)
+            return match;
+
+        int[] lockedStripes = getStripes(nameDuplicationDetector.getConflictHashes(originalName));
+        int locked = 0;
+
+        try {
+
+            for (; locked < lockedStripes.length; locked++)
+                stripes[lockedStripes[locked]].lock();
+
+            // names accepted in the meantime are visible now.
+            match = nameDuplicationDetector.findDuplicate(originalName, nameIndex);
+            if (match == null)
+                nameDuplicationDetector.acceptName(originalName, nameIndex);
+
+            return match;
+
+        } finally {
+
+            while (locked > 0)
+                stripes[lockedStripes[--locked]].unlock();
+        }
+    }
+
+    /**
+     * Returns the number of accepted names.
+     */
+    public int size() {
+        return nameIndex.size();
+    }
+
+    public NameDuplicationDetector getNameDuplicationDetector() {
+        return nameDuplicationDetector;
+    }
+
+    /**
+     * Returns the index of the accepted names, e.g. to save it with {@link MappedNameIndex#write(NameIndex, java.nio.file.Path)}
+     * once no more names are checked.
+     */
+    public NameIndex getNameIndex() {
+        return nameIndex;
+    }
+
+    // distinct stripes in ascending order.
+    private int[] getStripes(Set<Long> conflictHashes) {
+
+        int[] indexes = new int[conflictHashes.size()];
+        int count = 0;
+
+        for (long hash : conflictHashes) {
+            long spread = hash * 0x9E3779B97F4A7C15L;
+            indexes[count++] = (int) (spread >>> 40) & (stripes.length - 1);
+        }
+
+        Arrays.sort(indexes);
+
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || indexes[distinct - 1] != indexes[i])
+                indexes[distinct++] = indexes[i];
+        }
+
+        return Arrays.copyOf(indexes, distinct);
+    }
+}
@@ -0,0 +1,340 @@
+package no.companybook;
+
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Thread safe {@link NameIndex} for detectors shared by many threads, see {@link ConcurrentNameDuplicationDetector}.
+ * <p>
+ * The accepted names and the blocking keys are split by hash over segments, each a {@link CompactNameStore}
+ * guarded by a read write lock of its own, so that threads only contend when they touch the same segment.
+ * The last names are kept in concurrent maps the same way {@link LastNameIndex} keeps them: lookups do not
+ * lock at all, and the changes of a last name are serialized by a lock stripe chosen by the last name.
+ * Buckets of the deletion neighbourhood are never removed once created, which keeps concurrent additions
+ * from landing in a bucket that has just been dropped. Lookups within distances above one go to a
+ * {@link LastNameTrie}, built on the first such lookup while holding every lock stripe, and locked as a whole.
+ * <p>
+ * Every single method is atomic. Iterators work on a snapshot of each segment taken when they reach it.
+ */
+public class ConcurrentNameIndex implements NameIndex {
+
+    private static final int DEFAULT_SEGMENTS = 64;
+
+    private final CompactNameStore[] nameSegments;
+    private final CompactNameStore[] blockSegments;
+    private final ReadWriteLock[] nameLocks;
+    private final ReadWriteLock[] blockLocks;
+    private final Object[] lastNameLocks;
+    private final int segmentMask;
+
+    private final ConcurrentMap<String, Integer> lastNameCounts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<String>> deletionNeighbourhood = new ConcurrentHashMap<>();
+
+    // written while holding every lock stripe, so a change holding one of them sees it.
+    private volatile LastNameTrie lastNameTrie;
+
+
+    public ConcurrentNameIndex() {
+        this(DEFAULT_SEGMENTS);
+    }
+
+    public ConcurrentNameIndex(int segments) {
+
+        if (segments < 1 || Integer.bitCount(segments) != 1)
+            throw new IllegalArgumentException("The number of segments must be a positive power of two");
+
+        this.nameSegments = new CompactNameStore[segments];
+        this.blockSegments = new CompactNameStore[segments];
+        this.nameLocks = new ReadWriteLock[segments];
+        this.blockLocks = new ReadWriteLock[segments];
+        this.lastNameLocks = new Object[segments];
+        this.segmentMask = segments - 1;
+
+        for (int i = 0; i < segments; i++) {
+            nameSegments[i] = new CompactNameStore();
+            blockSegments[i] = new CompactNameStore();
+            nameLocks[i] = new ReentrantReadWriteLock();
+            blockLocks[i] = new ReentrantReadWriteLock();
+            lastNameLocks[i] = new Object();
+        }
+    }
+
+    @Override
+    public String get(CharSequence sortedName) {
+
+        int segment = segment(sortedName);
+        nameLocks[segment].readLock().lock();
+        try {
+            return nameSegments[segment].get(sortedName);
+        } finally {
+            nameLocks[segment].readLock().unlock();
+        }
+    }
+
+    @Override
+    public String put(CharSequence sortedName, String originalName) {
+
+        int segment = segment(sortedName);
+        nameLocks[segment].writeLock().lock();
+        try {
+            return nameSegments[segment].put(sortedName, originalName);
+        } finally {
+            nameLocks[segment].writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void addLastName(String lastName) {
+
+        if (lastName == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        synchronized (lastNameLocks[lastName.hashCode() & segmentMask]) {
+
+            Integer count = lastNameCounts.get(lastName);
+            lastNameCounts.put(lastName, (count == null) ? 1 : count + 1);
+            if (count != null)
+                return;
+
+            LastNameTrie lastNameTrie = this.lastNameTrie;
+            if (lastNameTrie != null) {
+                synchronized (lastNameTrie) {
+                    lastNameTrie.add(lastName);
+                }
+            }
+
+            for (String key : LastNameIndex.getDeletionKeys(lastName)) {
+
+                Set<String> bucket = deletionNeighbourhood.get(key);
+                if (bucket == null) {
+                    Set<String> newBucket = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>(4));
+                    bucket = deletionNeighbourhood.putIfAbsent(key, newBucket);
+                    if (bucket == null)
+                        bucket = newBucket;
+                }
+                bucket.add(lastName);
+            }
+        }
+    }
+
+    @Override
+    public void removeLastName(String lastName) {
+
+        if (lastName == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        synchronized (lastNameLocks[lastName.hashCode() & segmentMask]) {
+
+            Integer count = lastNameCounts.get(lastName);
+            if (count == null)
+                return;
+
+            if (count > 1) {
+                lastNameCounts.put(lastName, count - 1);
+                return;
+            }
+
+            lastNameCounts.remove(lastName);
+
+            LastNameTrie lastNameTrie = this.lastNameTrie;
+            if (lastNameTrie != null) {
+                synchronized (lastNameTrie) {
+                    lastNameTrie.remove(lastName);
+                }
+            }
+
+            for (String key : LastNameIndex.getDeletionKeys(lastName)) {
+
+                Set<String> bucket = deletionNeighbourhood.get(key);
+                if (bucket != null)
+                    bucket.remove(lastName);
+            }
+        }
+    }
+
+    @Override
+    public boolean containsLastName(String lastName) {
+        return lastNameCounts.containsKey(lastName);
+    }
+
+    @Override
+    public List<String> getLastNameCandidates(String lastName) {
+
+        if (lastName == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        Set<String> candidates = new HashSet<>();
+        for (String key : LastNameIndex.getDeletionKeys(lastName)) {
+
+            Set<String> bucket = deletionNeighbourhood.get(key);
+            if (bucket != null)
+                candidates.addAll(bucket);
+        }
+
+        List<String> sortedCandidates = new ArrayList<>(candidates);
+        Collections.sort(sortedCandidates);
+
+        return sortedCandidates;
+    }
+
+    @Override
+    public List<String> getLastNamesWithinDistance(String lastName, int maxDistance) {
+
+        if (lastName == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        LastNameTrie lastNameTrie = this.lastNameTrie;
+        if (lastNameTrie == null)
+            lastNameTrie = buildLastNameTrie(0);
+
+        synchronized (lastNameTrie) {
+            return lastNameTrie.findWithinDistance(lastName, maxDistance);
+        }
+    }
+
+    // takes the lock stripes one after the other, no last name changes while the trie is filled.
+    private LastNameTrie buildLastNameTrie(int stripe) {
+
+        if (stripe < lastNameLocks.length) {
+            synchronized (lastNameLocks[stripe]) {
+                return buildLastNameTrie(stripe + 1);
+            }
+        }
+
+        // another thread may have built the trie while this one waited for the stripes.
+        if (lastNameTrie == null) {
+
+            LastNameTrie newTrie = new LastNameTrie();
+            for (String indexedLastName : lastNameCounts.keySet())
+                newTrie.add(indexedLastName);
+            lastNameTrie = newTrie;
+        }
+
+        return lastNameTrie;
+    }
+
+    @Override
+    public String getBlockedName(CharSequence blockingKey) {
+
+        int segment = segment(blockingKey);
+        blockLocks[segment].readLock().lock();
+        try {
+            return blockSegments[segment].get(blockingKey);
+        } finally {
+            blockLocks[segment].readLock().unlock();
+        }
+    }
+
+    @Override
+    public void addBlockedName(CharSequence blockingKey, String originalName) {
+
+        int segment = segment(blockingKey);
+        blockLocks[segment].writeLock().lock();
+        try {
+            if (!blockSegments[segment].containsKey(blockingKey))
+                blockSegments[segment].put(blockingKey, originalName);
+        } finally {
+            blockLocks[segment].writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+
+        int size = 0;
+        for (int segment = 0; segment <= segmentMask; segment++) {
+
+            nameLocks[segment].readLock().lock();
+            try {
+                size += nameSegments[segment].size();
+            } finally {
+                nameLocks[segment].readLock().unlock();
+            }
+        }
+
+        return size;
+    }
+
+    @Override
+    public Iterator<Pair<String, String>> entries() {
+        return new SegmentIterator(nameSegments, nameLocks);
+    }
+
+    @Override
+    public Iterator<Pair<String, Integer>> lastNames() {
+
+        List<Pair<String, Integer>> lastNames = new ArrayList<>(lastNameCounts.size());
+        for (Map.Entry<String, Integer> entry : lastNameCounts.entrySet())
+            lastNames.add(new Pair<>(entry.getKey(), entry.getValue()));
+
+        return Collections.unmodifiableList(lastNames).iterator();
+    }
+
+    @Override
+    public Iterator<Pair<String, String>> blockedNames() {
+        return new SegmentIterator(blockSegments, blockLocks);
+    }
+
+    private int segment(CharSequence key) {
+
+        long hash = CompactNameStore.hash(key);
+        return (int) (hash >>> 32) & segmentMask;
+    }
+
+    /**
+     * Walks the segments one after the other, copying each one under its read lock.
+     */
+    private static final class SegmentIterator implements Iterator<Pair<String, String>> {
+
+        private final CompactNameStore[] segments;
+        private final ReadWriteLock[] locks;
+        private int segment;
+        private Iterator<Pair<String, String>> current = Collections.<Pair<String, String>>emptyList().iterator();
+
+        SegmentIterator(CompactNameStore[] segments, ReadWriteLock[] locks) {
+
+            this.segments = segments;
+            this.locks = locks;
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            while (!current.hasNext() && segment < segments.length) {
+
+                List<Pair<String, String>> snapshot;
+                locks[segment].readLock().lock();
+                try {
+                    snapshot = new ArrayList<>(segments[segment].size());
+                    for (Iterator<Pair<String, String>> entries = segments[segment].entries(); entries.hasNext(); )
+                        snapshot.add(entries.next());
+                } finally {
+                    locks[segment].readLock().unlock();
+                }
+
+                current = snapshot.iterator();
+                segment++;
+            }
+
+            return current.hasNext();
+        }
+
+        @Override
+        public Pair<String, String> next() {
+
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            return current.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package no.companybook;
+
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms of the stages of a {@link NameDuplicationDetector}, see {@link DetectorStage}.
+ * <p>
+ * A detector only records into metrics set with {@link NameDuplicationDetector#setMetrics(DetectorMetrics)},
+ * without them the stages skip the clock reads and counters altogether. Every recording is lock free and
+ * may come from any thread. The current state is available as a {@link MetricsSnapshot}, and through JMX
+ * once registered with {@link #registerMBean(String)}. The slowest names are only kept with a
+ * {@link SlowNameReservoir} set with {@link #setSlowNames(SlowNameReservoir)}.
+ */
+public class DetectorMetrics implements DetectorMetricsMXBean {
+
+    private static final String OBJECT_NAME_PREFIX = "no.companybook:type=NameDuplicationDetector,name=";
+
+    private final AtomicLongArray probes = new AtomicLongArray(DetectorStage.values().length);
+    private final AtomicLongArray hits = new AtomicLongArray(DetectorStage.values().length);
+    private final LatencyHistogram[] latencies = new LatencyHistogram[DetectorStage.values().length];
+    private final AtomicLong levenshteinEvaluations = new AtomicLong();
+    private final AtomicLong blockProbes = new AtomicLong();
+    private final AtomicLong indexSize = new AtomicLong();
+    private final AtomicLong neighbourhoodCacheHits = new AtomicLong();
+    private final AtomicLong neighbourhoodCacheMisses = new AtomicLong();
+    private final AtomicLong prefilterRejections = new AtomicLong();
+    private final AtomicLong prefilterFalsePositives = new AtomicLong();
+    private volatile SlowNameReservoir slowNames;
+
+
+    public DetectorMetrics() {
+
+        for (int i = 0; i < latencies.length; i++)
+            latencies[i] = new LatencyHistogram();
+    }
+
+    /**
+     * Records a stage a name went through since the given time, and returns the current time for the next stage.
+     */
+    long recordStage(DetectorStage stage, long startNanos, String match) {
+
+        long now = System.nanoTime();
+        int i = stage.ordinal();
+
+        probes.incrementAndGet(i);
+        if (match != null)
+            hits.incrementAndGet(i);
+        latencies[i].record(now - startNanos);
+
+        return now;
+    }
+
+    void recordLevenshteinEvaluations(int evaluations) {
+        levenshteinEvaluations.addAndGet(evaluations);
+    }
+
+    void recordBlockProbes(int probes) {
+        blockProbes.addAndGet(probes);
+    }
+
+    void recordIndexSize(long size) {
+        indexSize.set(size);
+    }
+
+    void recordNameAdded() {
+        indexSize.incrementAndGet();
+    }
+
+    void recordNeighbourhoodCache(long hits, long misses) {
+
+        neighbourhoodCacheHits.addAndGet(hits);
+        neighbourhoodCacheMisses.addAndGet(misses);
+    }
+
+    /**
+     * Records the answer of the prefilter of the fuzzy stage, and the match of the stage if it passed.
+     */
+    void recordPrefilter(boolean passed, String match) {
+
+        if (!passed)
+            prefilterRejections.incrementAndGet();
+        else if (match == null)
+            prefilterFalsePositives.incrementAndGet();
+    }
+
+    /**
+     * Records the check of a name, decided by the given stage, for the slowest names.
+     */
+    void recordName(String name, DetectorStage stage, long durationNanos) {
+
+        SlowNameReservoir slowNames = this.slowNames;
+        if (slowNames != null)
+            slowNames.record(name, stage, durationNanos);
+    }
+
+    public void setSlowNames(SlowNameReservoir slowNames) {
+        this.slowNames = slowNames;
+    }
+
+    public SlowNameReservoir getSlowNames() {
+        return slowNames;
+    }
+
+    /**
+     * Returns the slowest names with their stage, length and duration, the slowest first, or none if no
+     * reservoir is set.
+     */
+    @Override
+    public List<String> dumpSlowNames() {
+
+        SlowNameReservoir slowNames = this.slowNames;
+        if (slowNames == null)
+            return Collections.emptyList();
+
+        List<String> dump = new ArrayList<>();
+        for (SlowNameReservoir.SlowName slowName : slowNames.getSlowNames())
+            dump.add(slowName.toString());
+
+        return dump;
+    }
+
+    @Override
+    public long getNamesChecked() {
+        return probes.get(DetectorStage.IDENTICAL.ordinal());
+    }
+
+    @Override
+    public long getDuplicatesFound() {
+
+        long duplicates = 0;
+        for (int i = 0; i < hits.length(); i++)
+            duplicates += hits.get(i);
+
+        return duplicates;
+    }
+
+    @Override
+    public long getIndexSize() {
+        return indexSize.get();
+    }
+
+    @Override
+    public MetricsSnapshot getSnapshot() {
+
+        MetricsSnapshot.StageSnapshot[] stages = new MetricsSnapshot.StageSnapshot[latencies.length];
+        for (int i = 0; i < stages.length; i++)
+            stages[i] = new MetricsSnapshot.StageSnapshot(probes.get(i), hits.get(i), latencies[i].snapshot());
+
+        return new MetricsSnapshot(stages, levenshteinEvaluations.get(), blockProbes.get(), indexSize.get(),
+                neighbourhoodCacheHits.get(), neighbourhoodCacheMisses.get(), prefilterRejections.get(), prefilterFalsePositives.get());
+    }
+
+    /**
+     * Sets every counter and histogram back to zero, apart from the index size, and empties the slowest names.
+     */
+    @Override
+    public void reset() {
+
+        for (int i = 0; i < latencies.length; i++) {
+            probes.set(i, 0);
+            hits.set(i, 0);
+            latencies[i].reset();
+        }
+        levenshteinEvaluations.set(0);
+        blockProbes.set(0);
+        neighbourhoodCacheHits.set(0);
+        neighbourhoodCacheMisses.set(0);
+        prefilterRejections.set(0);
+        prefilterFalsePositives.set(0);
+
+        SlowNameReservoir slowNames = this.slowNames;
+        if (slowNames != null)
+            slowNames.reset();
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server under no.companybook:type=NameDuplicationDetector,name=
+     * followed by the given name, and returns the object name to unregister them with.
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+
+        if (name == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        ObjectName objectName = new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+
+        return objectName;
+    }
+}
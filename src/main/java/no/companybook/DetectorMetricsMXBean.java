@@ -0,0 +1,22 @@
+package no.companybook;
+
+
+import java.util.List;
+
+/**
+ * Management interface of {@link DetectorMetrics}, the snapshot shows up as composite data in JMX clients.
+ */
+public interface DetectorMetricsMXBean {
+
+    long getNamesChecked();
+
+    long getDuplicatesFound();
+
+    long getIndexSize();
+
+    MetricsSnapshot getSnapshot();
+
+    List<String> dumpSlowNames();
+
+    void reset();
+}
@@ -0,0 +1,25 @@
+package no.companybook;
+
+
+/**
+ * The stages a name goes through in {@link NameDuplicationDetector}, in order, until one of them finds
+ * the accepted name it duplicates.
+ */
+public enum DetectorStage {
+
+    /**
+     * Probe of the sorted key of the first and last name. For names in the common form, see
+     * {@link NameTokenizer}, it also covers the change of name parts, whose sorted key is the same.
+     */
+    IDENTICAL,
+
+    /**
+     * Probe of the sorted key of the flipped first and last name, only for names outside the common form.
+     */
+    FLIPPED,
+
+    /**
+     * Fuzzy matching of first name variations and last names within distance one.
+     */
+    COMBINATIONS
+}
@@ -0,0 +1,102 @@
+package no.companybook;
+
+
+import java.util.Arrays;
+
+/**
+ * The edit distance up to which the fuzzy matching stage takes a last name for a misspelling of another,
+ * as a function of the length of the last name being checked, see
+ * {@link NameDuplicationDetector#setDistanceThreshold(DistanceThreshold)}.
+ * <p>
+ * Short last names tolerate fewer edits than long ones before they turn into other last names, so a
+ * threshold is given by the shortest length from which every further edit is allowed: byLength(1, 8) allows
+ * one edit from one char on and two from eight chars on, which suits e.g. OCR'd sources. Instances are
+ * immutable.
+ */
+public final class DistanceThreshold {
+
+    /**
+     * One edit for last names of any length, the detector's default.
+     */
+    public static final DistanceThreshold DISTANCE_ONE = fixed(1);
+
+    // minimumLengths[d - 1] is the shortest length of a last name allowed distance d.
+    private final int[] minimumLengths;
+
+
+    private DistanceThreshold(int[] minimumLengths) {
+        this.minimumLengths = minimumLengths;
+    }
+
+    /**
+     * The same distance for last names of any length.
+     */
+    public static DistanceThreshold fixed(int maxDistance) {
+
+        if (maxDistance < 0)
+            throw new IllegalArgumentException("The distance must not be negative");
+
+        return new DistanceThreshold(new int[maxDistance]);
+    }
+
+    /**
+     * Distance d for last names of at least minimumLengths[d - 1] chars, the lengths must not decrease.
+     */
+    public static DistanceThreshold byLength(int... minimumLengths) {
+
+        if (minimumLengths == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        for (int i = 0; i < minimumLengths.length; i++) {
+            if (minimumLengths[i] < 0 || (i > 0 && minimumLengths[i] < minimumLengths[i - 1]))
+                throw new IllegalArgumentException("The lengths must be non negative and must not decrease");
+        }
+
+        return new DistanceThreshold(minimumLengths.clone());
+    }
+
+    /**
+     * Returns the distance allowed for a last name of the given length.
+     */
+    public int getMaxDistance(int length) {
+
+        int maxDistance = 0;
+        while (maxDistance < minimumLengths.length && length >= minimumLengths[maxDistance])
+            maxDistance++;
+
+        return maxDistance;
+    }
+
+    /**
+     * Returns the largest distance allowed for any length.
+     */
+    public int getMaxDistance() {
+        return minimumLengths.length;
+    }
+
+    /**
+     * Returns the shortest length of a last name allowed the given distance, from one up to the largest distance.
+     */
+    public int getMinimumLength(int distance) {
+
+        if (distance < 1 || distance > minimumLengths.length)
+            throw new IllegalArgumentException("The distance must be in 1 .. " + minimumLengths.length);
+
+        return minimumLengths[distance - 1];
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof DistanceThreshold && Arrays.equals(minimumLengths, ((DistanceThreshold) other).minimumLengths);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(minimumLengths);
+    }
+
+    @Override
+    public String toString() {
+        return "DistanceThreshold" + Arrays.toString(minimumLengths);
+    }
+}
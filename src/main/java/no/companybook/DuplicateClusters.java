@@ -0,0 +1,171 @@
+package no.companybook;
+
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Duplicates of a check grouped into clusters of input positions, see
+ * {@link NameDuplicationDetector#checkDuplicateClusters(Iterator)}.
+ * <p>
+ * Every input name is identified by its position, and every duplicate joins the cluster of the name it
+ * matched, so a cluster holds an accepted name together with all its duplicates, and the duplicates of
+ * names matched through different stages end up in one cluster. Only clusters of at least two names are
+ * kept, ordered by their first position, with the positions within a cluster ascending, so the first member
+ * of a cluster is the accepted name.
+ * <p>
+ * The members of all clusters are stored in one int array, cluster after cluster, with the start of every
+ * cluster in another one, and the cluster of a position is found by binary search over the positions in any
+ * cluster, so the result costs three ints per name in a cluster, instead of a pair and a list node per
+ * duplicate, and nothing per name without duplicates. Instances are immutable.
+ */
+public final class DuplicateClusters {
+
+    private static final int SINGLE = -1;
+
+    private final int size;
+    private final int duplicateCount;
+
+    // the members of every cluster one after the other, and where every cluster starts.
+    private final int[] members;
+    private final int[] clusterStarts;
+
+    // the positions in any cluster, ascending, and their clusters.
+    private final int[] clusteredPositions;
+    private final int[] clusterOfPosition;
+
+
+    DuplicateClusters(UnionFind unionFind, int duplicateCount) {
+
+        this.size = unionFind.size();
+        this.duplicateCount = duplicateCount;
+
+        int[] clusterSizes = new int[size];
+        for (int i = 0; i < size; i++)
+            clusterSizes[unionFind.find(i)]++;
+
+        // number the clusters in the order of their first position.
+        int[] clusterOfRoot = new int[size];
+        Arrays.fill(clusterOfRoot, SINGLE);
+        int clusterCount = 0;
+        int memberCount = 0;
+
+        for (int i = 0; i < size; i++) {
+
+            int root = unionFind.find(i);
+            if (clusterSizes[root] > 1 && clusterOfRoot[root] == SINGLE) {
+                clusterOfRoot[root] = clusterCount++;
+                memberCount += clusterSizes[root];
+            }
+        }
+
+        clusterStarts = new int[clusterCount + 1];
+        clusteredPositions = new int[memberCount];
+        clusterOfPosition = new int[memberCount];
+
+        int clustered = 0;
+        for (int i = 0; i < size; i++) {
+
+            int cluster = clusterOfRoot[unionFind.find(i)];
+            if (cluster != SINGLE) {
+                clusterStarts[cluster + 1]++;
+                clusteredPositions[clustered] = i;
+                clusterOfPosition[clustered++] = cluster;
+            }
+        }
+
+        for (int cluster = 0; cluster < clusterCount; cluster++)
+            clusterStarts[cluster + 1] += clusterStarts[cluster];
+
+        members = new int[memberCount];
+        int[] filled = Arrays.copyOf(clusterStarts, clusterCount);
+        for (int i = 0; i < memberCount; i++)
+            members[filled[clusterOfPosition[i]]++] = clusteredPositions[i];
+    }
+
+    /**
+     * Returns the number of input names.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of duplicates, the number of pairs {@link NameDuplicationDetector#checkDuplicates(List)}
+     * returns for the same names.
+     */
+    public int getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /**
+     * Returns the number of clusters of at least two names.
+     */
+    public int getClusterCount() {
+        return clusterStarts.length - 1;
+    }
+
+    /**
+     * Returns the cluster of the name at the position, or -1 if it is neither a duplicate nor duplicated.
+     */
+    public int getCluster(int position) {
+
+        if (position < 0 || position >= size)
+            throw new IndexOutOfBoundsException("Position " + position + " is not in 0 .. " + (size - 1));
+
+        int i = Arrays.binarySearch(clusteredPositions, position);
+        return (i < 0) ? SINGLE : clusterOfPosition[i];
+    }
+
+    /**
+     * Returns the positions of the names in the cluster, ascending.
+     */
+    public int[] getMembers(int cluster) {
+
+        if (cluster < 0 || cluster >= getClusterCount())
+            throw new IndexOutOfBoundsException("Cluster " + cluster + " is not in 0 .. " + (getClusterCount() - 1));
+
+        return Arrays.copyOfRange(members, clusterStarts[cluster], clusterStarts[cluster + 1]);
+    }
+
+    /**
+     * Returns true if the names at both positions are in the same cluster.
+     */
+    public boolean inSameCluster(int position, int otherPosition) {
+
+        int cluster = getCluster(position);
+        return cluster != SINGLE && cluster == getCluster(otherPosition);
+    }
+
+    /**
+     * Iterates the clusters in order, every array is copied when it is reached.
+     */
+    public Iterator<int[]> clusters() {
+
+        return new Iterator<int[]>() {
+
+            private int cluster;
+
+            @Override
+            public boolean hasNext() {
+                return cluster < getClusterCount();
+            }
+
+            @Override
+            public int[] next() {
+
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                return getMembers(cluster++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,12 @@
+package no.companybook;
+
+
+/**
+ * Receives the duplicates identified by the streaming variants of {@link NameDuplicationDetector#checkDuplicates},
+ * in input order and as soon as each one is found. The left side of the pair is the duplicate input name,
+ * the right side the previously accepted name it matches.
+ */
+public interface DuplicateSink {
+
+    void accept(Pair<String, String> duplicate);
+}
@@ -0,0 +1,378 @@
+package no.companybook;
+
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Symmetric lookup of first name variations, compiled from the lines of Firstnames.txt
+ * ("William - Bill, Will, Willy").
+ * <p>
+ * Every line forms a cluster of its canonical name and its variants, and every name, canonical or not, maps
+ * to the ids of the clusters it appears in. Two first names are variations of each other if they share a
+ * cluster, so "Bill" expands to "William" just as "William" expands to "Bill". A name may appear in several
+ * clusters, e.g. "Al" for Albert and Alfred, and clusters are deliberately not merged through such names:
+ * Albert and Alfred are not variations of each other.
+ * <p>
+ * Lookups ignore case. Names, cluster ids and the expanded variations are kept in arrays indexed by name id,
+ * with an open addressing table from name to id, and are never modified after construction.
+ * <p>
+ * The build compiles data/Firstnames.txt into data/Firstnames.bin with {@link FirstNamesCompiler}, a dump of
+ * these arrays which {@link #read(InputStream)} loads without parsing or hashing a single name.
+ */
+final class FirstNameClusters {
+
+    private static final int[] NO_CLUSTERS = new int[0];
+    private static final int MAGIC = 0x464E4331;
+
+    // lower cased names by name id, and the table of name id + 1 by hash, 0 marking an empty slot.
+    private final String[] names;
+    private final int[] table;
+
+    // cluster ids of name i are clusterIds[clusterStarts[i]] .. clusterIds[clusterStarts[i + 1] - 1].
+    private final int[] clusterStarts;
+    private final int[] clusterIds;
+    private final int clusterCount;
+
+    // the members of all clusters of a name, the name itself included, in the order of the file.
+    private final String[][] variants;
+
+
+    private FirstNameClusters(List<List<String>> clusters) {
+
+        // assign name ids in order of first appearance, keeping the spelling of the first appearance.
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        List<String> spellings = new ArrayList<>();
+        List<Set<Integer>> clustersByName = new ArrayList<>();
+
+        for (int cluster = 0; cluster < clusters.size(); cluster++) {
+            for (String name : clusters.get(cluster)) {
+
+                String key = lowerCase(name);
+                Integer id = ids.get(key);
+                if (id == null) {
+                    id = ids.size();
+                    ids.put(key, id);
+                    spellings.add(name);
+                    clustersByName.add(new TreeSet<Integer>());
+                }
+                clustersByName.get(id).add(cluster);
+            }
+        }
+
+        this.clusterCount = clusters.size();
+        this.names = ids.keySet().toArray(new String[ids.size()]);
+
+        int capacity = Integer.highestOneBit(Math.max(8, names.length * 2)) << 1;
+        this.table = new int[capacity];
+        for (int id = 0; id < names.length; id++) {
+
+            int slot = hash(names[id]) & (capacity - 1);
+            while (table[slot] != 0)
+                slot = (slot + 1) & (capacity - 1);
+            table[slot] = id + 1;
+        }
+
+        this.clusterStarts = new int[names.length + 1];
+        int total = 0;
+        for (int id = 0; id < names.length; id++) {
+            clusterStarts[id] = total;
+            total += clustersByName.get(id).size();
+        }
+        clusterStarts[names.length] = total;
+
+        this.clusterIds = new int[total];
+        for (int id = 0; id < names.length; id++) {
+
+            int position = clusterStarts[id];
+            for (int cluster : clustersByName.get(id))
+                clusterIds[position++] = cluster;
+        }
+
+        this.variants = new String[names.length][];
+        for (int id = 0; id < names.length; id++) {
+
+            Set<String> members = new LinkedHashSet<>();
+            for (int cluster : clustersByName.get(id)) {
+                for (String member : clusters.get(cluster))
+                    members.add(spellings.get(ids.get(lowerCase(member))));
+            }
+            variants[id] = members.toArray(new String[members.size()]);
+        }
+    }
+
+    private FirstNameClusters(String[] names, int[] table, int[] clusterStarts, int[] clusterIds, int clusterCount,
+                              String[][] variants) {
+
+        this.names = names;
+        this.table = table;
+        this.clusterStarts = clusterStarts;
+        this.clusterIds = clusterIds;
+        this.clusterCount = clusterCount;
+        this.variants = variants;
+    }
+
+    /**
+     * Compiles the lines of the first names file, each of the form "Name - Variant, Variant, ...". Blank
+     * lines are skipped.
+     */
+    static FirstNameClusters parse(List<String> lines) {
+
+        if (lines == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        List<List<String>> clusters = new ArrayList<>();
+
+        for (String line : lines) {
+
+            if (line.trim().isEmpty())
+                continue;
+
+            String[] keyValueSplits = line.split("-");
+            if (keyValueSplits.length < 2)
+                throw new IllegalArgumentException("Malformed first names line : " + line);
+
+            List<String> cluster = new ArrayList<>();
+            cluster.add(keyValueSplits[0].trim());
+            // a few lines separate the variants by further dashes, e.g. "Stephen - Steve - Stevie".
+            for (int i = 1; i < keyValueSplits.length; i++) {
+                for (String variant : keyValueSplits[i].split(",")) {
+                    if (!variant.trim().isEmpty())
+                        cluster.add(variant.trim());
+                }
+            }
+
+            clusters.add(cluster);
+        }
+
+        return new FirstNameClusters(clusters);
+    }
+
+    /**
+     * Loads clusters written by {@link #write(OutputStream)}. The stream is not closed.
+     */
+    static FirstNameClusters read(InputStream input) throws IOException {
+
+        if (input == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        DataInputStream data = new DataInputStream(new BufferedInputStream(input));
+        if (data.readInt() != MAGIC)
+            throw new IOException("Not a compiled first names file");
+
+        int clusterCount = data.readInt();
+        String[] names = new String[data.readInt()];
+        String[] spellings = new String[names.length];
+        for (int id = 0; id < names.length; id++) {
+            names[id] = data.readUTF();
+            spellings[id] = data.readUTF();
+        }
+
+        int[] table = readInts(data);
+        int[] clusterStarts = readInts(data);
+        int[] clusterIds = readInts(data);
+
+        // the variations are stored as name ids, which share the spellings between the arrays.
+        String[][] variants = new String[names.length][];
+        for (int id = 0; id < names.length; id++) {
+
+            int[] variantIds = readInts(data);
+            variants[id] = new String[variantIds.length];
+            for (int i = 0; i < variantIds.length; i++)
+                variants[id][i] = spellings[variantIds[i]];
+        }
+
+        return new FirstNameClusters(names, table, clusterStarts, clusterIds, clusterCount, variants);
+    }
+
+    /**
+     * Writes the compiled clusters in the form read by {@link #read(InputStream)}. The stream is flushed,
+     * not closed.
+     */
+    void write(OutputStream output) throws IOException {
+
+        if (output == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(output));
+        data.writeInt(MAGIC);
+        data.writeInt(clusterCount);
+        data.writeInt(names.length);
+        for (int id = 0; id < names.length; id++) {
+            data.writeUTF(names[id]);
+            data.writeUTF(variants[id][indexOfSpelling(id)]);
+        }
+
+        writeInts(data, table);
+        writeInts(data, clusterStarts);
+        writeInts(data, clusterIds);
+
+        for (int id = 0; id < names.length; id++) {
+
+            int[] variantIds = new int[variants[id].length];
+            for (int i = 0; i < variantIds.length; i++)
+                variantIds[i] = find(variants[id][i]);
+            writeInts(data, variantIds);
+        }
+
+        data.flush();
+    }
+
+    /**
+     * Returns the first names sharing a cluster with the given one, the name itself included, or null if
+     * the name belongs to no cluster. The array is shared and must not be modified.
+     */
+    String[] getVariants(CharSequence firstName) {
+
+        int id = find(firstName);
+        return (id < 0) ? null : variants[id];
+    }
+
+    /**
+     * Returns the ids of the clusters the first name belongs to, in ascending order, or an empty array.
+     * The array is a copy.
+     */
+    int[] getClusterIds(CharSequence firstName) {
+
+        int id = find(firstName);
+        if (id < 0)
+            return NO_CLUSTERS;
+
+        return Arrays.copyOfRange(clusterIds, clusterStarts[id], clusterStarts[id + 1]);
+    }
+
+    /**
+     * Returns the id of the first name, or -1 if it belongs to no cluster.
+     */
+    int indexOf(CharSequence firstName) {
+        return find(firstName);
+    }
+
+    /**
+     * Returns the number of clusters the first name with the given id belongs to.
+     */
+    int getNameClusterCount(int nameId) {
+        return clusterStarts[nameId + 1] - clusterStarts[nameId];
+    }
+
+    /**
+     * Returns the i-th cluster id of the first name with the given id, in ascending order.
+     */
+    int getNameClusterId(int nameId, int i) {
+        return clusterIds[clusterStarts[nameId] + i];
+    }
+
+    /**
+     * Returns true if both first names share a cluster. Equal names are variations of each other even if
+     * they belong to no cluster.
+     */
+    boolean areVariants(CharSequence firstName, CharSequence otherFirstName) {
+
+        if (equalsIgnoreCase(firstName, otherFirstName))
+            return true;
+
+        int id = find(firstName);
+        int otherId = find(otherFirstName);
+        if (id < 0 || otherId < 0)
+            return false;
+
+        // both id ranges are sorted, walk them like a merge.
+        int i = clusterStarts[id];
+        int j = clusterStarts[otherId];
+        while (i < clusterStarts[id + 1] && j < clusterStarts[otherId + 1]) {
+
+            if (clusterIds[i] == clusterIds[j])
+                return true;
+            if (clusterIds[i] < clusterIds[j])
+                i++;
+            else
+                j++;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the number of distinct first names.
+     */
+    int size() {
+        return names.length;
+    }
+
+    int getClusterCount() {
+        return clusterCount;
+    }
+
+    private int find(CharSequence firstName) {
+
+        if (firstName == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        int mask = table.length - 1;
+        for (int slot = hash(firstName) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            if (equalsIgnoreCase(names[table[slot] - 1], firstName))
+                return table[slot] - 1;
+        }
+
+        return -1;
+    }
+
+    // a name is one of its own variations, in the spelling of its first appearance.
+    private int indexOfSpelling(int id) {
+
+        for (int i = 0; i < variants[id].length; i++) {
+            if (equalsIgnoreCase(names[id], variants[id][i]))
+                return i;
+        }
+
+        throw new IllegalStateException("Name is missing from its variations : " + names[id]);
+    }
+
+    private static int[] readInts(DataInputStream data) throws IOException {
+
+        int[] values = new int[data.readInt()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = data.readInt();
+
+        return values;
+    }
+
+    private static void writeInts(DataOutputStream data, int[] values) throws IOException {
+
+        data.writeInt(values.length);
+        for (int value : values)
+            data.writeInt(value);
+    }
+
+    private static int hash(CharSequence name) {
+
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++)
+            hash = 31 * hash + Character.toLowerCase(name.charAt(i));
+
+        return hash ^ (hash >>> 16);
+    }
+
+    // char by char, the same way lookups compare.
+    private static String lowerCase(String name) {
+
+        char[] chars = new char[name.length()];
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = Character.toLowerCase(name.charAt(i));
+
+        return new String(chars);
+    }
+
+    private static boolean equalsIgnoreCase(CharSequence name, CharSequence other) {
+
+        if (name.length() != other.length())
+            return false;
+
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.toLowerCase(name.charAt(i)) != Character.toLowerCase(other.charAt(i)))
+                return false;
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,34 @@
+package no.companybook;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Build step compiling a first names file into the binary form of {@link FirstNameClusters}, which the
+ * detectors load from data/Firstnames.bin instead of parsing data/Firstnames.txt, see the pom. Arguments are
+ * the UTF-8 encoded first names file and the compiled file to write.
+ */
+public final class FirstNamesCompiler {
+
+    private FirstNamesCompiler() {
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        if (args.length != 2)
+            throw new IllegalArgumentException("Usage : FirstNamesCompiler <first names file> <compiled file>");
+
+        FirstNameClusters firstNameClusters = FirstNameClusters.parse(Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8));
+
+        Path compiledFile = Paths.get(args[1]).toAbsolutePath();
+        Files.createDirectories(compiledFile.getParent());
+        try (OutputStream output = Files.newOutputStream(compiledFile)) {
+            firstNameClusters.write(output);
+        }
+    }
+}
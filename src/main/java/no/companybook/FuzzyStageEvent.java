@@ -0,0 +1,39 @@
+package no.companybook;
+
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event of the fuzzy stage of one name, see
+ * {@link NameDuplicationDetector#checkDuplicatesByCombinations(String, String, NameIndex)}. The candidates are
+ * the indexed last names within the distance threshold, whose blocks the stage probes one after the other.
+ * The threshold is set like the one of {@link NameCheckEvent}, under no.companybook.FuzzyStage.
+ */
+@Name("no.companybook.FuzzyStage")
+@Label("Fuzzy Stage")
+@Description("Fuzzy matching of first name variations and last names within the distance threshold")
+@Category({"CompanyBook", "Duplicate Detection"})
+@Threshold("1 ms")
+@StackTrace(false)
+final class FuzzyStageEvent extends Event {
+
+    @Label("First Name")
+    String firstName;
+
+    @Label("Last Name")
+    String lastName;
+
+    @Label("Name Length")
+    int nameLength;
+
+    @Label("Candidates")
+    @Description("Indexed last names within the distance threshold")
+    int candidates;
+
+    @Label("Prefiltered")
+    @Description("The prefilter proved that there is no candidate")
+    boolean prefiltered;
+
+    @Label("Duplicate")
+    boolean duplicate;
+}
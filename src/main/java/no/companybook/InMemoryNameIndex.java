@@ -0,0 +1,84 @@
+package no.companybook;
+
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Heap resident {@link NameIndex}, built from scratch by every run. The accepted names and the blocking keys
+ * are kept in a {@link CompactNameStore} each.
+ */
+public class InMemoryNameIndex implements NameIndex {
+
+    private final CompactNameStore namesMap = new CompactNameStore();
+    private final LastNameIndex lastNameIndex = new LastNameIndex();
+    private final CompactNameStore blockedNames = new CompactNameStore();
+
+
+    @Override
+    public String get(CharSequence sortedName) {
+        return namesMap.get(sortedName);
+    }
+
+    @Override
+    public String put(CharSequence sortedName, String originalName) {
+        return namesMap.put(sortedName, originalName);
+    }
+
+    @Override
+    public void addLastName(String lastName) {
+        lastNameIndex.add(lastName);
+    }
+
+    @Override
+    public void removeLastName(String lastName) {
+        lastNameIndex.remove(lastName);
+    }
+
+    @Override
+    public boolean containsLastName(String lastName) {
+        return lastNameIndex.contains(lastName);
+    }
+
+    @Override
+    public List<String> getLastNameCandidates(String lastName) {
+        return lastNameIndex.getCandidates(lastName);
+    }
+
+    @Override
+    public List<String> getLastNamesWithinDistance(String lastName, int maxDistance) {
+        return lastNameIndex.getWithinDistance(lastName, maxDistance);
+    }
+
+    @Override
+    public String getBlockedName(CharSequence blockingKey) {
+        return blockedNames.get(blockingKey);
+    }
+
+    @Override
+    public void addBlockedName(CharSequence blockingKey, String originalName) {
+
+        if (!blockedNames.containsKey(blockingKey))
+            blockedNames.put(blockingKey, originalName);
+    }
+
+    @Override
+    public int size() {
+        return namesMap.size();
+    }
+
+    @Override
+    public Iterator<Pair<String, String>> entries() {
+        return namesMap.entries();
+    }
+
+    @Override
+    public Iterator<Pair<String, Integer>> lastNames() {
+        return lastNameIndex.lastNames();
+    }
+
+    @Override
+    public Iterator<Pair<String, String>> blockedNames() {
+        return blockedNames.entries();
+    }
+}
@@ -0,0 +1,57 @@
+package no.companybook;
+
+
+/**
+ * {@link CheckRecorder} committing {@link NameCheckEvent} and {@link FuzzyStageEvent}. Only loaded on a JVM
+ * with jdk.jfr, see {@link NameDuplicationDetector}, so no other class may refer to it or to the events.
+ */
+final class JfrCheckRecorder implements CheckRecorder {
+
+    @Override
+    public Object beginNameCheck() {
+
+        NameCheckEvent event = new NameCheckEvent();
+        event.begin();
+
+        return event;
+    }
+
+    @Override
+    public void endNameCheck(Object check, String name, DetectorStage stage, boolean duplicate) {
+
+        NameCheckEvent event = (NameCheckEvent) check;
+        event.end();
+        if (event.shouldCommit()) {
+            event.name = name;
+            event.nameLength = name.length();
+            event.stage = stage.name();
+            event.duplicate = duplicate;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginFuzzyStage() {
+
+        FuzzyStageEvent event = new FuzzyStageEvent();
+        event.begin();
+
+        return event;
+    }
+
+    @Override
+    public void endFuzzyStage(Object check, String firstName, String lastName, int candidates, boolean prefiltered, boolean duplicate) {
+
+        FuzzyStageEvent event = (FuzzyStageEvent) check;
+        event.end();
+        if (event.shouldCommit()) {
+            event.firstName = firstName;
+            event.lastName = lastName;
+            event.nameLength = firstName.length() + 1 + lastName.length();
+            event.candidates = candidates;
+            event.prefiltered = prefiltered;
+            event.duplicate = duplicate;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package no.companybook;
+
+
+import java.util.*;
+
+/**
+ * Incremental index over the last names accepted by {@link NameDuplicationDetector}.
+ * <p>
+ * Every last name is registered under itself and under each of its single character deletions
+ * (a SymSpell style deletion neighbourhood). Two strings are within Levenshtein distance one only if
+ * they share at least one of those keys, so looking up the neighbourhood of a name touches
+ * (length + 1) buckets instead of every accepted name. The returned candidates still have to be
+ * verified with an edit distance computation, e.g. "ab" and "ba" share keys but are two edits apart.
+ * <p>
+ * Larger distances are looked up in a {@link LastNameTrie} of the last names, built on the first such lookup
+ * and kept up to date from then on.
+ */
+public class LastNameIndex {
+
+    // number of accepted names per last name, a last name leaves the index once its count drops to zero.
+    private final Map<String, Integer> lastNameCounts = new HashMap<>();
+    private final Map<String, Set<String>> deletionNeighbourhood = new HashMap<>();
+    private LastNameTrie lastNameTrie;
+
+
+    public void add(String lastName) {
+
+        if (lastName == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        Integer count = lastNameCounts.get(lastName);
+        if (count != null) {
+            lastNameCounts.put(lastName, count + 1);
+            return;
+        }
+
+        lastNameCounts.put(lastName, 1);
+        if (lastNameTrie != null)
+            lastNameTrie.add(lastName);
+
+        for (String key : getDeletionKeys(lastName)) {
+
+            Set<String> bucket = deletionNeighbourhood.get(key);
+            if (bucket == null) {
+                bucket = new HashSet<>();
+                deletionNeighbourhood.put(key, bucket);
+            }
+            bucket.add(lastName);
+        }
+    }
+
+    public void remove(String lastName) {
+
+        if (lastName == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        Integer count = lastNameCounts.get(lastName);
+        if (count == null)
+            return;
+
+        if (count > 1) {
+            lastNameCounts.put(lastName, count - 1);
+            return;
+        }
+
+        lastNameCounts.remove(lastName);
+        if (lastNameTrie != null)
+            lastNameTrie.remove(lastName);
+
+        for (String key : getDeletionKeys(lastName)) {
+
+            Set<String> bucket = deletionNeighbourhood.get(key);
+            if (bucket != null) {
+                bucket.remove(lastName);
+                if (bucket.isEmpty())
+                    deletionNeighbourhood.remove(key);
+            }
+        }
+    }
+
+    public boolean contains(String lastName) {
+        return lastNameCounts.containsKey(lastName);
+    }
+
+    public int size() {
+        return lastNameCounts.size();
+    }
+
+    /**
+     * Returns the number of accepted names carrying the last name.
+     */
+    public int count(String lastName) {
+
+        Integer count = lastNameCounts.get(lastName);
+        return (count == null) ? 0 : count;
+    }
+
+    /**
+     * Iterates the indexed last names as pairs of last name and count.
+     */
+    public Iterator<Pair<String, Integer>> lastNames() {
+
+        final Iterator<Map.Entry<String, Integer>> iterator = lastNameCounts.entrySet().iterator();
+
+        return new Iterator<Pair<String, Integer>>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Pair<String, Integer> next() {
+                Map.Entry<String, Integer> entry = iterator.next();
+                return new Pair<>(entry.getKey(), entry.getValue());
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Returns every indexed last name that may be within edit distance one of the given name, sorted
+     * lexicographically so that callers iterate them in an order which does not depend on hashing.
+     */
+    public List<String> getCandidates(String lastName) {
+
+        if (lastName == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        Set<String> candidates = new HashSet<>();
+        for (String key : getDeletionKeys(lastName)) {
+
+            Set<String> bucket = deletionNeighbourhood.get(key);
+            if (bucket != null)
+                candidates.addAll(bucket);
+        }
+
+        List<String> sortedCandidates = new ArrayList<>(candidates);
+        Collections.sort(sortedCandidates);
+
+        return sortedCandidates;
+    }
+
+    /**
+     * Returns every indexed last name within the edit distance of the given name, in lexicographic order.
+     */
+    public List<String> getWithinDistance(String lastName, int maxDistance) {
+
+        if (lastName == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        if (lastNameTrie == null) {
+            lastNameTrie = new LastNameTrie();
+            for (String indexedLastName : lastNameCounts.keySet())
+                lastNameTrie.add(indexedLastName);
+        }
+
+        return lastNameTrie.findWithinDistance(lastName, maxDistance);
+    }
+
+    /**
+     * Checks whether two strings are within Levenshtein distance one, in a single pass: equal lengths allow
+     * one substitution, lengths differing by one allow one insertion into the shorter string.
+     */
+    static boolean withinDistanceOne(String source, String target) {
+
+        String shorter = (source.length() <= target.length()) ? source : target;
+        String longer = (shorter == source) ? target : source;
+        int lengthDifference = longer.length() - shorter.length();
+
+        if (lengthDifference > 1)
+            return false;
+
+        // skip the common prefix, the rest has to match after the one edit at the first difference.
+        int i = 0;
+        while (i < shorter.length() && shorter.charAt(i) == longer.charAt(i))
+            i++;
+
+        if (i == shorter.length())
+            return true;
+
+        return shorter.regionMatches(i + 1 - lengthDifference, longer, i + 1, shorter.length() - i - 1 + lengthDifference);
+    }
+
+    static Set<String> getDeletionKeys(String name) {
+
+        Set<String> keys = new HashSet<>(name.length() * 2 + 1);
+        keys.add(name);
+
+        StringBuilder deletion = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+
+            deletion.append(name, 0, i).append(name, i + 1, name.length());
+            keys.add(deletion.toString());
+            deletion.setLength(0);
+        }
+
+        return keys;
+    }
+}
@@ -0,0 +1,222 @@
+package no.companybook;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Trie of last names, searched for every last name within a given Levenshtein distance of another one.
+ * <p>
+ * The search walks the trie depth first and carries one row of the dynamic programming matrix per trie
+ * level: the row of a node follows from the row of its parent and the char on the edge, and is shared by
+ * every last name below the node. Only the cells within the distance of the diagonal are computed, and a
+ * subtree is left as soon as the smallest value of the row exceeds the distance, as no last name below can
+ * get closer, so the nodes visited depend on the size of the neighbourhood rather than on the number of
+ * last names. This is what makes distances above one affordable, where the deletion neighbourhood of
+ * {@link LastNameIndex} grows with the square of the length.
+ * <p>
+ * The children of a node are kept sorted by char, so the last names are found in lexicographic order.
+ * Instances are not thread safe.
+ */
+final class LastNameTrie {
+
+    private static final char[] NO_LABELS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private final Node root = new Node();
+    private int size;
+
+
+    /**
+     * Adds the last name, returns false if it was already there.
+     */
+    boolean add(String lastName) {
+
+        if (lastName == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        Node node = root;
+        for (int i = 0; i < lastName.length(); i++)
+            node = node.childOrCreate(lastName.charAt(i));
+
+        if (node.lastName != null)
+            return false;
+
+        node.lastName = lastName;
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes the last name and the nodes left without last names, returns false if it was not there.
+     */
+    boolean remove(String lastName) {
+
+        if (lastName == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        Node[] path = new Node[lastName.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < lastName.length(); i++) {
+
+            path[i + 1] = path[i].child(lastName.charAt(i));
+            if (path[i + 1] == null)
+                return false;
+        }
+
+        Node node = path[lastName.length()];
+        if (node.lastName == null)
+            return false;
+
+        node.lastName = null;
+        size--;
+
+        for (int i = lastName.length(); i > 0 && path[i].isEmpty(); i--)
+            path[i - 1].removeChild(lastName.charAt(i - 1));
+
+        return true;
+    }
+
+    boolean contains(String lastName) {
+
+        if (lastName == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        Node node = root;
+        for (int i = 0; i < lastName.length() && node != null; i++)
+            node = node.child(lastName.charAt(i));
+
+        return node != null && node.lastName != null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns every last name within the Levenshtein distance of the given one, in lexicographic order.
+     */
+    List<String> findWithinDistance(String lastName, int maxDistance) {
+
+        if (lastName == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        if (maxDistance < 0)
+            throw new IllegalArgumentException("The distance must not be negative");
+
+        List<String> found = new ArrayList<>();
+
+        // the first row : the distance of every prefix of the last name to the empty string.
+        int[] row = new int[lastName.length() + 1];
+        for (int i = 0; i < row.length; i++)
+            row[i] = i;
+
+        if (root.lastName != null && row[lastName.length()] <= maxDistance)
+            found.add(root.lastName);
+
+        List<int[]> rows = new ArrayList<>();
+        rows.add(row);
+        for (int i = 0; i < root.childCount; i++)
+            search(root.children[i], root.labels[i], 1, lastName, maxDistance, rows, found);
+
+        return found;
+    }
+
+    private void search(Node node, char label, int depth, String lastName, int maxDistance, List<int[]> rows, List<String> found) {
+
+        // one row per trie level, reused by every node of the level.
+        if (rows.size() <= depth)
+            rows.add(new int[lastName.length() + 1]);
+
+        int[] previousRow = rows.get(depth - 1);
+        int[] row = rows.get(depth);
+        int length = lastName.length();
+
+        // only the band of cells within the distance of the diagonal can be within the distance at all,
+        // the cells next to the band act as its border, with a value just above the distance.
+        int first = Math.max(1, depth - maxDistance);
+        int last = Math.min(length, depth + maxDistance);
+        int outside = maxDistance + 1;
+
+        row[0] = depth;
+        if (first > 1)
+            row[first - 1] = outside;
+        if (last < length)
+            row[last + 1] = outside;
+
+        int rowMinimum = row[0];
+        for (int i = first; i <= last; i++) {
+
+            int substitution = previousRow[i - 1] + ((lastName.charAt(i - 1) == label) ? 0 : 1);
+            row[i] = Math.min(Math.min(row[i - 1] + 1, previousRow[i] + 1), substitution);
+            rowMinimum = Math.min(rowMinimum, row[i]);
+        }
+
+        if (node.lastName != null && (length == 0 || (length >= first && length <= last)) && row[length] <= maxDistance)
+            found.add(node.lastName);
+
+        if (rowMinimum > maxDistance)
+            return;
+
+        for (int i = 0; i < node.childCount; i++)
+            search(node.children[i], node.labels[i], depth + 1, lastName, maxDistance, rows, found);
+    }
+
+    private static final class Node {
+
+        // the chars on the edges to the children, sorted, and the children in the same order.
+        private char[] labels = NO_LABELS;
+        private Node[] children = NO_CHILDREN;
+        private int childCount;
+
+        // the last name ending here, or null.
+        private String lastName;
+
+        private Node child(char label) {
+
+            int i = Arrays.binarySearch(labels, 0, childCount, label);
+            return (i < 0) ? null : children[i];
+        }
+
+        private Node childOrCreate(char label) {
+
+            int i = Arrays.binarySearch(labels, 0, childCount, label);
+            if (i >= 0)
+                return children[i];
+
+            if (childCount == labels.length) {
+                int capacity = Math.max(2, childCount * 2);
+                labels = Arrays.copyOf(labels, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+
+            // keep the labels sorted.
+            int insertion = -i - 1;
+            System.arraycopy(labels, insertion, labels, insertion + 1, childCount - insertion);
+            System.arraycopy(children, insertion, children, insertion + 1, childCount - insertion);
+
+            Node child = new Node();
+            labels[insertion] = label;
+            children[insertion] = child;
+            childCount++;
+
+            return child;
+        }
+
+        private void removeChild(char label) {
+
+            int i = Arrays.binarySearch(labels, 0, childCount, label);
+            if (i < 0)
+                return;
+
+            System.arraycopy(labels, i + 1, labels, i, childCount - i - 1);
+            System.arraycopy(children, i + 1, children, i, childCount - i - 1);
+            children[--childCount] = null;
+        }
+
+        private boolean isEmpty() {
+            return lastName == null && childCount == 0;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package no.companybook;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of latencies in nanoseconds, with buckets laid out like the ones of HdrHistogram.
+ * <p>
+ * Values below 32 get a bucket each. Above, every power of two range is split into 16 buckets of equal
+ * width, so the bucket of a value is at most about 6% wider than the value and the buckets cover the
+ * whole range of long in less than a thousand counters. Recording a value is a few shifts and an atomic
+ * increment, threads never wait on each other.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;
+    private static final int BUCKET_COUNT = bucketIndex(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+
+    /**
+     * Records a latency, negative values count as zero.
+     */
+    public void record(long nanos) {
+
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketIndex(value));
+        total.addAndGet(value);
+
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value))
+            currentMax = max.get();
+    }
+
+    /**
+     * Returns a copy of the histogram. Values recorded meanwhile may or may not be part of it.
+     */
+    public Snapshot snapshot() {
+
+        long[] bucketCounts = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            bucketCounts[i] = counts.get(i);
+            count += bucketCounts[i];
+        }
+
+        return new Snapshot(bucketCounts, count, total.get(), max.get());
+    }
+
+    public void reset() {
+
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            counts.set(i, 0);
+        total.set(0);
+        max.set(0);
+    }
+
+    static int bucketIndex(long value) {
+
+        int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+    }
+
+    /**
+     * The highest value falling into the bucket.
+     */
+    static long bucketHighestValue(int index) {
+
+        if (index < SUB_BUCKET_COUNT)
+            return index;
+
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long lowest = (long) (index % SUB_BUCKET_HALF + SUB_BUCKET_HALF) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Immutable state of a histogram, with the percentiles read from the buckets.
+     */
+    public static final class Snapshot {
+
+        private final long[] bucketCounts;
+        private final long count;
+        private final long total;
+        private final long max;
+
+        private Snapshot(long[] bucketCounts, long count, long total, long max) {
+
+            this.bucketCounts = bucketCounts;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        /**
+         * Returns the value below which the given percentage of the values lie, at bucket precision and never
+         * above the maximum, or 0 for an empty histogram.
+         */
+        public long getValueAtPercentile(double percentile) {
+
+            if (count == 0)
+                return 0;
+
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < bucketCounts.length; i++) {
+
+                seen += bucketCounts[i];
+                if (seen >= rank)
+                    return Math.min(max, bucketHighestValue(i));
+            }
+
+            return max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMeanNanos() {
+            return (count == 0) ? 0 : total / count;
+        }
+
+        public long getP50Nanos() {
+            return getValueAtPercentile(50);
+        }
+
+        public long getP99Nanos() {
+            return getValueAtPercentile(99);
+        }
+
+        public long getP999Nanos() {
+            return getValueAtPercentile(99.9);
+        }
+
+        public long getMaxNanos() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count %d, mean %d ns, p50 %d ns, p99 %d ns, p99.9 %d ns, max %d ns",
+                    count, getMeanNanos(), getP50Nanos(), getP99Nanos(), getP999Nanos(), max);
+        }
+    }
+}
@@ -0,0 +1,681 @@
+package no.companybook;
+
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * {@link NameIndex} reopened from a file saved by a previous run, so that a run only has to check the
+ * names it adds on top of the ones accepted before.
+ * <p>
+ * The file is memory mapped and read in place, opening it costs a few system calls regardless of its size.
+ * Names accepted after opening are kept on the heap on top of the mapped ones, and {@link #save(Path)}
+ * writes both into a new file. The file consists of a header followed by these sections:
+ * <ul>
+ * <li>an arena of length prefixed UTF-8 strings: sorted and original names, last names and deletion keys,</li>
+ * <li>an open addressing table of the accepted names: slots of (hash of sorted name, arena offset),</li>
+ * <li>an open addressing table of the last names: slots of (hash, arena offset, number of names),</li>
+ * <li>an open addressing table of the deletion neighbourhood of the last names, see {@link LastNameIndex}:
+ * slots of (hash, arena offset, first posting, number of postings),</li>
+ * <li>the postings, i.e. the last name slots listed under every deletion key,</li>
+ * <li>an open addressing table of the blocking keys, see {@link NameBlocks}: slots of (hash of blocking key,
+ * arena offset), the accepted name following the key in the arena like in the table of accepted names.</li>
+ * </ul>
+ * Every section is mapped separately and limited to 2 GB. Lookups of last names within distances above one
+ * go to a {@link LastNameTrie} of all last names, built on the heap by the first such lookup. Instances are
+ * not thread safe.
+ */
+public class MappedNameIndex implements NameIndex, Closeable {
+
+    private static final int MAGIC = 0x43424E49;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 128;
+    private static final int EMPTY_SLOT = -1;
+    private static final int ENTRY_SLOT_INTS = 2;
+    private static final int LAST_NAME_SLOT_INTS = 3;
+    private static final int DELETION_SLOT_INTS = 4;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer arena;
+    private final ByteBuffer entryTable;
+    private final ByteBuffer lastNameTable;
+    private final ByteBuffer deletionTable;
+    private final ByteBuffer postings;
+    private final ByteBuffer blockingTable;
+    private final int entryMask;
+    private final int lastNameMask;
+    private final int deletionMask;
+    private final int blockingMask;
+
+    // changes since the file was opened, accepted names here take precedence over the mapped ones.
+    private final CompactNameStore addedNames = new CompactNameStore();
+    private final LastNameIndex addedLastNames = new LastNameIndex();
+    private final Map<String, Integer> removedLastNames = new HashMap<>();
+    private final CompactNameStore addedBlockedNames = new CompactNameStore();
+    private LastNameTrie lastNameTrie;
+    private int size;
+
+
+    private MappedNameIndex(FileChannel channel) throws IOException {
+
+        this.channel = channel;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0)
+                throw new IOException("Truncated name index file");
+        }
+        header.flip();
+
+        if (header.getInt() != MAGIC)
+            throw new IOException("Not a name index file");
+        if (header.getInt() != VERSION)
+            throw new IOException("Unsupported name index file version");
+
+        arena = map(header.getLong(), header.getLong());
+
+        int entryCapacity = header.getInt();
+        size = header.getInt();
+        entryTable = map(header.getLong(), 4L * ENTRY_SLOT_INTS * entryCapacity);
+        entryMask = entryCapacity - 1;
+
+        int lastNameCapacity = header.getInt();
+        header.getInt();
+        lastNameTable = map(header.getLong(), 4L * LAST_NAME_SLOT_INTS * lastNameCapacity);
+        lastNameMask = lastNameCapacity - 1;
+
+        int deletionCapacity = header.getInt();
+        header.getInt();
+        deletionTable = map(header.getLong(), 4L * DELETION_SLOT_INTS * deletionCapacity);
+        deletionMask = deletionCapacity - 1;
+
+        postings = map(header.getLong(), 4L * header.getInt());
+
+        int blockingCapacity = header.getInt();
+        header.getInt();
+        blockingTable = map(header.getLong(), 4L * ENTRY_SLOT_INTS * blockingCapacity);
+        blockingMask = blockingCapacity - 1;
+    }
+
+    public static MappedNameIndex open(Path file) throws IOException {
+
+        if (file == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+
+            return new MappedNameIndex(channel);
+
+        } catch (IOException | RuntimeException e) {
+
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the mapped and the added names into the file, see {@link #write(NameIndex, Path)}.
+     */
+    public void save(Path file) throws IOException {
+        write(this, file);
+    }
+
+    /**
+     * Writes the index into a file which can be reopened with {@link #open(Path)}. The file is written
+     * next to the target and moved into place once complete, so an index may be saved over the file it was
+     * opened from.
+     */
+    public static void write(NameIndex nameIndex, Path file) throws IOException {
+
+        if (nameIndex == null || file == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (FileChannel output = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+            output.position(HEADER_SIZE);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(output), WRITE_BUFFER_SIZE));
+
+            // accepted names.
+            int entryCapacity = capacity(nameIndex.size());
+            int[] entrySlots = newTable(entryCapacity, ENTRY_SLOT_INTS);
+            int entryCount = 0;
+
+            for (Iterator<Pair<String, String>> entries = nameIndex.entries(); entries.hasNext(); ) {
+
+                Pair<String, String> entry = entries.next();
+                if (++entryCount > entryCapacity / 2)
+                    throw new IllegalStateException("The index holds more names than its size");
+
+                // the original name directly follows the sorted name it is stored under.
+                insert(entrySlots, ENTRY_SLOT_INTS, entry.getL().hashCode(), writeString(out, entry.getL()));
+                writeString(out, entry.getR());
+            }
+
+            // last names, and the deletion keys pointing to them.
+            List<Pair<String, Integer>> lastNames = new ArrayList<>();
+            for (Iterator<Pair<String, Integer>> iterator = nameIndex.lastNames(); iterator.hasNext(); )
+                lastNames.add(iterator.next());
+
+            int lastNameCapacity = capacity(lastNames.size());
+            int[] lastNameSlots = newTable(lastNameCapacity, LAST_NAME_SLOT_INTS);
+            Map<String, List<Integer>> deletionKeys = new HashMap<>();
+
+            for (Pair<String, Integer> lastName : lastNames) {
+
+                int slot = insert(lastNameSlots, LAST_NAME_SLOT_INTS, lastName.getL().hashCode(), writeString(out, lastName.getL()));
+                lastNameSlots[slot * LAST_NAME_SLOT_INTS + 2] = lastName.getR();
+
+                for (String key : LastNameIndex.getDeletionKeys(lastName.getL())) {
+
+                    List<Integer> keyPostings = deletionKeys.get(key);
+                    if (keyPostings == null) {
+                        keyPostings = new ArrayList<>(2);
+                        deletionKeys.put(key, keyPostings);
+                    }
+                    keyPostings.add(slot);
+                }
+            }
+
+            int deletionCapacity = capacity(deletionKeys.size());
+            int[] deletionSlots = newTable(deletionCapacity, DELETION_SLOT_INTS);
+            int postingsCount = 0;
+
+            for (Map.Entry<String, List<Integer>> key : deletionKeys.entrySet()) {
+
+                int slot = insert(deletionSlots, DELETION_SLOT_INTS, key.getKey().hashCode(), writeString(out, key.getKey()));
+                deletionSlots[slot * DELETION_SLOT_INTS + 2] = postingsCount;
+                deletionSlots[slot * DELETION_SLOT_INTS + 3] = key.getValue().size();
+                postingsCount += key.getValue().size();
+            }
+
+            // blocking keys, each followed by the accepted name registered under it.
+            int[] blockingHashes = new int[16];
+            int[] blockingOffsets = new int[16];
+            int blockingCount = 0;
+
+            for (Iterator<Pair<String, String>> iterator = nameIndex.blockedNames(); iterator.hasNext(); ) {
+
+                Pair<String, String> blockedName = iterator.next();
+                if (blockingCount == blockingHashes.length) {
+                    blockingHashes = Arrays.copyOf(blockingHashes, blockingCount << 1);
+                    blockingOffsets = Arrays.copyOf(blockingOffsets, blockingCount << 1);
+                }
+
+                blockingHashes[blockingCount] = blockedName.getL().hashCode();
+                blockingOffsets[blockingCount++] = writeString(out, blockedName.getL());
+                writeString(out, blockedName.getR());
+            }
+
+            int blockingCapacity = capacity(blockingCount);
+            int[] blockingSlots = newTable(blockingCapacity, ENTRY_SLOT_INTS);
+            for (int i = 0; i < blockingCount; i++)
+                insert(blockingSlots, ENTRY_SLOT_INTS, blockingHashes[i], blockingOffsets[i]);
+
+            long arenaLength = out.size();
+            if (arenaLength >= Integer.MAX_VALUE)
+                throw new IOException("The names exceed the 2 GB limit of a name index file");
+
+            writeInts(out, entrySlots);
+            writeInts(out, lastNameSlots);
+            writeInts(out, deletionSlots);
+            for (List<Integer> keyPostings : deletionKeys.values())
+                for (int posting : keyPostings)
+                    out.writeInt(posting);
+            writeInts(out, blockingSlots);
+            out.flush();
+
+            long entryTableOffset = HEADER_SIZE + arenaLength;
+            long lastNameTableOffset = entryTableOffset + 4L * entrySlots.length;
+            long deletionTableOffset = lastNameTableOffset + 4L * lastNameSlots.length;
+            long postingsOffset = deletionTableOffset + 4L * deletionSlots.length;
+            long blockingTableOffset = postingsOffset + 4L * postingsCount;
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION)
+                    .putLong(HEADER_SIZE).putLong(arenaLength)
+                    .putInt(entryCapacity).putInt(entryCount).putLong(entryTableOffset)
+                    .putInt(lastNameCapacity).putInt(lastNames.size()).putLong(lastNameTableOffset)
+                    .putInt(deletionCapacity).putInt(deletionKeys.size()).putLong(deletionTableOffset)
+                    .putLong(postingsOffset).putInt(postingsCount)
+                    .putInt(blockingCapacity).putInt(blockingCount).putLong(blockingTableOffset);
+            header.clear();
+
+            while (header.hasRemaining())
+                output.write(header, header.position());
+            output.force(false);
+        }
+
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public String get(CharSequence sortedName) {
+
+        String originalName = addedNames.get(sortedName);
+        if (originalName != null)
+            return originalName;
+
+        return getMapped(entryTable, entryMask, sortedName);
+    }
+
+    @Override
+    public String put(CharSequence sortedName, String originalName) {
+
+        String replacedName = addedNames.put(sortedName, originalName);
+        if (replacedName == null) {
+
+            replacedName = getMapped(entryTable, entryMask, sortedName);
+            if (replacedName == null)
+                size++;
+        }
+
+        return replacedName;
+    }
+
+    @Override
+    public void addLastName(String lastName) {
+
+        addedLastNames.add(lastName);
+        if (lastNameTrie != null)
+            lastNameTrie.add(lastName);
+    }
+
+    @Override
+    public void removeLastName(String lastName) {
+
+        int slot = findSlot(lastNameTable, LAST_NAME_SLOT_INTS, lastNameMask, lastName);
+
+        if (addedLastNames.contains(lastName)) {
+            addedLastNames.remove(lastName);
+
+        } else if (slot != EMPTY_SLOT && getMappedCount(slot, lastName) > 0) {
+            Integer removed = removedLastNames.get(lastName);
+            removedLastNames.put(lastName, (removed == null) ? 1 : removed + 1);
+        }
+
+        // the last name leaves once neither the added nor the mapped names carry it.
+        if (lastNameTrie != null && !addedLastNames.contains(lastName) && (slot == EMPTY_SLOT || getMappedCount(slot, lastName) <= 0))
+            lastNameTrie.remove(lastName);
+    }
+
+    @Override
+    public boolean containsLastName(String lastName) {
+
+        if (addedLastNames.contains(lastName))
+            return true;
+
+        int slot = findSlot(lastNameTable, LAST_NAME_SLOT_INTS, lastNameMask, lastName);
+        return slot != EMPTY_SLOT && getMappedCount(slot, lastName) > 0;
+    }
+
+    @Override
+    public List<String> getLastNameCandidates(String lastName) {
+
+        Set<String> candidates = new HashSet<>(addedLastNames.getCandidates(lastName));
+
+        for (String key : LastNameIndex.getDeletionKeys(lastName)) {
+
+            int slot = findSlot(deletionTable, DELETION_SLOT_INTS, deletionMask, key);
+            if (slot == EMPTY_SLOT)
+                continue;
+
+            int first = deletionTable.getInt(4 * (slot * DELETION_SLOT_INTS + 2));
+            int count = deletionTable.getInt(4 * (slot * DELETION_SLOT_INTS + 3));
+
+            for (int posting = first; posting < first + count; posting++) {
+
+                int lastNameSlot = postings.getInt(4 * posting);
+                String candidate = readString(lastNameTable.getInt(4 * (lastNameSlot * LAST_NAME_SLOT_INTS + 1)));
+                if (getMappedCount(lastNameSlot, candidate) > 0)
+                    candidates.add(candidate);
+            }
+        }
+
+        List<String> sortedCandidates = new ArrayList<>(candidates);
+        Collections.sort(sortedCandidates);
+
+        return sortedCandidates;
+    }
+
+    @Override
+    public List<String> getLastNamesWithinDistance(String lastName, int maxDistance) {
+
+        if (lastName == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        if (lastNameTrie == null) {
+            lastNameTrie = new LastNameTrie();
+            for (Iterator<Pair<String, Integer>> iterator = lastNames(); iterator.hasNext(); )
+                lastNameTrie.add(iterator.next().getL());
+        }
+
+        return lastNameTrie.findWithinDistance(lastName, maxDistance);
+    }
+
+    @Override
+    public String getBlockedName(CharSequence blockingKey) {
+
+        // names registered before the file was written came first.
+        String originalName = getMapped(blockingTable, blockingMask, blockingKey);
+        if (originalName != null)
+            return originalName;
+
+        return addedBlockedNames.get(blockingKey);
+    }
+
+    @Override
+    public void addBlockedName(CharSequence blockingKey, String originalName) {
+
+        if (findSlot(blockingTable, ENTRY_SLOT_INTS, blockingMask, blockingKey) == EMPTY_SLOT && !addedBlockedNames.containsKey(blockingKey))
+            addedBlockedNames.put(blockingKey, originalName);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<Pair<String, String>> entries() {
+
+        final Iterator<Pair<String, String>> added = addedNames.entries();
+
+        return new SlotIterator<Pair<String, String>>(entryTable, ENTRY_SLOT_INTS) {
+            @Override
+            Pair<String, String> computeNext() {
+
+                while (nextSlot()) {
+
+                    String sortedName = readString(getOffset());
+                    if (!addedNames.containsKey(sortedName))
+                        return new Pair<>(sortedName, readString(getOffset() + 4 + arena.getInt(getOffset())));
+                }
+
+                if (added.hasNext())
+                    return added.next();
+
+                return null;
+            }
+        };
+    }
+
+    @Override
+    public Iterator<Pair<String, Integer>> lastNames() {
+
+        final Iterator<Pair<String, Integer>> added = addedLastNames.lastNames();
+
+        return new SlotIterator<Pair<String, Integer>>(lastNameTable, LAST_NAME_SLOT_INTS) {
+            @Override
+            Pair<String, Integer> computeNext() {
+
+                while (nextSlot()) {
+
+                    String lastName = readString(getOffset());
+                    int count = getMappedCount(getSlot(), lastName) + addedLastNames.count(lastName);
+                    if (count > 0)
+                        return new Pair<>(lastName, count);
+                }
+
+                // last names which are also mapped have been counted above.
+                while (added.hasNext()) {
+
+                    Pair<String, Integer> lastName = added.next();
+                    if (findSlot(lastNameTable, LAST_NAME_SLOT_INTS, lastNameMask, lastName.getL()) == EMPTY_SLOT)
+                        return lastName;
+                }
+
+                return null;
+            }
+        };
+    }
+
+    @Override
+    public Iterator<Pair<String, String>> blockedNames() {
+
+        final Iterator<Pair<String, String>> added = addedBlockedNames.entries();
+
+        return new SlotIterator<Pair<String, String>>(blockingTable, ENTRY_SLOT_INTS) {
+            @Override
+            Pair<String, String> computeNext() {
+
+                if (nextSlot())
+                    return new Pair<>(readString(getOffset()), readString(getOffset() + 4 + arena.getInt(getOffset())));
+
+                // added keys are never mapped ones.
+                if (added.hasNext())
+                    return added.next();
+
+                return null;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private String getMapped(ByteBuffer table, int mask, CharSequence key) {
+
+        int slot = findSlot(table, ENTRY_SLOT_INTS, mask, key);
+        if (slot == EMPTY_SLOT)
+            return null;
+
+        // the original name follows the key in the arena.
+        int offset = table.getInt(4 * (slot * ENTRY_SLOT_INTS + 1));
+        return readString(offset + 4 + arena.getInt(offset));
+    }
+
+    private int getMappedCount(int lastNameSlot, String lastName) {
+
+        Integer removed = removedLastNames.get(lastName);
+        int count = lastNameTable.getInt(4 * (lastNameSlot * LAST_NAME_SLOT_INTS + 2));
+
+        return (removed == null) ? count : count - removed;
+    }
+
+    /**
+     * Returns the slot holding the key, or EMPTY_SLOT. Tables are at most half full, so probing always
+     * ends at an empty slot.
+     */
+    private int findSlot(ByteBuffer table, int slotInts, int mask, CharSequence key) {
+
+        int hash = stringHash(key);
+        byte[] keyBytes = null;
+
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+
+            int offset = table.getInt(4 * (slot * slotInts + 1));
+            if (offset == EMPTY_SLOT)
+                return EMPTY_SLOT;
+
+            if (table.getInt(4 * slot * slotInts) == hash) {
+
+                if (keyBytes == null)
+                    keyBytes = key.toString().getBytes(StandardCharsets.UTF_8);
+                if (arenaEquals(offset, keyBytes))
+                    return slot;
+            }
+        }
+    }
+
+    private boolean arenaEquals(int offset, byte[] bytes) {
+
+        if (arena.getInt(offset) != bytes.length)
+            return false;
+
+        for (int i = 0; i < bytes.length; i++) {
+            if (arena.get(offset + 4 + i) != bytes[i])
+                return false;
+        }
+
+        return true;
+    }
+
+    private String readString(int offset) {
+
+        byte[] bytes = new byte[arena.getInt(offset)];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = arena.get(offset + 4 + i);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private ByteBuffer map(long offset, long length) throws IOException {
+
+        if (length > Integer.MAX_VALUE)
+            throw new IOException("Name index section exceeds 2 GB");
+
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+    /**
+     * String.hashCode() of the chars, which is what the slots store, for keys which are not Strings.
+     */
+    private static int stringHash(CharSequence key) {
+
+        if (key instanceof String)
+            return key.hashCode();
+
+        int hash = 0;
+        for (int i = 0; i < key.length(); i++)
+            hash = 31 * hash + key.charAt(i);
+
+        return hash;
+    }
+
+    private static int spread(int hash) {
+
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int capacity(int count) {
+
+        // keep the tables at most half full.
+        int capacity = 2;
+        while (capacity < 2L * count) {
+
+            if (capacity >= 1 << 29)
+                throw new IllegalStateException("Too many names for a name index file");
+            capacity <<= 1;
+        }
+
+        return capacity;
+    }
+
+    private static int[] newTable(int capacity, int slotInts) {
+
+        int[] table = new int[capacity * slotInts];
+        for (int slot = 0; slot < capacity; slot++)
+            table[slot * slotInts + 1] = EMPTY_SLOT;
+
+        return table;
+    }
+
+    private static int insert(int[] table, int slotInts, int hash, int offset) {
+
+        int mask = table.length / slotInts - 1;
+        int slot = spread(hash) & mask;
+        while (table[slot * slotInts + 1] != EMPTY_SLOT)
+            slot = (slot + 1) & mask;
+
+        table[slot * slotInts] = hash;
+        table[slot * slotInts + 1] = offset;
+
+        return slot;
+    }
+
+    private static int writeString(DataOutputStream out, String value) throws IOException {
+
+        int offset = out.size();
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+
+        return offset;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+
+        for (int value : values)
+            out.writeInt(value);
+    }
+
+    /**
+     * Walks the occupied slots of a mapped table, followed by whatever computeNext adds.
+     */
+    private static abstract class SlotIterator<T> implements Iterator<T> {
+
+        private final ByteBuffer table;
+        private final int slotInts;
+        private final int capacity;
+        private int slot = -1;
+        private T next;
+
+        SlotIterator(ByteBuffer table, int slotInts) {
+
+            this.table = table;
+            this.slotInts = slotInts;
+            this.capacity = table.capacity() / (4 * slotInts);
+        }
+
+        abstract T computeNext();
+
+        boolean nextSlot() {
+
+            while (++slot < capacity) {
+                if (getOffset() != EMPTY_SLOT)
+                    return true;
+            }
+
+            return false;
+        }
+
+        int getSlot() {
+            return slot;
+        }
+
+        int getOffset() {
+            return table.getInt(4 * (slot * slotInts + 1));
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            if (next == null)
+                next = computeNext();
+
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            T result = next;
+            next = null;
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package no.companybook;
+
+
+/**
+ * Immutable copy of the {@link DetectorMetrics} of a detector. Counters are read one after the other while
+ * names may be checked, so they are consistent only once the detector is idle.
+ */
+public final class MetricsSnapshot {
+
+    private final StageSnapshot[] stages;
+    private final long levenshteinEvaluations;
+    private final long blockProbes;
+    private final long indexSize;
+    private final long neighbourhoodCacheHits;
+    private final long neighbourhoodCacheMisses;
+    private final long prefilterRejections;
+    private final long prefilterFalsePositives;
+
+
+    MetricsSnapshot(StageSnapshot[] stages, long levenshteinEvaluations, long blockProbes, long indexSize,
+                    long neighbourhoodCacheHits, long neighbourhoodCacheMisses, long prefilterRejections,
+                    long prefilterFalsePositives) {
+
+        this.stages = stages;
+        this.levenshteinEvaluations = levenshteinEvaluations;
+        this.blockProbes = blockProbes;
+        this.indexSize = indexSize;
+        this.neighbourhoodCacheHits = neighbourhoodCacheHits;
+        this.neighbourhoodCacheMisses = neighbourhoodCacheMisses;
+        this.prefilterRejections = prefilterRejections;
+        this.prefilterFalsePositives = prefilterFalsePositives;
+    }
+
+    public StageSnapshot getStage(DetectorStage stage) {
+        return stages[stage.ordinal()];
+    }
+
+    public StageSnapshot getIdentical() {
+        return getStage(DetectorStage.IDENTICAL);
+    }
+
+    public StageSnapshot getFlipped() {
+        return getStage(DetectorStage.FLIPPED);
+    }
+
+    public StageSnapshot getCombinations() {
+        return getStage(DetectorStage.COMBINATIONS);
+    }
+
+    /**
+     * Every checked name goes through the first stage.
+     */
+    public long getNamesChecked() {
+        return getIdentical().getProbes();
+    }
+
+    public long getDuplicatesFound() {
+
+        long duplicates = 0;
+        for (StageSnapshot stage : stages)
+            duplicates += stage.getHits();
+
+        return duplicates;
+    }
+
+    /**
+     * The distance computations between last names, one per last name candidate of the deletion neighbourhood.
+     */
+    public long getLevenshteinEvaluations() {
+        return levenshteinEvaluations;
+    }
+
+    /**
+     * The candidates probed in the index by the fuzzy stage, one blocking key per first name block and last name variant.
+     */
+    public long getBlockProbes() {
+        return blockProbes;
+    }
+
+    /**
+     * The size of the index at the start of the last run plus the names added since.
+     */
+    public long getIndexSize() {
+        return indexSize;
+    }
+
+    /**
+     * The lookups of last name neighbourhoods answered by the {@link NeighbourhoodCache} of the runs which
+     * build their own index, added up once every run is done.
+     */
+    public long getNeighbourhoodCacheHits() {
+        return neighbourhoodCacheHits;
+    }
+
+    public long getNeighbourhoodCacheMisses() {
+        return neighbourhoodCacheMisses;
+    }
+
+    /**
+     * The names the prefilter of the fuzzy stage proved to have no fuzzy duplicate, see {@link PrefilteredNameIndex}.
+     */
+    public long getPrefilterRejections() {
+        return prefilterRejections;
+    }
+
+    /**
+     * The names the prefilter passed on to the fuzzy stage which found no duplicate for them.
+     */
+    public long getPrefilterFalsePositives() {
+        return prefilterFalsePositives;
+    }
+
+    /**
+     * The share of the names without fuzzy duplicate which the prefilter failed to reject.
+     */
+    public double getPrefilterFalsePositiveRate() {
+
+        long negatives = prefilterRejections + prefilterFalsePositives;
+        return (negatives == 0) ? 0 : (double) prefilterFalsePositives / negatives;
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("names checked %d, duplicates %d, index size %d, levenshtein evaluations %d, block probes %d, neighbourhood cache hits %d, misses %d, prefilter rejections %d, false positives %d (%.1f%%)%n",
+                getNamesChecked(), getDuplicatesFound(), indexSize, levenshteinEvaluations, blockProbes, neighbourhoodCacheHits, neighbourhoodCacheMisses,
+                prefilterRejections, prefilterFalsePositives, 100 * getPrefilterFalsePositiveRate()));
+        for (DetectorStage stage : DetectorStage.values())
+            text.append(stage).append(" : ").append(getStage(stage)).append(String.format("%n"));
+
+        return text.toString();
+    }
+
+    /**
+     * Probes, hits and latencies of one stage.
+     */
+    public static final class StageSnapshot {
+
+        private final long probes;
+        private final long hits;
+        private final LatencyHistogram.Snapshot latency;
+
+        StageSnapshot(long probes, long hits, LatencyHistogram.Snapshot latency) {
+
+            this.probes = probes;
+            this.hits = hits;
+            this.latency = latency;
+        }
+
+        /**
+         * The names which reached the stage.
+         */
+        public long getProbes() {
+            return probes;
+        }
+
+        /**
+         * The names the stage found a duplicate for.
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        public double getHitRate() {
+            return (probes == 0) ? 0 : (double) hits / probes;
+        }
+
+        public LatencyHistogram.Snapshot getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("probes %d, hits %d (%.1f%%), latency %s", probes, hits, 100 * getHitRate(), latency);
+        }
+    }
+}
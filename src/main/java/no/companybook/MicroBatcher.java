@@ -0,0 +1,288 @@
+package no.companybook;
+
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Coalesces the names of concurrent requests into batches checked against the shared
+ * {@link ConcurrentNameDuplicationDetector}, on up to the given number of threads.
+ * <p>
+ * The batcher thread takes the oldest waiting request and everything queued behind it, up to the batch
+ * size. It never waits for a batch to fill up: under light load a batch is a single request, under heavy load
+ * requests pile up while the previous batch is checked and the next batch grows accordingly. The requests of
+ * a batch are split into lanes, see {@link #assignLanes}, where requests sharing a sorted key of any of their
+ * names go to the same lane, so identical and flipped names are still decided in arrival order. The batcher
+ * thread checks the first lane and the lane threads the others, each lane request by request and name by name.
+ * Near duplicates in different lanes are kept apart by the stripes of the detector, and the next batch starts
+ * once every lane is done. Requesting threads only park until their batch is done.
+ */
+final class MicroBatcher implements Closeable {
+
+    private final ConcurrentNameDuplicationDetector detector;
+    private final int maxBatchSize;
+    private final int threads;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread batcher;
+
+    // the threads of every lane but the first one, null for a single thread.
+    private final ExecutorService laneThreads;
+
+    private volatile boolean closed;
+
+
+    MicroBatcher(ConcurrentNameDuplicationDetector detector, int maxBatchSize) {
+        this(detector, maxBatchSize, Runtime.getRuntime().availableProcessors());
+    }
+
+    MicroBatcher(ConcurrentNameDuplicationDetector detector, int maxBatchSize, int threads) {
+
+        if (detector == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        if (maxBatchSize < 1)
+            throw new IllegalArgumentException("Batch size must be at least one");
+
+        if (threads < 1)
+            throw new IllegalArgumentException("Number of threads must be at least one");
+
+        this.detector = detector;
+        this.maxBatchSize = maxBatchSize;
+        this.threads = threads;
+
+        this.laneThreads = (threads == 1) ? null : Executors.newFixedThreadPool(threads - 1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+
+                Thread thread = new Thread(runnable, "name-batcher-lane");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        this.batcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                processBatches();
+            }
+        }, "name-batcher");
+        this.batcher.setDaemon(true);
+        this.batcher.start();
+    }
+
+    int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Checks the names in the order given and returns the match of every name, null for the new ones.
+     * Blocks until the batch holding the names is checked.
+     */
+    String[] check(List<String> names) throws InterruptedException {
+
+        if (names == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        if (closed)
+            throw new IllegalStateException("Batcher is closed");
+
+        Request request = new Request(names);
+        queue.add(request);
+
+        // a request queued while closing may have missed the final drain.
+        if (closed && queue.remove(request))
+            throw new IllegalStateException("Batcher is closed");
+
+        request.done.await();
+
+        if (request.failure != null)
+            throw request.failure;
+
+        return request.matches;
+    }
+
+    @Override
+    public void close() {
+
+        closed = true;
+        batcher.interrupt();
+
+        try {
+            batcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // lanes already handed out are still checked, their requests are waiting for them.
+        if (laneThreads != null)
+            laneThreads.shutdown();
+    }
+
+    private void processBatches() {
+
+        List<Request> batch = new ArrayList<>();
+
+        try {
+
+            while (!closed) {
+
+                batch.add(queue.take());
+                queue.drainTo(batch, maxBatchSize - 1);
+
+                if (laneThreads == null || batch.size() == 1)
+                    processLane(batch);
+                else
+                    processLanes(batch);
+
+                batch.clear();
+            }
+
+        } catch (InterruptedException e) {
+            // closed
+        }
+
+        // whatever is still queued fails instead of waiting forever.
+        batch.clear();
+        queue.drainTo(batch);
+        for (Request request : batch) {
+            request.failure = new IllegalStateException("Batcher is closed");
+            request.done.countDown();
+        }
+    }
+
+    private void processLanes(List<Request> batch) throws InterruptedException {
+
+        List<List<String>> requestNames = new ArrayList<>(batch.size());
+        for (Request request : batch)
+            requestNames.add(request.names);
+
+        int[] lanes = assignLanes(requestNames, threads, detector.getNameDuplicationDetector());
+        List<List<Request>> laneRequests = new ArrayList<>();
+        for (int i = 0; i < threads; i++)
+            laneRequests.add(new ArrayList<Request>());
+        for (int i = 0; i < batch.size(); i++)
+            laneRequests.get(lanes[i]).add(batch.get(i));
+
+        List<Future<?>> checkedLanes = new ArrayList<>();
+        for (int lane = 1; lane < threads; lane++) {
+
+            final List<Request> requests = laneRequests.get(lane);
+            if (requests.isEmpty())
+                continue;
+
+            checkedLanes.add(laneThreads.submit(new Runnable() {
+                @Override
+                public void run() {
+                    processLane(requests);
+                }
+            }));
+        }
+
+        processLane(laneRequests.get(0));
+
+        for (Future<?> checkedLane : checkedLanes) {
+            try {
+                checkedLane.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Checking a lane failed", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Returns the lane of every request, given the names of the requests in arrival order. Requests sharing a
+     * sorted key of one of their names are in the same lane, and the groups of requests sharing keys go to
+     * the lane with the fewest names so far, in the order of their first request.
+     */
+    static int[] assignLanes(List<List<String>> requestNames, int laneCount, NameDuplicationDetector nameDuplicationDetector) {
+
+        int size = requestNames.size();
+        UnionFind groups = new UnionFind(size);
+        Map<String, Integer> keyOwners = new HashMap<>();
+
+        for (int i = 0; i < size; i++) {
+            try {
+
+                for (String name : requestNames.get(i)) {
+                    for (String key : NamePartitioner.getSortedKeys(nameDuplicationDetector, name)) {
+
+                        Integer owner = keyOwners.get(key);
+                        if (owner == null)
+                            keyOwners.put(key, i);
+                        else
+                            groups.union(i, owner);
+                    }
+                }
+
+            } catch (RuntimeException e) {
+                // the check fails on the same name, the names before it are in the group already.
+            }
+        }
+
+        int[] groupSizes = new int[size];
+        for (int i = 0; i < size; i++)
+            groupSizes[groups.find(i)] += requestNames.get(i).size();
+
+        int[] laneOfGroup = new int[size];
+        Arrays.fill(laneOfGroup, -1);
+        long[] laneSizes = new long[laneCount];
+        int[] lanes = new int[size];
+
+        for (int i = 0; i < size; i++) {
+
+            int group = groups.find(i);
+            if (laneOfGroup[group] < 0) {
+
+                int lane = 0;
+                for (int j = 1; j < laneCount; j++) {
+                    if (laneSizes[j] < laneSizes[lane])
+                        lane = j;
+                }
+
+                laneOfGroup[group] = lane;
+                laneSizes[lane] += groupSizes[group];
+            }
+            lanes[i] = laneOfGroup[group];
+        }
+
+        return lanes;
+    }
+
+    private void processLane(List<Request> requests) {
+
+        for (Request request : requests)
+            process(request);
+    }
+
+    private void process(Request request) {
+
+        try {
+
+            for (int i = 0; i < request.matches.length; i++)
+                request.matches[i] = detector.checkAndInsert(request.names.get(i));
+
+        } catch (RuntimeException e) {
+
+            // only the failing request fails, the names checked before the failure stay accepted.
+            request.failure = e;
+
+        } finally {
+            request.done.countDown();
+        }
+    }
+
+    private static final class Request {
+
+        private final List<String> names;
+        private final String[] matches;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile RuntimeException failure;
+
+        Request(List<String> names) {
+
+            this.names = names;
+            this.matches = new String[names.size()];
+        }
+    }
+}
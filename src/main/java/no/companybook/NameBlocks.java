@@ -0,0 +1,218 @@
+package no.companybook;
+
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Blocking layer of the fuzzy matching stage: accepted names are registered in the {@link NameIndex} under
+ * keys of (first name block, sorted lower cased last name), where the block of a first name is each of its
+ * {@link FirstNameClusters} clusters, or the lower cased first name itself if it belongs to none.
+ * <p>
+ * A name is a fuzzy duplicate if its first name shares a block with the first name of an accepted name and
+ * one of its last name variants has the same chars as the last name of that accepted name, in either order
+ * of the name parts. Instead of building and sorting a candidate name for every first name variant and last
+ * name variant, the check probes one key per block and last name variant.
+ * <p>
+ * Probing the sorted keys of the candidate names also matched a candidate whose chars trade places between
+ * first and last name, such as "Bil Gatesl" for the accepted "Bill Gates", where the last name variant
+ * Gatesl comes from another accepted name. The blocks deliberately keep first and last name apart, so these
+ * anagrams across the parts are no longer fuzzy duplicates. An anagram of the whole name is still found by
+ * the identical case.
+ * <p>
+ * Only names of exactly two tokens are registered, a candidate of a first and a last name never matched
+ * the sorted key of a name with middle names either. Keys depend on the cluster ids, so an index saved
+ * with one first names file has to be used with the same file. Instances are immutable.
+ */
+final class NameBlocks {
+
+    static final char CLUSTER_TAG = '\u0001';
+    static final char NAME_TAG = '\u0002';
+
+    private final FirstNameClusters firstNameClusters;
+
+    // the group of every cluster, the smallest id of the clusters connected to it by shared first names.
+    private final int[] clusterGroups;
+
+
+    NameBlocks(FirstNameClusters firstNameClusters) {
+
+        if (firstNameClusters == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        this.firstNameClusters = firstNameClusters;
+        this.clusterGroups = groupClusters(firstNameClusters);
+    }
+
+    private static int[] groupClusters(FirstNameClusters firstNameClusters) {
+
+        UnionFind clusters = new UnionFind(firstNameClusters.getClusterCount());
+        for (int nameId = 0; nameId < firstNameClusters.size(); nameId++) {
+            for (int i = 1; i < firstNameClusters.getNameClusterCount(nameId); i++)
+                clusters.union(firstNameClusters.getNameClusterId(nameId, 0), firstNameClusters.getNameClusterId(nameId, i));
+        }
+
+        int[] groups = new int[clusters.size()];
+        int[] smallest = new int[clusters.size()];
+        Arrays.fill(smallest, -1);
+
+        // clusters are visited in id order, so the first cluster seen of a group is its smallest.
+        for (int clusterId = 0; clusterId < groups.length; clusterId++) {
+            int root = clusters.find(clusterId);
+            if (smallest[root] < 0)
+                smallest[root] = clusterId;
+            groups[clusterId] = smallest[root];
+        }
+
+        return groups;
+    }
+
+    /**
+     * Returns the id of the group of clusters the name belongs to, where clusters sharing a first name are in
+     * the same group, so that all variants of a first name get the same id. Returns -1 if the name belongs to
+     * no cluster.
+     */
+    int getClusterGroup(CharSequence name) {
+
+        int nameId = firstNameClusters.indexOf(name);
+        return (nameId < 0) ? -1 : clusterGroups[firstNameClusters.getNameClusterId(nameId, 0)];
+    }
+
+    /**
+     * Registers an accepted name of a first and a last name under its keys, in both orders of the name parts.
+     */
+    void register(String firstName, String lastName, String originalName, NameTokenizer tokenizer, NameIndex nameIndex) {
+
+        register(firstName, lastName, originalName, tokenizer, nameIndex, firstNameClusters.indexOf(firstName));
+        register(lastName, firstName, originalName, tokenizer, nameIndex, firstNameClusters.indexOf(lastName));
+    }
+
+    private void register(String firstName, String lastName, String originalName, NameTokenizer tokenizer, NameIndex nameIndex, int nameId) {
+
+        if (nameId < 0) {
+            nameIndex.addBlockedName(tokenizer.blockingKey(firstName, lastName), originalName);
+            return;
+        }
+
+        for (int i = 0; i < firstNameClusters.getNameClusterCount(nameId); i++)
+            nameIndex.addBlockedName(tokenizer.blockingKey(firstNameClusters.getNameClusterId(nameId, i), lastName), originalName);
+    }
+
+    /**
+     * Returns the first accepted name found in a block of the first name under one of the last names, or null.
+     * The number of keys probed is recorded into the metrics, unless they are null.
+     */
+    String find(String firstName, List<String> lastNames, NameTokenizer tokenizer, NameIndex nameIndex, DetectorMetrics metrics) {
+
+        int nameId = firstNameClusters.indexOf(firstName);
+        int probes = 0;
+        String match = null;
+
+        if (nameId < 0) {
+
+            for (String lastName : lastNames) {
+
+                probes++;
+                match = nameIndex.getBlockedName(tokenizer.blockingKey(firstName, lastName));
+                if (match != null)
+                    break;
+            }
+
+        } else {
+
+            clusters:
+            for (int i = 0; i < firstNameClusters.getNameClusterCount(nameId); i++) {
+
+                int clusterId = firstNameClusters.getNameClusterId(nameId, i);
+                for (String lastName : lastNames) {
+
+                    probes++;
+                    match = nameIndex.getBlockedName(tokenizer.blockingKey(clusterId, lastName));
+                    if (match != null)
+                        break clusters;
+                }
+            }
+        }
+
+        if (metrics != null)
+            metrics.recordBlockProbes(probes);
+
+        return match;
+    }
+
+    /**
+     * Returns false if the prefilter of the index proves that {@link #find} finds no accepted name for the
+     * first name under any last name within edit distance one of the given one.
+     */
+    boolean mayFind(String firstName, String lastName, NameTokenizer tokenizer, PrefilteredNameIndex nameIndex) {
+
+        int nameId = firstNameClusters.indexOf(firstName);
+        if (nameId < 0)
+            return nameIndex.mayHaveBlockedNameNear(tokenizer.blockingKey(firstName, lastName));
+
+        for (int i = 0; i < firstNameClusters.getNameClusterCount(nameId); i++) {
+            if (nameIndex.mayHaveBlockedNameNear(tokenizer.blockingKey(firstNameClusters.getNameClusterId(nameId, i), lastName)))
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Adds a hash of every block of the name part to the hashes, the same for names in the same block.
+     */
+    void addBlockHashes(String name, Collection<Long> hashes) {
+
+        int nameId = firstNameClusters.indexOf(name);
+        if (nameId < 0) {
+
+            long hash = NAME_TAG;
+            for (int i = 0; i < name.length(); i++)
+                hash = 31 * hash + Character.toLowerCase(name.charAt(i));
+            hashes.add(hash);
+            return;
+        }
+
+        for (int i = 0; i < firstNameClusters.getNameClusterCount(nameId); i++)
+            hashes.add(((long) CLUSTER_TAG << 32) | firstNameClusters.getNameClusterId(nameId, i));
+    }
+
+    /**
+     * Returns the keys {@link #register} registers the name under.
+     */
+    Set<String> getKeys(String firstName, String lastName, NameTokenizer tokenizer) {
+
+        Set<String> keys = new LinkedHashSet<>();
+        collectKeys(firstName, lastName, tokenizer, keys);
+        collectKeys(lastName, firstName, tokenizer, keys);
+
+        return keys;
+    }
+
+    /**
+     * Returns the keys {@link #find} probes for the first name and last names.
+     */
+    Set<String> getProbedKeys(String firstName, List<String> lastNames, NameTokenizer tokenizer) {
+
+        Set<String> keys = new LinkedHashSet<>();
+        for (String lastName : lastNames)
+            collectKeys(firstName, lastName, tokenizer, keys);
+
+        return keys;
+    }
+
+    private void collectKeys(String firstName, String lastName, NameTokenizer tokenizer, Set<String> keys) {
+
+        int nameId = firstNameClusters.indexOf(firstName);
+        if (nameId < 0) {
+            keys.add(tokenizer.blockingKey(firstName, lastName).toString());
+            return;
+        }
+
+        for (int i = 0; i < firstNameClusters.getNameClusterCount(nameId); i++)
+            keys.add(tokenizer.blockingKey(firstNameClusters.getNameClusterId(nameId, i), lastName).toString());
+    }
+}
@@ -0,0 +1,32 @@
+package no.companybook;
+
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event of the check of one name, from its first probe to the stage which decided it, see
+ * {@link NameDuplicationDetector#findDuplicate(String, NameIndex)}. Only checks over the threshold are
+ * recorded, which is set like the one of any JFR event, e.g.
+ * {@code -XX:StartFlightRecording:no.companybook.NameCheck#threshold=10ms}, or in a settings file.
+ */
+@Name("no.companybook.NameCheck")
+@Label("Name Check")
+@Description("Check of one name for a duplicate among the accepted names")
+@Category({"CompanyBook", "Duplicate Detection"})
+@Threshold("1 ms")
+@StackTrace(false)
+final class NameCheckEvent extends Event {
+
+    @Label("Name")
+    String name;
+
+    @Label("Name Length")
+    int nameLength;
+
+    @Label("Stage")
+    @Description("The stage which found the duplicate, or the last stage for a new name")
+    String stage;
+
+    @Label("Duplicate")
+    boolean duplicate;
+}
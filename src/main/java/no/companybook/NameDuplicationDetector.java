@@ -1,23 +1,149 @@
 package no.companybook;
 
 
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 
 public class NameDuplicationDetector {
 
     private static final ClassLoader loader = NameDuplicationDetector.class.getClassLoader();
-    private Map<String, List<String>> firstNamesVariationsLookup;
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+    private static final int DEFAULT_NEIGHBOURHOOD_CACHE_SIZE = 1 << 13;
+    private static final String CLUSTER_GROUP_TAG = "#";
+
+    // two reusable rows per thread for the banded distance computation, grown on demand.
+    private static final ThreadLocal<int[][]> levenshteinRows = new ThreadLocal<int[][]>() {
+        @Override
+        protected int[][] initialValue() {
+            return new int[2][32];
+        }
+    };
+
+    // bit-parallel distance kernel per thread, holding the masks of the last name being verified.
+    private static final ThreadLocal<BitParallelDistance> distanceKernels = new ThreadLocal<BitParallelDistance>() {
+        @Override
+        protected BitParallelDistance initialValue() {
+            return new BitParallelDistance();
+        }
+    };
+
+    // the flight recorder events, where the JVM has them.
+    private static final CheckRecorder checkRecorder = newCheckRecorder();
+
+    // tokenizer buffers per thread, so that the detector can be shared by the parallel tasks.
+    private static final ThreadLocal<NameTokenizer> tokenizers = new ThreadLocal<NameTokenizer>() {
+        @Override
+        protected NameTokenizer initialValue() {
+            return new NameTokenizer();
+        }
+    };
+
+    // loaded on first use by the class loader, which makes the construction thread safe.
+    private static final class DefaultNameBlocks {
+        static final NameBlocks NAME_BLOCKS = new NameBlocks(readFirstNameClusters());
+    }
+
+    private NameBlocks nameBlocks;
+
+    // null unless metrics are switched on, which keeps the stages free of clock reads and counters.
+    private volatile DetectorMetrics metrics;
+
+    private volatile int neighbourhoodCacheSize = DEFAULT_NEIGHBOURHOOD_CACHE_SIZE;
+
+    private volatile DistanceThreshold distanceThreshold = DistanceThreshold.DISTANCE_ONE;
+
+    private volatile boolean prefilter;
+
+    private volatile PhoneticEncoding phoneticEncoding;
 
 
     public NameDuplicationDetector() {
 
-        // initialize the hash table only once during object construction, to prevent further manipulation.
-        initializeFirstNameVariationLookupMap();
+        // the first name variations are loaded once and shared, they are immutable to prevent further manipulation.
+        this.nameBlocks = DefaultNameBlocks.NAME_BLOCKS;
+
+    }
+
+    /**
+     * Switches the recording of {@link DetectorMetrics} on, or off with null.
+     */
+    public void setMetrics(DetectorMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public DetectorMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the number of last name neighbourhoods cached by the runs which build their own index, see
+     * {@link CachingNameIndex}, or switches the cache off with 0.
+     */
+    public void setNeighbourhoodCacheSize(int neighbourhoodCacheSize) {
 
+        if (neighbourhoodCacheSize < 0)
+            throw new IllegalArgumentException("The cache size must not be negative");
+
+        this.neighbourhoodCacheSize = neighbourhoodCacheSize;
+    }
+
+    public int getNeighbourhoodCacheSize() {
+        return neighbourhoodCacheSize;
+    }
+
+    /**
+     * Sets the edit distance up to which last names are taken for misspellings of each other, one by default.
+     * Distances above one are looked up in a trie of the last names, see {@link LastNameTrie}.
+     */
+    public void setDistanceThreshold(DistanceThreshold distanceThreshold) {
+
+        if (distanceThreshold == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        this.distanceThreshold = distanceThreshold;
+    }
+
+    public DistanceThreshold getDistanceThreshold() {
+        return distanceThreshold;
+    }
+
+    /**
+     * Switches the prefilter of the runs which build their own index on or off, see {@link PrefilteredNameIndex}.
+     * Names which cannot have a fuzzy duplicate then skip the last name neighbourhood and the block probes.
+     * It pays off without the neighbourhood cache, which computes the neighbourhood of every accepted last
+     * name anyway. Off by default.
+     */
+    public void setPrefilter(boolean prefilter) {
+        this.prefilter = prefilter;
+    }
+
+    public boolean isPrefilter() {
+        return prefilter;
+    }
+
+    /**
+     * Sets the phonetic code by which the runs which build their own index look up the last names beyond
+     * distance one, see {@link PhoneticNameIndex}, or null to look them up in the trie, the default. The last
+     * names within distance one are looked up as always, those further away are only looked up among the
+     * ones with the code of the checked last name, still verified against the distance threshold. It takes a
+     * hash probe instead of a walk of the trie, but misses the misspellings beyond distance one which change
+     * the code. Deployments choose the code which fits the spelling variants of their names, it makes no
+     * difference at a threshold of one.
+     */
+    public void setPhoneticEncoding(PhoneticEncoding phoneticEncoding) {
+        this.phoneticEncoding = phoneticEncoding;
+    }
+
+    public PhoneticEncoding getPhoneticEncoding() {
+        return phoneticEncoding;
     }
 
     public List<Pair<String, String>> checkDuplicates(List<String> inputNames) {
@@ -29,54 +155,570 @@ public class NameDuplicationDetector {
             throw new IllegalArgumentException("Input names are empty");
         }
 
-        // initialize the required data structures.
-        Map<String, String> namesMap = new HashMap<>();
-        List<Pair<String, String>> listOfDuplicates = new LinkedList<>();
+        final List<Pair<String, String>> listOfDuplicates = new LinkedList<>();
+
+        checkDuplicates(inputNames.iterator(), new DuplicateSink() {
+            @Override
+            public void accept(Pair<String, String> duplicate) {
+                listOfDuplicates.add(duplicate);
+            }
+        });
+
+        return listOfDuplicates;
+    }
+
+    /**
+     * Streaming variant of {@link #checkDuplicates(List)}: names are pulled from the iterator one at a time
+     * and every duplicate is handed to the sink as soon as it is identified. Apart from the index of the
+     * accepted names nothing is retained, so the input may be arbitrarily long.
+     */
+    public void checkDuplicates(Iterator<String> inputNames, DuplicateSink sink) {
+
+        checkDuplicates(inputNames, sink, newNameIndex());
+    }
+
+    /**
+     * Checks the names against an existing index, e.g. a {@link MappedNameIndex} saved by a previous run,
+     * and adds every new name to it.
+     */
+    public void checkDuplicates(Iterator<String> inputNames, DuplicateSink sink, NameIndex nameIndex) {
+
+        if (inputNames == null || sink == null || nameIndex == null)
+            throw new NullPointerException("Input is NUll");
+
+        recordIndexSize(nameIndex);
 
         // identify the duplicates
-        for (String originalName : inputNames) {
+        while (inputNames.hasNext()) {
+            checkName(inputNames.next(), nameIndex, sink);
+        }
 
-            // preprocess the name.
-            String firstLastNameOnly = eliminateMiddleNames(originalName);
-            boolean flag = true;
-            String match = "";
+        recordNeighbourhoodCache(nameIndex);
+    }
+
+    /**
+     * Reads one name per line from the reader, see {@link #checkDuplicates(Iterator, DuplicateSink)}.
+     */
+    public void checkDuplicates(Reader input, DuplicateSink sink) throws IOException {
+
+        checkDuplicates(input, sink, newNameIndex());
+    }
+
+    /**
+     * Reads one name per line from the reader, see {@link #checkDuplicates(Iterator, DuplicateSink, NameIndex)}.
+     */
+    public void checkDuplicates(Reader input, DuplicateSink sink, NameIndex nameIndex) throws IOException {
+
+        if (input == null || sink == null || nameIndex == null)
+            throw new NullPointerException("Input is NUll");
+
+        BufferedReader reader = (input instanceof BufferedReader) ? (BufferedReader) input : new BufferedReader(input, READ_BUFFER_SIZE);
+        recordIndexSize(nameIndex);
+
+        String originalName;
+        while ((originalName = reader.readLine()) != null) {
+            checkName(originalName, nameIndex, sink);
+        }
+
+        recordNeighbourhoodCache(nameIndex);
+    }
+
+    /**
+     * Reads one name per line from the UTF-8 encoded file, see {@link #checkDuplicates(Iterator, DuplicateSink)}.
+     */
+    public void checkDuplicates(Path inputFile, DuplicateSink sink) throws IOException {
+
+        checkDuplicates(inputFile, sink, newNameIndex());
+    }
+
+    /**
+     * Reads one name per line from the UTF-8 encoded file, see {@link #checkDuplicates(Iterator, DuplicateSink, NameIndex)}.
+     */
+    public void checkDuplicates(Path inputFile, DuplicateSink sink, NameIndex nameIndex) throws IOException {
+
+        if (inputFile == null || sink == null || nameIndex == null)
+            throw new NullPointerException("Input is NUll");
+
+        try (BufferedReader reader = Files.newBufferedReader(inputFile, StandardCharsets.UTF_8)) {
+            checkDuplicates(reader, sink, nameIndex);
+        }
+    }
+
+    /**
+     * Variant of {@link #checkDuplicates(List)} returning the duplicates grouped into clusters of input
+     * positions, see {@link DuplicateClusters}.
+     */
+    public DuplicateClusters checkDuplicateClusters(List<String> inputNames) {
+
+        if (inputNames == null)
+            throw new NullPointerException("Input is NUll");
+
+        if (inputNames.size() < 1) {
+            throw new IllegalArgumentException("Input names are empty");
+        }
 
-            // case : Identical.
-            String sortedName = sortString(firstLastNameOnly);
-            if (namesMap.containsKey(sortedName)) {
+        return checkDuplicateClusters(inputNames.iterator(), inputNames.size());
+    }
+
+    /**
+     * Streaming variant of {@link #checkDuplicateClusters(List)}. Every name gets its position as id, and
+     * every duplicate is merged into the cluster of the id of the name it matched, so no pair is built per
+     * duplicate, and the transitive groups come out of the union-find directly.
+     */
+    public DuplicateClusters checkDuplicateClusters(Iterator<String> inputNames) {
+
+        return checkDuplicateClusters(inputNames, 0);
+    }
+
+    private DuplicateClusters checkDuplicateClusters(Iterator<String> inputNames, int expectedSize) {
+
+        if (inputNames == null)
+            throw new NullPointerException("Input is NUll");
+
+        NameIndex nameIndex = newNameIndex();
+        NameIds acceptedNameIds = new NameIds(expectedSize);
+        UnionFind clusters = new UnionFind(0);
+        clusters.ensureCapacity(expectedSize);
+        int duplicateCount = 0;
+
+        recordIndexSize(nameIndex);
+
+        while (inputNames.hasNext()) {
 
-                flag = false;
-                listOfDuplicates.add(new Pair<String, String>(originalName, namesMap.get(sortedName)));
+            String originalName = inputNames.next();
+            int id = clusters.add();
 
+            String match = findDuplicate(originalName, nameIndex);
+            if (match != null) {
+                clusters.union(id, acceptedNameIds.get(match));
+                duplicateCount++;
+            } else {
+                acceptName(originalName, nameIndex);
+                acceptedNameIds.put(originalName, id);
             }
+        }
+
+        recordNeighbourhoodCache(nameIndex);
+
+        return new DuplicateClusters(clusters, duplicateCount);
+    }
+
+    /**
+     * Pipelined variant of {@link #checkDuplicates(Iterator, DuplicateSink)}, see
+     * {@link #checkDuplicatesPipelined(Iterator, DuplicateSink, NameIndex, int)}.
+     */
+    public void checkDuplicatesPipelined(Iterator<String> inputNames, DuplicateSink sink, int workers) {
+
+        checkDuplicatesPipelined(inputNames, sink, newNameIndex(), workers);
+    }
+
+    /**
+     * Checks the names like {@link #checkDuplicates(Iterator, DuplicateSink, NameIndex)}, with the same
+     * duplicates handed to the sink in the same order, but with the preprocessing of the names moved to the
+     * given number of worker threads. Only the index probes and inserts, which depend on the names accepted
+     * before, stay on the calling thread, see {@link NamePipeline}. The input is read by a thread of its
+     * own, at most a bounded number of names ahead of the check.
+     */
+    public void checkDuplicatesPipelined(Iterator<String> inputNames, DuplicateSink sink, NameIndex nameIndex, int workers) {
+
+        if (inputNames == null || sink == null || nameIndex == null)
+            throw new NullPointerException("Input is NUll");
+
+        if (workers < 1)
+            throw new IllegalArgumentException("Workers must be at least one");
+
+        recordIndexSize(nameIndex);
+
+        new NamePipeline(this, workers).run(inputNames, sink, nameIndex);
+
+        recordNeighbourhoodCache(nameIndex);
+    }
+
+    private NameIndex newNameIndex() {
+        return wrapNameIndex(new InMemoryNameIndex(), neighbourhoodCacheSize);
+    }
+
+    // the indexes of the settings on top of the given one.
+    private NameIndex wrapNameIndex(NameIndex nameIndex, int cacheSize) {
+
+        if (cacheSize > 0)
+            nameIndex = new CachingNameIndex(nameIndex, cacheSize);
+
+        PhoneticEncoding phoneticEncoding = this.phoneticEncoding;
+        if (phoneticEncoding != null)
+            nameIndex = new PhoneticNameIndex(nameIndex, phoneticEncoding);
+
+        return prefilter ? new PrefilteredNameIndex(nameIndex) : nameIndex;
+    }
+
+    private void recordNeighbourhoodCache(NameIndex nameIndex) {
+
+        DetectorMetrics metrics = this.metrics;
+        if (nameIndex instanceof PrefilteredNameIndex)
+            nameIndex = ((PrefilteredNameIndex) nameIndex).getNameIndex();
+        if (nameIndex instanceof PhoneticNameIndex)
+            nameIndex = ((PhoneticNameIndex) nameIndex).getNameIndex();
+        if (metrics != null && nameIndex instanceof CachingNameIndex) {
+            NeighbourhoodCache neighbourhoodCache = ((CachingNameIndex) nameIndex).getNeighbourhoodCache();
+            metrics.recordNeighbourhoodCache(neighbourhoodCache.getHits(), neighbourhoodCache.getMisses());
+        }
+    }
+
+    private void checkName(String originalName, NameIndex nameIndex, DuplicateSink sink) {
+
+        String match = findDuplicate(originalName, nameIndex);
+
+        if (match != null) {
+            sink.accept(new Pair<String, String>(originalName, match));
+        } else {
+            acceptName(originalName, nameIndex);
+        }
+    }
+
+    /**
+     * Checks the input names for duplicates using up to the given number of threads, with the same result
+     * as {@link #checkDuplicates(List)}. The names are split into blocks which cannot influence each
+     * other's outcome, every block is processed sequentially in input order, and the matches are merged
+     * back by input position, so the first occurrence of a name still wins.
+     */
+    public List<Pair<String, String>> checkDuplicates(List<String> inputNames, int parallelism) {
+
+        if (inputNames == null)
+            throw new NullPointerException("Input is NUll");
+
+        if (inputNames.size() < 1) {
+            throw new IllegalArgumentException("Input names are empty");
+        }
+
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least one");
+
+        final String[] names = inputNames.toArray(new String[inputNames.size()]);
+        final String[] matches = new String[names.length];
+        DetectorMetrics metrics = this.metrics;
+        if (metrics != null)
+            metrics.recordIndexSize(0);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+        try {
+
+            List<int[]> blocks = new NamePartitioner(this, pool).partition(names);
+
+            // group the blocks into tasks of similar size, a block is never split across tasks.
+            int taskSize = Math.max(1, names.length / (parallelism * 8));
+            List<Callable<Void>> tasks = new ArrayList<>();
+            List<int[]> taskBlocks = new ArrayList<>();
+            int taskNames = 0;
+
+            for (int[] block : blocks) {
+
+                taskBlocks.add(block);
+                taskNames += block.length;
+
+                if (taskNames >= taskSize) {
+                    tasks.add(checkBlocksTask(taskBlocks, names, matches));
+                    taskBlocks = new ArrayList<>();
+                    taskNames = 0;
+                }
+            }
+            if (!taskBlocks.isEmpty())
+                tasks.add(checkBlocksTask(taskBlocks, names, matches));
+
+            NamePartitioner.invokeAll(pool, tasks);
+
+        } finally {
+            pool.shutdown();
+        }
+
+        // merge the matches in input order.
+        List<Pair<String, String>> listOfDuplicates = new LinkedList<>();
+        for (int i = 0; i < names.length; i++) {
+            if (matches[i] != null)
+                listOfDuplicates.add(new Pair<String, String>(names[i], matches[i]));
+        }
+
+        return listOfDuplicates;
+    }
+
+    private Callable<Void> checkBlocksTask(final List<int[]> blocks, final String[] names, final String[] matches) {
+
+        return new Callable<Void>() {
+            @Override
+            public Void call() {
+
+                for (int[] block : blocks) {
+
+                    // every block starts from an empty index, as no name outside of it can match.
+                    NameIndex nameIndex = wrapNameIndex(new InMemoryNameIndex(), 0);
+
+                    for (int i : block) {
+
+                        matches[i] = findDuplicate(names[i], nameIndex);
+                        if (matches[i] == null)
+                            acceptName(names[i], nameIndex);
+                    }
+                }
+
+                return null;
+            }
+        };
+    }
 
-            // case : change of name parts.
-            sortedName = sortString(flipOrderOfNameParts(firstLastNameOnly));
-            if (flag && namesMap.containsKey(sortedName)) {
+    /**
+     * Returns the previously accepted name the given name duplicates, or null if it is a new name.
+     */
+    String findDuplicate(String originalName, NameIndex nameIndex) {
 
-                flag = false;
-                listOfDuplicates.add(new Pair<String, String>(originalName, namesMap.get(sortedName)));
+        Object check = checkRecorder.beginNameCheck();
 
+        DetectorMetrics metrics = this.metrics;
+        long begin = (metrics != null) ? System.nanoTime() : 0;
+        long start = begin;
+        NameTokenizer tokenizer = tokenizers.get();
+
+        // single pass over the common form of a name, single token names take the regular path below.
+        if (tokenizer.tokenize(originalName) && tokenizer.getTokenCount() > 1) {
+
+            // case : Identical, which also covers the change of name parts as both have the same sorted key.
+            String match = nameIndex.get(tokenizer.getFirstLastNameKey());
+            if (metrics != null)
+                start = metrics.recordStage(DetectorStage.IDENTICAL, start, match);
+            if (match != null) {
+                return nameChecked(check, originalName, DetectorStage.IDENTICAL, match, begin, start);
             }
 
             // case : variation of first name && misspelling last name.
-            if (flag && (match = checkDuplicatesByCombinations(firstLastNameOnly, namesMap)) != null) {
+            match = checkDuplicatesByCombinations(tokenizer.getFirstName(), tokenizer.getLastName(), nameIndex);
+            if (metrics != null)
+                start = metrics.recordStage(DetectorStage.COMBINATIONS, start, match);
+            return nameChecked(check, originalName, DetectorStage.COMBINATIONS, match, begin, start);
+        }
+
+        // preprocess the name.
+        String firstLastNameOnly = eliminateMiddleNames(originalName);
+
+        // case : Identical.
+        String match = nameIndex.get(sortString(firstLastNameOnly));
+        if (metrics != null)
+            start = metrics.recordStage(DetectorStage.IDENTICAL, start, match);
+        if (match != null) {
+            return nameChecked(check, originalName, DetectorStage.IDENTICAL, match, begin, start);
+        }
+
+        // case : change of name parts.
+        match = nameIndex.get(sortString(flipOrderOfNameParts(firstLastNameOnly)));
+        if (metrics != null)
+            start = metrics.recordStage(DetectorStage.FLIPPED, start, match);
+        if (match != null) {
+            return nameChecked(check, originalName, DetectorStage.FLIPPED, match, begin, start);
+        }
+
+        // case : variation of first name && misspelling last name.
+        String[] firstLastNameSplits = firstLastNameOnly.split("\\s");
+        match = checkDuplicatesByCombinations(firstLastNameSplits[0], firstLastNameSplits[1], nameIndex);
+        if (metrics != null)
+            start = metrics.recordStage(DetectorStage.COMBINATIONS, start, match);
+        return nameChecked(check, originalName, DetectorStage.COMBINATIONS, match, begin, start);
+    }
+
+    /**
+     * Ends the check of a name, decided by the given stage, for the flight recorder and the slowest names
+     * of the metrics, and returns its match.
+     */
+    private String nameChecked(Object check, String originalName, DetectorStage stage, String match, long begin, long end) {
+
+        checkRecorder.endNameCheck(check, originalName, stage, match != null);
+
+        DetectorMetrics metrics = this.metrics;
+        if (metrics != null)
+            metrics.recordName(originalName, stage, end - begin);
+
+        return match;
+    }
+
+    private void recordIndexSize(NameIndex nameIndex) {
+
+        DetectorMetrics metrics = this.metrics;
+        if (metrics != null)
+            metrics.recordIndexSize(nameIndex.size());
+    }
+
+    /**
+     * Adds a new name to the index, keeping the last names in line with the accepted names.
+     */
+    void acceptName(String originalName, NameIndex nameIndex) {
+
+        NameTokenizer tokenizer = tokenizers.get();
 
-                flag = false;
-                listOfDuplicates.add(new Pair<String, String>(originalName, match));
-                match = "";
+        // the name usually is the one findDuplicate has just tokenized.
+        if (tokenizer.isTokenized(originalName) || tokenizer.tokenize(originalName)) {
 
+            String lastName = tokenizer.getLastName();
+
+            String replacedName = nameIndex.put(tokenizer.getNameKey(), originalName);
+            if (replacedName != null)
+                nameIndex.removeLastName(getLastNameOnly(replacedName));
+            else
+                recordNameAdded();
+            nameIndex.addLastName(lastName);
+
+            // names with middle names never take part in the fuzzy matching.
+            if (tokenizer.getTokenCount() == 2)
+                nameBlocks.register(tokenizer.getFirstName(), lastName, originalName, tokenizer, nameIndex);
+            return;
+        }
+
+        String replacedName = nameIndex.put(sortString(originalName), originalName);
+        if (replacedName != null)
+            nameIndex.removeLastName(getLastNameOnly(replacedName));
+        else
+            recordNameAdded();
+        nameIndex.addLastName(getLastNameOnly(originalName));
+
+        String[] blockedNameParts = getBlockedNameParts(originalName);
+        if (blockedNameParts != null)
+            nameBlocks.register(blockedNameParts[0], blockedNameParts[1], originalName, tokenizer, nameIndex);
+    }
+
+    /**
+     * Returns the first and last name a name outside of the common form is registered in the blocks by, or
+     * null. Like in the common form these are names of two tokens separated by a single space, the only
+     * names a candidate of a first and a last name ever matched the sorted key of.
+     */
+    static String[] getBlockedNameParts(String originalName) {
+
+        String[] nameParts = originalName.split("\\s", -1);
+        if (nameParts.length != 2 || nameParts[0].isEmpty() || nameParts[1].isEmpty())
+            return null;
+
+        return (originalName.charAt(nameParts[0].length()) == ' ') ? nameParts : null;
+    }
+
+    /**
+     * Computes the parts of the name's check which do not depend on the index, see {@link PreparedName}.
+     * Safe to call from any thread, ahead of the check itself.
+     */
+    PreparedName prepareName(String originalName) {
+
+        NameTokenizer tokenizer = tokenizers.get();
+        String firstLastNameKey = null;
+        String flippedKey = null;
+        String[] firstLastNameSplits = null;
+        RuntimeException findFailure = null;
+
+        // the same paths as findDuplicate and acceptName, the keys are copied out of the tokenizer buffers.
+        try {
+
+            if (tokenizer.tokenize(originalName) && tokenizer.getTokenCount() > 1) {
+
+                firstLastNameKey = tokenizer.getFirstLastNameKey().toString();
+                firstLastNameSplits = new String[]{tokenizer.getFirstName(), tokenizer.getLastName()};
+
+            } else {
+
+                String firstLastNameOnly = eliminateMiddleNames(originalName);
+                firstLastNameKey = sortString(firstLastNameOnly);
+                flippedKey = sortString(flipOrderOfNameParts(firstLastNameOnly));
+                firstLastNameSplits = firstLastNameOnly.split("\\s");
             }
 
+        } catch (RuntimeException e) {
+            findFailure = e;
+        }
+
+        String nameKey = null;
+        String indexedLastName = null;
+        boolean blocked = false;
+        RuntimeException acceptFailure = null;
 
-            // case : a new name.
-            if (flag) {
-                namesMap.put(sortString(originalName), originalName);
+        try {
+
+            if (tokenizer.isTokenized(originalName) || tokenizer.tokenize(originalName)) {
+
+                nameKey = tokenizer.getNameKey().toString();
+                indexedLastName = tokenizer.getLastName();
+                blocked = tokenizer.getTokenCount() == 2;
+
+            } else {
+
+                nameKey = sortString(originalName);
+                indexedLastName = getLastNameOnly(originalName);
+                blocked = getBlockedNameParts(originalName) != null;
             }
+
+        } catch (RuntimeException e) {
+            acceptFailure = e;
         }
 
+        return new PreparedName(originalName, firstLastNameKey, flippedKey, firstLastNameSplits, findFailure,
+                nameKey, indexedLastName, blocked, acceptFailure);
+    }
 
-        return listOfDuplicates;
+    /**
+     * {@link #findDuplicate(String, NameIndex)} of a prepared name, which is left with the index probes.
+     */
+    String findDuplicate(PreparedName name, NameIndex nameIndex) {
+
+        if (name.findFailure != null)
+            throw name.findFailure;
+
+        Object check = checkRecorder.beginNameCheck();
+
+        DetectorMetrics metrics = this.metrics;
+        long begin = (metrics != null) ? System.nanoTime() : 0;
+        long start = begin;
+
+        // case : Identical.
+        String match = nameIndex.get(name.firstLastNameKey);
+        if (metrics != null)
+            start = metrics.recordStage(DetectorStage.IDENTICAL, start, match);
+        if (match != null) {
+            return nameChecked(check, name.originalName, DetectorStage.IDENTICAL, match, begin, start);
+        }
+
+        // case : change of name parts, only probed separately outside of the common form.
+        if (name.flippedKey != null) {
+
+            match = nameIndex.get(name.flippedKey);
+            if (metrics != null)
+                start = metrics.recordStage(DetectorStage.FLIPPED, start, match);
+            if (match != null) {
+                return nameChecked(check, name.originalName, DetectorStage.FLIPPED, match, begin, start);
+            }
+        }
+
+        // case : variation of first name && misspelling last name.
+        match = checkDuplicatesByCombinations(name.firstLastNameSplits[0], name.firstLastNameSplits[1], nameIndex);
+        if (metrics != null)
+            start = metrics.recordStage(DetectorStage.COMBINATIONS, start, match);
+        return nameChecked(check, name.originalName, DetectorStage.COMBINATIONS, match, begin, start);
+    }
+
+    /**
+     * {@link #acceptName(String, NameIndex)} of a prepared name.
+     */
+    void acceptName(PreparedName name, NameIndex nameIndex) {
+
+        if (name.acceptFailure != null)
+            throw name.acceptFailure;
+
+        String replacedName = nameIndex.put(name.nameKey, name.originalName);
+        if (replacedName != null)
+            nameIndex.removeLastName(getLastNameOnly(replacedName));
+        else
+            recordNameAdded();
+        nameIndex.addLastName(name.indexedLastName);
+
+        if (name.blocked)
+            nameBlocks.register(name.firstLastNameSplits[0], name.indexedLastName, name.originalName, tokenizers.get(), nameIndex);
+    }
+
+    private void recordNameAdded() {
+
+        DetectorMetrics metrics = this.metrics;
+        if (metrics != null)
+            metrics.recordNameAdded();
     }
 
     public String eliminateMiddleNames(String fullName) {
@@ -111,6 +753,10 @@ public class NameDuplicationDetector {
         if (unsorted == "")
             throw new IllegalArgumentException("Empty Strings are not allowed");
 
+        CharSequence sorted = tokenizers.get().sort(unsorted);
+        if (sorted != null)
+            return sorted.toString();
+
         char[] unsortedArray = unsorted.toLowerCase().toCharArray();
         Arrays.sort(unsortedArray);
 
@@ -186,42 +832,105 @@ public class NameDuplicationDetector {
         return distance[source.length()][target.length()];
     }
 
-    private void initializeFirstNameVariationLookupMap() {
+    /**
+     * Checks whether the Levenshtein distance between source and target is at most max, without
+     * allocating. Only the diagonal band of width 2 * max + 1 is computed, using two rows which are
+     * reused per thread, and the computation stops as soon as a whole row of the band exceeds max.
+     */
+    public boolean withinDistance(CharSequence source, CharSequence target, int max) {
 
-        List<String> data = readFirstNamesDataFile();
-        this.firstNamesVariationsLookup = new HashMap<>();
+        if (source == null || target == null)
+            throw new NullPointerException("Null Input String");
 
-        for (String line : data) {
+        if (max < 0)
+            throw new IllegalArgumentException("The maximum distance must not be negative");
 
-            // preprocess the data into a reasonable structure for faster lookup.
-            String[] keyValueSplits = line.split("-");
-            String key = keyValueSplits[0].trim();
-            String value = keyValueSplits[1].trim();
+        int sourceLength = source.length();
+        int targetLength = target.length();
 
-            //TODO: I have used this initialization way in the beginning, but the variant names contains a white space prefix which affects the hashing value. Instead of invoking String.trim() upon each comparison,
-            // TODO: I initialized the hash table with the trimmed variants, to avoid creating many objects during the computation. I think this may increase the JVM garbage collection.
-            //List<String> valuesList = new LinkedList<>(Arrays.asList(value.split(",")));
+        // the length difference alone is a lower bound of the distance.
+        if (Math.abs(sourceLength - targetLength) > max)
+            return false;
 
-            List<String> valuesList = new LinkedList<>();
-            for (String stringValue : value.split(",")) {
-                valuesList.add(stringValue.trim());
-            }
+        if (sourceLength == 0 || targetLength == 0)
+            return true;
 
+        int[][] rows = levenshteinRows.get();
+        if (rows[0].length < targetLength + 2) {
+            rows[0] = new int[targetLength + 2];
+            rows[1] = new int[targetLength + 2];
+        }
 
-            if (firstNamesVariationsLookup.containsKey(key)) {
-                firstNamesVariationsLookup.get(key).addAll(valuesList);
-            } else {
-                firstNamesVariationsLookup.put(key, valuesList);
+        // every value above max is clamped to max + 1, it makes no difference to the outcome.
+        int exceeded = max + 1;
+        int[] previous = rows[0];
+        int[] current = rows[1];
+
+        int firstRowEnd = Math.min(targetLength, max);
+        for (int j = 0; j <= firstRowEnd; j++)
+            previous[j] = j;
+        previous[firstRowEnd + 1] = exceeded;
+
+        for (int i = 1; i <= sourceLength; i++) {
+
+            int from = Math.max(1, i - max);
+            int to = Math.min(targetLength, i + max);
+            char sourceChar = source.charAt(i - 1);
+
+            current[from - 1] = (from == 1) ? Math.min(i, exceeded) : exceeded;
+            int rowMinimum = current[from - 1];
+
+            for (int j = from; j <= to; j++) {
+
+                int value = minimum(
+                        previous[j] + 1,
+                        current[j - 1] + 1,
+                        previous[j - 1] + ((sourceChar == target.charAt(j - 1)) ? 0 : 1));
+
+                current[j] = Math.min(value, exceeded);
+                rowMinimum = Math.min(rowMinimum, current[j]);
             }
+
+            if (rowMinimum > max)
+                return false;
+
+            // the cell right of the band is read by the next row, and has to count as out of reach.
+            if (to < targetLength)
+                current[to + 1] = exceeded;
+
+            int[] swap = previous;
+            previous = current;
+            current = swap;
         }
+
+        return previous[targetLength] <= max;
     }
 
-    private List<String> readFirstNamesDataFile() {
+    private static FirstNameClusters readFirstNameClusters() {
+
+        // the variations compiled by the build, see FirstNameClusters, read from the class path as a stream,
+        // which also works when the classes are packaged into a jar.
+        try (InputStream input = loader.getResourceAsStream("data/Firstnames.bin")) {
+
+            if (input != null)
+                return FirstNameClusters.read(input);
+
+        } catch (IOException e) {
+
+            System.err.println("Reading compiled First Names file causes error due to " + e);
+        }
+
+        return FirstNameClusters.parse(readFirstNamesDataFile());
+    }
+
+    private static List<String> readFirstNamesDataFile() {
 
         List<String> lines = null;
-        try {
 
-            lines = FileUtils.readLines(new File(loader.getResource("data/Firstnames.txt").getFile()));
+        // read from the class path as a stream, which also works when the classes are packaged into a jar.
+        try (InputStream input = loader.getResourceAsStream("data/Firstnames.txt")) {
+
+            lines = IOUtils.readLines(input, StandardCharsets.UTF_8);
 
         } catch (IOException e) {
 
@@ -231,78 +940,223 @@ public class NameDuplicationDetector {
         return lines;
     }
 
-    private String checkDuplicatesByCombinations(String firstLastNameOnly, Map<String, String> namesMap) {
+    String checkDuplicatesByCombinations(String firstName, String lastName, NameIndex nameIndex) {
 
-        String[] firstLastNameSplits = firstLastNameOnly.split("\\s");
-        String firstName = firstLastNameSplits[0];
-        String lastName = firstLastNameSplits[1];
+        Object check = checkRecorder.beginFuzzyStage();
 
-        List<String> allFirstNameVariants = this.firstNamesVariationsLookup.get(firstName);
-        List<String> allLastNameVariants = getAllLastNameWithinDistanceOne(lastName, namesMap);
-        StringBuilder candidateName = new StringBuilder();
-        String sortedName = "";
+        DetectorMetrics metrics = this.metrics;
 
-        // check the existence of all the possible combinations.
+        // the prefilter covers the neighbourhood of distance one, larger ones always take the full check.
+        boolean prefiltered = nameIndex instanceof PrefilteredNameIndex && distanceThreshold.getMaxDistance(lastName.length()) <= 1;
+        if (prefiltered && !nameBlocks.mayFind(firstName, lastName, tokenizers.get(), (PrefilteredNameIndex) nameIndex)) {
+            if (metrics != null)
+                metrics.recordPrefilter(false, null);
+            return fuzzyStageChecked(check, firstName, lastName, 0, true, null);
+        }
 
-        if (allFirstNameVariants != null && allFirstNameVariants.size() > 0 && allLastNameVariants != null && allLastNameVariants.size() > 0) {
-            for (String fName : allFirstNameVariants) {
+        // the last name itself is probed, if no accepted last name is within the distance.
+        List<String> allLastNameVariants = getAllLastNameVariants(lastName, nameIndex);
+        int candidates = allLastNameVariants.size();
+        if (allLastNameVariants.isEmpty())
+            allLastNameVariants = Collections.singletonList(lastName);
 
-                for (String lName : allLastNameVariants) {
+        // check the blocks of all the first name variants under all the last name variants.
+        String match = nameBlocks.find(firstName, allLastNameVariants, tokenizers.get(), nameIndex, metrics);
+        if (prefiltered && metrics != null)
+            metrics.recordPrefilter(true, match);
 
-                    candidateName.append(fName).append(" ").append(lName);
-                    sortedName = sortString(candidateName.toString());
-                    if (namesMap.containsKey(sortedName)) {
-                        return namesMap.get(sortedName);
-                    }
+        return fuzzyStageChecked(check, firstName, lastName, candidates, false, match);
+    }
 
-                    candidateName.delete(0, candidateName.length());
-                }
-            }
-        } else if (allFirstNameVariants != null && allFirstNameVariants.size() > 0) {
+    private static String fuzzyStageChecked(Object check, String firstName, String lastName, int candidates, boolean prefiltered, String match) {
 
-            for (String fName : allFirstNameVariants) {
+        checkRecorder.endFuzzyStage(check, firstName, lastName, candidates, prefiltered, match != null);
+        return match;
+    }
 
-                candidateName.append(fName).append(" ").append(lastName);
-                sortedName = sortString(candidateName.toString());
-                if (namesMap.containsKey(sortedName)) {
-                    return namesMap.get(sortedName);
-                }
+    /**
+     * Returns the recorder of the flight recorder events, looked up reflectively as jdk.jfr only exists from
+     * Java 11 (and 8u262) onwards, and one recording nothing otherwise.
+     */
+    static CheckRecorder newCheckRecorder() {
 
-                candidateName.delete(0, candidateName.length());
-            }
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (CheckRecorder) Class.forName("no.companybook.JfrCheckRecorder").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return CheckRecorder.NONE;
+        }
+    }
 
-        } else if (allLastNameVariants != null && allLastNameVariants.size() > 0) {
+    /**
+     * Returns hashes of every key the check or the acceptance of the name reads or writes: its sorted keys
+     * and the blocks of its first and last name. A name can only be a duplicate of an accepted name if
+     * both share one of these hashes, which is what {@link ConcurrentNameDuplicationDetector} locks on.
+     */
+    Set<Long> getConflictHashes(String originalName) {
 
-            for (String lName : allLastNameVariants) {
+        Set<Long> hashes = new HashSet<>();
+        String firstName;
+        String lastName;
 
-                candidateName.append(firstName).append(" ").append(lName);
-                sortedName = sortString(candidateName.toString());
-                if (namesMap.containsKey(sortedName)) {
-                    return namesMap.get(sortedName);
-                }
+        NameTokenizer tokenizer = tokenizers.get();
+        if (tokenizer.tokenize(originalName) && tokenizer.getTokenCount() > 1) {
 
-                candidateName.delete(0, candidateName.length());
-            }
+            hashes.add(CompactNameStore.hash(tokenizer.getNameKey()));
+            hashes.add(CompactNameStore.hash(tokenizer.getFirstLastNameKey()));
+            firstName = tokenizer.getFirstName();
+            lastName = tokenizer.getLastName();
 
+        } else {
+
+            String firstLastNameOnly = eliminateMiddleNames(originalName);
+            hashes.add(CompactNameStore.hash(sortString(originalName)));
+            hashes.add(CompactNameStore.hash(sortString(firstLastNameOnly)));
+            hashes.add(CompactNameStore.hash(sortString(flipOrderOfNameParts(firstLastNameOnly))));
+
+            String[] firstLastNameSplits = firstLastNameOnly.split("\\s");
+            firstName = firstLastNameSplits[0];
+            lastName = firstLastNameSplits[firstLastNameSplits.length - 1];
         }
 
+        // a fuzzy match needs the first name of the one name to share a block with either part of the other.
+        nameBlocks.addBlockHashes(firstName, hashes);
+        nameBlocks.addBlockHashes(lastName, hashes);
 
-        return null;
+        return hashes;
     }
 
-    private List<String> getAllLastNameWithinDistanceOne(String sourceLastName, Map<String, String> nameMap) {
+    /**
+     * Returns the key the approximate split of {@link PartitionedNameDuplicationDetector} routes the name by,
+     * the same for both orders of the name parts. A fuzzy duplicate shares a first name block with its
+     * original, so the key is the group of first name clusters of a part found in the first names file, see
+     * {@link NameBlocks#getClusterGroup(CharSequence)}, the smaller one if both are. Names without a known
+     * first name are keyed by the smaller phonetic key of their parts, see {@link PhoneticKeys}. A duplicate
+     * which changes the part the key is taken from gets another key than its original.
+     */
+    String getPartitionKey(String originalName) {
+
+        String firstName;
+        String lastName;
+
+        NameTokenizer tokenizer = tokenizers.get();
+        if (tokenizer.tokenize(originalName)) {
+
+            firstName = tokenizer.getFirstName();
+            lastName = tokenizer.getLastName();
+
+        } else {
+
+            String[] firstLastNameSplits = eliminateMiddleNames(originalName).trim().split("\\s");
+            firstName = firstLastNameSplits[0];
+            lastName = firstLastNameSplits[firstLastNameSplits.length - 1];
+        }
+
+        int firstNameGroup = nameBlocks.getClusterGroup(firstName);
+        int lastNameGroup = nameBlocks.getClusterGroup(lastName);
+
+        if (firstNameGroup >= 0 && lastNameGroup >= 0)
+            return CLUSTER_GROUP_TAG + Math.min(firstNameGroup, lastNameGroup);
+        if (firstNameGroup >= 0 || lastNameGroup >= 0)
+            return CLUSTER_GROUP_TAG + Math.max(firstNameGroup, lastNameGroup);
+
+        String firstNameKey = PhoneticKeys.consonantKey(firstName);
+        String lastNameKey = PhoneticKeys.consonantKey(lastName);
+        return (firstNameKey.compareTo(lastNameKey) <= 0) ? firstNameKey : lastNameKey;
+    }
+
+    /**
+     * Returns the blocking keys acceptName registers the name under, see {@link NameBlocks}.
+     */
+    Set<String> getBlockingKeys(String originalName) {
+
+        NameTokenizer tokenizer = tokenizers.get();
+        if (tokenizer.tokenize(originalName)) {
+
+            if (tokenizer.getTokenCount() != 2)
+                return Collections.emptySet();
+            return nameBlocks.getKeys(tokenizer.getFirstName(), tokenizer.getLastName(), tokenizer);
+        }
+
+        String[] blockedNameParts = getBlockedNameParts(originalName);
+        if (blockedNameParts == null)
+            return Collections.emptySet();
+
+        return nameBlocks.getKeys(blockedNameParts[0], blockedNameParts[1], tokenizer);
+    }
+
+    /**
+     * Returns the blocking keys checkDuplicatesByCombinations may probe, given every last name that may be
+     * within the distance threshold at the time of the check.
+     */
+    Set<String> getProbedBlockingKeys(String firstName, String lastName, List<String> lastNameVariants) {
+
+        List<String> lastNames = new ArrayList<>(lastNameVariants);
+        lastNames.add(lastName);
+
+        return nameBlocks.getProbedKeys(firstName, lastNames, tokenizers.get());
+    }
+
+    /**
+     * Returns the indexed last names within distance one of the given last name, together with the ones with
+     * its phonetic code within the larger distance of it, in lexicographic order.
+     */
+    List<String> getAllPhoneticLastNameVariants(String sourceLastName, int maxDistance, PhoneticNameIndex nameIndex) {
+
+        SortedSet<String> phoneticLastNameVariants = new TreeSet<>(getAllLastNameWithinDistanceOne(sourceLastName, nameIndex));
+        List<String> candidates = nameIndex.getPhoneticCandidates(sourceLastName);
+
+        for (String targetLastName : candidates) {
+            if (!phoneticLastNameVariants.contains(targetLastName) && withinDistance(sourceLastName, targetLastName, maxDistance))
+                phoneticLastNameVariants.add(targetLastName);
+        }
+
+        DetectorMetrics metrics = this.metrics;
+        if (metrics != null)
+            metrics.recordLevenshteinEvaluations(candidates.size());
+
+        return new ArrayList<>(phoneticLastNameVariants);
+    }
+
+    /**
+     * Returns the indexed last names within the distance threshold of the last name, in lexicographic order.
+     */
+    List<String> getAllLastNameVariants(String lastName, NameIndex nameIndex) {
+
+        int maxDistance = distanceThreshold.getMaxDistance(lastName.length());
+        if (maxDistance == 1)
+            return getAllLastNameWithinDistanceOne(lastName, nameIndex);
+
+        // beyond distance one, the phonetic index stands in for the trie.
+        NameIndex phoneticIndex = (nameIndex instanceof PrefilteredNameIndex) ? ((PrefilteredNameIndex) nameIndex).getNameIndex() : nameIndex;
+        if (maxDistance > 1 && phoneticIndex instanceof PhoneticNameIndex)
+            return getAllPhoneticLastNameVariants(lastName, maxDistance, (PhoneticNameIndex) phoneticIndex);
+
+        return nameIndex.getLastNamesWithinDistance(lastName, maxDistance);
+    }
+
+    List<String> getAllLastNameWithinDistanceOne(String sourceLastName, NameIndex nameIndex) {
 
         List<String> allIdentifiedLastNamesWithinDistanceOne = new LinkedList<>();
 
-        for (Map.Entry<String, String> target : nameMap.entrySet()) {
+        // only the last names sharing a deletion neighbourhood key can be within distance one.
+        List<String> candidates = nameIndex.getLastNameCandidates(sourceLastName);
+
+        // the masks of the source last name serve all its candidates, unless it is too long for them.
+        BitParallelDistance distanceKernel = distanceKernels.get();
+        boolean bitParallel = distanceKernel.setPattern(sourceLastName);
 
-            String targetLastName = getLastNameOnly(target.getValue());
-            int distance = computeLevenshteinDistance(sourceLastName, targetLastName);
-            if (distance < 2) {
+        for (String targetLastName : candidates) {
+
+            if (bitParallel ? distanceKernel.withinDistance(targetLastName, 1) : withinDistance(sourceLastName, targetLastName, 1)) {
                 allIdentifiedLastNamesWithinDistanceOne.add(targetLastName);
             }
         }
 
+        DetectorMetrics metrics = this.metrics;
+        if (metrics != null)
+            metrics.recordLevenshteinEvaluations(candidates.size());
+
         return allIdentifiedLastNamesWithinDistanceOne;
     }
 
@@ -316,20 +1170,44 @@ public class NameDuplicationDetector {
 
         NameDuplicationDetector nameDuplicationDetector = new NameDuplicationDetector();
 
-        List<String> inputTestNames = null;
+        // duplicates are printed while the names are read, the input is never held in memory as a whole.
+        DuplicateSink printer = new DuplicateSink() {
+            @Override
+            public void accept(Pair<String, String> duplicate) {
+                System.out.println(duplicate.getL() + "\t" + duplicate.getR());
+            }
+        };
+
         try {
 
-            inputTestNames = FileUtils.readLines(new File(loader.getResource("data/names.input").getFile()));
+            if (args.length > 1) {
 
-        } catch (IOException e) {
+                // incremental run : check the names against the index saved by the previous run, and save it back.
+                Path indexFile = Paths.get(args[1]);
 
-            System.err.println("Reading Test Names file causes error due to " + e.getCause());
-        }
+                if (Files.exists(indexFile)) {
+                    try (MappedNameIndex nameIndex = MappedNameIndex.open(indexFile)) {
+                        nameDuplicationDetector.checkDuplicates(Paths.get(args[0]), printer,
+                                nameDuplicationDetector.wrapNameIndex(nameIndex, DEFAULT_NEIGHBOURHOOD_CACHE_SIZE));
+                        nameIndex.save(indexFile);
+                    }
+                } else {
+                    NameIndex nameIndex = nameDuplicationDetector.newNameIndex();
+                    nameDuplicationDetector.checkDuplicates(Paths.get(args[0]), printer, nameIndex);
+                    MappedNameIndex.write(nameIndex, indexFile);
+                }
+
+            } else if (args.length > 0) {
+                nameDuplicationDetector.checkDuplicates(Paths.get(args[0]), printer);
+            } else {
+                try (Reader reader = new InputStreamReader(loader.getResourceAsStream("data/names.input"), StandardCharsets.UTF_8)) {
+                    nameDuplicationDetector.checkDuplicates(reader, printer);
+                }
+            }
 
-        List<Pair<String, String>> result = nameDuplicationDetector.checkDuplicates(inputTestNames);
+        } catch (IOException e) {
 
-        for (Pair pair : result) {
-            System.out.println(pair.getL() + "\t" + pair.getR());
+            System.err.println("Reading Test Names file causes error due to " + e.getCause());
         }
     }
 
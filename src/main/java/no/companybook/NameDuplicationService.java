@@ -0,0 +1,223 @@
+package no.companybook;
+
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embedded HTTP service checking names for duplicates against one index shared by all its clients, built
+ * on the HTTP server of the JDK.
+ * <p>
+ * POST /check takes a UTF-8 body of one name per line, a single name or a batch, and answers with the
+ * duplicates among them in the format of {@link NameDuplicationDetector#main(String[])}: one line per
+ * duplicate, the name and the accepted name it matches separated by a tab, in request order. The new
+ * names are accepted, a body without duplicates gives an empty answer. A body with a name of a single
+ * token is answered with 400 and none of its names is checked. GET /size answers with the number of
+ * accepted names.
+ * <p>
+ * Every exchange is handled on a virtual thread when the JVM provides them, and on a pooled platform
+ * thread otherwise. The names of concurrent requests are coalesced by a {@link MicroBatcher}, which checks
+ * every batch on as many threads as there are processors, so the handling threads only parse, wait and answer.
+ */
+public class NameDuplicationService implements Closeable {
+
+    private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_BATCH_SIZE = 256;
+    private static final int BACKLOG = 1024;
+
+    static {
+        // without it small answers wait for the delayed ack of the client, about 40 ms per request.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final ConcurrentNameDuplicationDetector detector;
+    private final MicroBatcher batcher;
+    private final ExecutorService handlers;
+    private final HttpServer server;
+
+
+    /**
+     * Starts the service on the given address, port 0 picks a free port.
+     */
+    public NameDuplicationService(ConcurrentNameDuplicationDetector detector, InetSocketAddress address, int maxBatchSize) throws IOException {
+
+        if (detector == null || address == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        this.detector = detector;
+        this.batcher = new MicroBatcher(detector, maxBatchSize);
+        this.handlers = newHandlerExecutor();
+
+        this.server = HttpServer.create(address, BACKLOG);
+        this.server.createContext("/check", new CheckHandler());
+        this.server.createContext("/size", new SizeHandler());
+        this.server.setExecutor(handlers);
+        this.server.start();
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    public ConcurrentNameDuplicationDetector getDetector() {
+        return detector;
+    }
+
+    /**
+     * Stops accepting requests, lets the exchanges in progress finish for up to a second and stops the batcher.
+     */
+    @Override
+    public void close() {
+
+        server.stop(1);
+        batcher.close();
+        handlers.shutdown();
+
+        try {
+            handlers.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns a virtual thread per task executor where available (Java 21 onwards), looked up reflectively
+     * as the code is compiled for older releases, and a cached thread pool otherwise.
+     */
+    static ExecutorService newHandlerExecutor() {
+
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private class CheckHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+
+            try {
+
+                if (!"POST".equals(exchange.getRequestMethod())) {
+                    respond(exchange, 405, "Use POST\n");
+                    return;
+                }
+
+                // empty lines are no names and are skipped, a name of a single token fails the whole request.
+                List<String> names = new ArrayList<>();
+                BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+                String name;
+                while ((name = reader.readLine()) != null) {
+
+                    if (name.isEmpty())
+                        continue;
+
+                    if (!hasFirstAndLastName(name)) {
+                        respond(exchange, 400, "Name has no first and last name : " + name + "\n");
+                        return;
+                    }
+                    names.add(name);
+                }
+
+                String[] matches;
+                try {
+                    matches = batcher.check(names);
+                } catch (IllegalArgumentException e) {
+                    respond(exchange, 400, e.getMessage() + "\n");
+                    return;
+                } catch (IllegalStateException e) {
+                    respond(exchange, 503, e.getMessage() + "\n");
+                    return;
+                } catch (RuntimeException e) {
+                    respond(exchange, 500, "Checking the names failed due to " + e + "\n");
+                    return;
+                }
+
+                StringBuilder duplicates = new StringBuilder();
+                for (int i = 0; i < matches.length; i++) {
+                    if (matches[i] != null)
+                        duplicates.append(names.get(i)).append('\t').append(matches[i]).append('\n');
+                }
+
+                respond(exchange, 200, duplicates.toString());
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+                respond(exchange, 503, "Interrupted\n");
+
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    // the detector splits every name into a first and a last name.
+    private static boolean hasFirstAndLastName(String name) {
+        return name.trim().split("\\s+").length > 1;
+    }
+
+    private class SizeHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+
+            try {
+                respond(exchange, 200, detector.size() + "\n");
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String text) throws IOException {
+
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+
+        if (bytes.length > 0) {
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Runs the service until the JVM is stopped. Arguments : [port] [max batch size] [host], the host
+     * defaults to the loopback address.
+     */
+    public static void main(String[] args) throws IOException {
+
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int maxBatchSize = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_BATCH_SIZE;
+
+        InetSocketAddress address = (args.length > 2) ? new InetSocketAddress(args[2], port)
+                : new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+
+        final NameDuplicationService service = new NameDuplicationService(new ConcurrentNameDuplicationDetector(), address, maxBatchSize);
+
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                service.close();
+            }
+        });
+
+        System.out.println("Checking names on http://" + service.getAddress().getHostString() + ":" + service.getAddress().getPort() + "/check");
+    }
+}
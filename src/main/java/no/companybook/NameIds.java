@@ -0,0 +1,111 @@
+package no.companybook;
+
+
+/**
+ * Map from names to int ids, an open addressing table of a String and an int array with linear probing,
+ * which keeps neither an entry object nor a boxed Integer per name. The names are the Strings the caller
+ * holds anyway, so an entry costs two array slots. Instances are not thread safe.
+ */
+final class NameIds {
+
+    static final int ABSENT = -1;
+
+    private String[] names;
+    private int[] ids;
+    private int size;
+
+
+    NameIds() {
+        this(16);
+    }
+
+    NameIds(int expectedSize) {
+
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("Expected size must not be negative");
+
+        int capacity = 16;
+        while (capacity * 3L / 4 < expectedSize)
+            capacity <<= 1;
+
+        names = new String[capacity];
+        ids = new int[capacity];
+    }
+
+    /**
+     * Maps the name to the id, replacing the id it had.
+     */
+    void put(String name, int id) {
+
+        if (name == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        if (id < 0)
+            throw new IllegalArgumentException("Id must not be negative");
+
+        int slot = findSlot(names, name);
+        if (names[slot] == null) {
+
+            if ((size + 1) * 4L > names.length * 3L) {
+                resize();
+                slot = findSlot(names, name);
+            }
+
+            names[slot] = name;
+            size++;
+        }
+
+        ids[slot] = id;
+    }
+
+    /**
+     * Returns the id of the name, or {@link #ABSENT}.
+     */
+    int get(String name) {
+
+        if (name == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        int slot = findSlot(names, name);
+        return (names[slot] == null) ? ABSENT : ids[slot];
+    }
+
+    int size() {
+        return size;
+    }
+
+    private static int findSlot(String[] names, String name) {
+
+        int mask = names.length - 1;
+        int slot = mix(name.hashCode()) & mask;
+
+        while (names[slot] != null && !names[slot].equals(name))
+            slot = (slot + 1) & mask;
+
+        return slot;
+    }
+
+    private void resize() {
+
+        String[] oldNames = names;
+        int[] oldIds = ids;
+
+        names = new String[oldNames.length * 2];
+        ids = new int[oldNames.length * 2];
+
+        for (int i = 0; i < oldNames.length; i++) {
+            if (oldNames[i] != null) {
+                int slot = findSlot(names, oldNames[i]);
+                names[slot] = oldNames[i];
+                ids[slot] = oldIds[i];
+            }
+        }
+    }
+
+    // spreads the bits of String.hashCode, whose low bits alone cluster for similar names.
+    private static int mix(int hash) {
+
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
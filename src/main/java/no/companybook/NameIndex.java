@@ -0,0 +1,80 @@
+package no.companybook;
+
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The names accepted by {@link NameDuplicationDetector}, keyed by their sorted name, together with the
+ * last names of the accepted names, which the fuzzy matching stage looks up by edit distance.
+ * <p>
+ * The detector keeps both parts consistent: every accepted name adds its last name, and when a name
+ * replaces another one under the same sorted key, the last name of the replaced name is removed. Accepted
+ * names are further registered under the blocking keys of {@link NameBlocks}, which are never removed.
+ */
+public interface NameIndex {
+
+    /**
+     * Returns the accepted name stored under the sorted name, or null. The key is not retained.
+     */
+    String get(CharSequence sortedName);
+
+    /**
+     * Stores the accepted name under the sorted name, returning the name it replaces, or null. The key is
+     * copied, callers may reuse it afterwards.
+     */
+    String put(CharSequence sortedName, String originalName);
+
+    void addLastName(String lastName);
+
+    void removeLastName(String lastName);
+
+    /**
+     * Returns true if an accepted name carries the last name, without looking up its neighbourhood.
+     */
+    boolean containsLastName(String lastName);
+
+    /**
+     * Returns the indexed last names which may be within edit distance one of the given last name, in
+     * lexicographic order. The candidates still have to be verified by the caller.
+     */
+    List<String> getLastNameCandidates(String lastName);
+
+    /**
+     * Returns the indexed last names within the edit distance of the given last name, verified and in
+     * lexicographic order. Meant for distances above one, see {@link LastNameTrie}, indexes may set up the
+     * structures for it on the first call.
+     */
+    List<String> getLastNamesWithinDistance(String lastName, int maxDistance);
+
+    /**
+     * Returns the accepted name first registered under the blocking key, see {@link NameBlocks}, or null.
+     * The key is not retained.
+     */
+    String getBlockedName(CharSequence blockingKey);
+
+    /**
+     * Registers the accepted name under the blocking key, unless a name has been registered under it before.
+     */
+    void addBlockedName(CharSequence blockingKey, String originalName);
+
+    /**
+     * Returns the number of accepted names.
+     */
+    int size();
+
+    /**
+     * Iterates the accepted names as pairs of sorted name and original name.
+     */
+    Iterator<Pair<String, String>> entries();
+
+    /**
+     * Iterates the indexed last names as pairs of last name and the number of accepted names carrying it.
+     */
+    Iterator<Pair<String, Integer>> lastNames();
+
+    /**
+     * Iterates the blocking keys as pairs of blocking key and accepted name.
+     */
+    Iterator<Pair<String, String>> blockedNames();
+}
@@ -0,0 +1,179 @@
+package no.companybook;
+
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load generator for {@link NameDuplicationService}, reporting throughput and latency percentiles.
+ * <p>
+ * A number of client threads post requests of a fixed number of names each as fast as the service answers,
+ * taking the names round robin from the input, and every request's latency is recorded. With several
+ * clients, concurrent requests exercise the micro-batching of the service.
+ */
+public class NameLoadGenerator {
+
+    private final URL checkUrl;
+    private final List<String> names;
+
+
+    public NameLoadGenerator(URL checkUrl, List<String> names) {
+
+        if (checkUrl == null || names == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        if (names.isEmpty())
+            throw new IllegalArgumentException("Input names are empty");
+
+        this.checkUrl = checkUrl;
+        this.names = names;
+    }
+
+    /**
+     * Sends the requests from the given number of clients and returns the latencies in nanoseconds, sorted.
+     */
+    public long[] run(int clients, final int requests, final int namesPerRequest) throws IOException, InterruptedException {
+
+        if (clients < 1 || requests < 1 || namesPerRequest < 1)
+            throw new IllegalArgumentException("Clients, requests and names per request must be at least one");
+
+        final long[] latencies = new long[requests];
+        final AtomicInteger next = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+
+        try {
+
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int client = 0; client < clients; client++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+
+                        for (int request = next.getAndIncrement(); request < requests; request = next.getAndIncrement()) {
+
+                            byte[] body = requestBody((long) request * namesPerRequest, namesPerRequest);
+                            long start = System.nanoTime();
+                            post(body);
+                            latencies[request] = System.nanoTime() - start;
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<Void> future : futures)
+                future.get();
+
+        } catch (ExecutionException e) {
+
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IllegalStateException("Load generation failed", e.getCause());
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    private byte[] requestBody(long first, int count) {
+
+        StringBuilder body = new StringBuilder();
+        for (long i = first; i < first + count; i++)
+            body.append(names.get((int) (i % names.size()))).append('\n');
+
+        return body.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void post(byte[] body) throws IOException {
+
+        HttpURLConnection connection = (HttpURLConnection) checkUrl.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        connection.setRequestProperty("Content-Type", "text/plain; charset=utf-8");
+
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write(body);
+        }
+
+        if (connection.getResponseCode() != HttpURLConnection.HTTP_OK)
+            throw new IOException("Service answered " + connection.getResponseCode());
+
+        // the answer is read completely, so that the connection is reused.
+        try (InputStream input = connection.getInputStream()) {
+            IOUtils.toByteArray(input);
+        }
+    }
+
+    /**
+     * Returns the latency below which the given fraction of the sorted latencies lies.
+     */
+    static long percentile(long[] sortedLatencies, double fraction) {
+
+        int index = (int) Math.ceil(fraction * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(0, Math.min(sortedLatencies.length - 1, index))];
+    }
+
+    /**
+     * Arguments : url [clients] [requests] [names per request] [names file], the names default to the bundled
+     * test names. Without a url an embedded service is started on a free local port and loaded instead.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        int clients = (args.length > 1) ? Integer.parseInt(args[1]) : 64;
+        int requests = (args.length > 2) ? Integer.parseInt(args[2]) : 100000;
+        int namesPerRequest = (args.length > 3) ? Integer.parseInt(args[3]) : 1;
+
+        List<String> names;
+        if (args.length > 4) {
+            names = Files.readAllLines(Paths.get(args[4]), StandardCharsets.UTF_8);
+        } else {
+            try (InputStream input = NameLoadGenerator.class.getClassLoader().getResourceAsStream("data/names.input")) {
+                names = IOUtils.readLines(input, StandardCharsets.UTF_8);
+            }
+        }
+
+        NameDuplicationService embeddedService = null;
+        URL checkUrl;
+        if (args.length > 0 && !"-".equals(args[0])) {
+            checkUrl = new URL(args[0]);
+        } else {
+            embeddedService = new NameDuplicationService(new ConcurrentNameDuplicationDetector(),
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 256);
+            checkUrl = new URL("http", embeddedService.getAddress().getHostString(), embeddedService.getAddress().getPort(), "/check");
+        }
+
+        try {
+
+            long start = System.nanoTime();
+            long[] latencies = new NameLoadGenerator(checkUrl, names).run(clients, requests, namesPerRequest);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("%d requests of %d names from %d clients in %.2f s : %.0f requests/s%n",
+                    requests, namesPerRequest, clients, seconds, requests / seconds);
+            System.out.printf("latency p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms%n",
+                    percentile(latencies, 0.5) / 1e6, percentile(latencies, 0.99) / 1e6,
+                    percentile(latencies, 0.999) / 1e6, latencies[latencies.length - 1] / 1e6);
+
+        } finally {
+            if (embeddedService != null)
+                embeddedService.close();
+        }
+    }
+}
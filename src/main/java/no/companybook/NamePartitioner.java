@@ -0,0 +1,231 @@
+package no.companybook;
+
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Splits input names into blocks which can be checked for duplicates independently of each other.
+ * <p>
+ * Whether a name is a duplicate, and of which name, depends on the names accepted before it. Two names
+ * are put into the same block whenever one of them can take part in the other's check:
+ * <ul>
+ * <li>they share a sorted key, used by the identical and changed order cases and by the names map itself,</li>
+ * <li>their last names are within the distance threshold of the detector, so one of them contributes to the
+ * other's last name variants,</li>
+ * <li>one of them is registered under a blocking key the other one probes, or both under the same key.</li>
+ * </ul>
+ * As every block is closed under these relations, processing the blocks separately in input order gives
+ * the same matches as a single sequential run.
+ */
+class NamePartitioner {
+
+    private final NameDuplicationDetector nameDuplicationDetector;
+    private final ForkJoinPool pool;
+
+
+    NamePartitioner(NameDuplicationDetector nameDuplicationDetector, ForkJoinPool pool) {
+
+        this.nameDuplicationDetector = nameDuplicationDetector;
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the blocks as arrays of input positions, ascending within every block.
+     */
+    List<int[]> partition(final String[] names) {
+
+        final int size = names.length;
+        final String[][] sortedKeys = new String[size][];
+        final String[] firstNames = new String[size];
+        final String[] lastNames = new String[size];
+        final String[] indexedLastNames = new String[size];
+        final List<Set<String>> blockingKeys = new ArrayList<>(Collections.<Set<String>>nCopies(size, null));
+
+        // step 1 : preprocess every name the same way the sequential check does.
+        invokeAll(pool, chunks(size, new Chunk() {
+            @Override
+            void process(int i) {
+
+                sortedKeys[i] = getSortedKeys(nameDuplicationDetector, names[i]);
+
+                String[] firstLastNameSplits = getFirstLastNameSplits(nameDuplicationDetector, names[i]);
+                if (firstLastNameSplits.length > 1) {
+                    firstNames[i] = firstLastNameSplits[0];
+                    lastNames[i] = firstLastNameSplits[1];
+                }
+
+                indexedLastNames[i] = nameDuplicationDetector.getLastNameOnly(names[i]);
+                blockingKeys.set(i, nameDuplicationDetector.getBlockingKeys(names[i]));
+            }
+        }));
+
+        UnionFind unionFind = new UnionFind(size);
+
+        // step 2 : names sharing a sorted key, and names sharing a blocking key.
+        final Map<String, Integer> keyOwners = new HashMap<>();
+        final Map<String, Integer> blockingKeyOwners = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+
+            for (String key : sortedKeys[i])
+                unionWithOwner(unionFind, keyOwners, key, i);
+            for (String key : blockingKeys.get(i))
+                unionWithOwner(unionFind, blockingKeyOwners, key, i);
+        }
+
+        // step 3 : names sharing a last name, and an index over all of them.
+        final Map<String, Integer> lastNameOwners = new HashMap<>();
+        final NameIndex allLastNames = new InMemoryNameIndex();
+        for (int i = 0; i < size; i++) {
+            if (unionWithOwner(unionFind, lastNameOwners, indexedLastNames[i], i))
+                allLastNames.addLastName(indexedLastNames[i]);
+        }
+
+        // step 4 : last names within the distance threshold, and the blocking keys probed by the fuzzy case.
+        final List<List<String>> lastNameVariants = new ArrayList<>(Collections.<List<String>>nCopies(size, null));
+        final List<Set<String>> probedKeys = new ArrayList<>(Collections.<Set<String>>nCopies(size, null));
+
+        invokeAll(pool, chunks(size, new Chunk() {
+            @Override
+            void process(int i) {
+
+                if (lastNames[i] == null)
+                    return;
+
+                List<String> variants = nameDuplicationDetector.getAllLastNameVariants(lastNames[i], allLastNames);
+                lastNameVariants.set(i, variants);
+                probedKeys.set(i, nameDuplicationDetector.getProbedBlockingKeys(firstNames[i], lastNames[i], variants));
+            }
+        }));
+
+        for (int i = 0; i < size; i++) {
+
+            if (lastNames[i] == null)
+                continue;
+
+            for (String variant : lastNameVariants.get(i))
+                unionFind.union(i, lastNameOwners.get(variant));
+
+            for (String key : probedKeys.get(i)) {
+                Integer owner = blockingKeyOwners.get(key);
+                if (owner != null)
+                    unionFind.union(i, owner);
+            }
+        }
+
+        return collectBlocks(unionFind);
+    }
+
+    /**
+     * Returns the sorted keys the identical and changed order cases look the name up by.
+     */
+    static String[] getSortedKeys(NameDuplicationDetector nameDuplicationDetector, String name) {
+
+        String firstLastNameOnly = nameDuplicationDetector.eliminateMiddleNames(name);
+        return new String[]{
+                nameDuplicationDetector.sortString(name),
+                nameDuplicationDetector.sortString(firstLastNameOnly),
+                nameDuplicationDetector.sortString(nameDuplicationDetector.flipOrderOfNameParts(firstLastNameOnly))};
+    }
+
+    /**
+     * Returns the first and the last name the fuzzy case checks the name by, a single token if it has none.
+     */
+    static String[] getFirstLastNameSplits(NameDuplicationDetector nameDuplicationDetector, String name) {
+        return nameDuplicationDetector.eliminateMiddleNames(name).split("\\s");
+    }
+
+    private boolean unionWithOwner(UnionFind unionFind, Map<String, Integer> owners, String key, int i) {
+
+        Integer owner = owners.get(key);
+        if (owner == null) {
+            owners.put(key, i);
+            return true;
+        }
+
+        unionFind.union(i, owner);
+        return false;
+    }
+
+    private List<int[]> collectBlocks(UnionFind unionFind) {
+
+        int size = unionFind.size();
+        int[] blockSizes = new int[size];
+        for (int i = 0; i < size; i++)
+            blockSizes[unionFind.find(i)]++;
+
+        // blocks are ordered by their first name, and the positions within a block stay ascending.
+        int[][] blocks = new int[size][];
+        int[] filled = new int[size];
+        List<int[]> orderedBlocks = new ArrayList<>();
+
+        for (int i = 0; i < size; i++) {
+
+            int root = unionFind.find(i);
+            if (blocks[root] == null) {
+                blocks[root] = new int[blockSizes[root]];
+                orderedBlocks.add(blocks[root]);
+            }
+            blocks[root][filled[root]++] = i;
+        }
+
+        return orderedBlocks;
+    }
+
+    private List<Callable<Void>> chunks(int size, final Chunk chunk) {
+
+        int chunkSize = Math.max(1, size / (pool.getParallelism() * 8));
+        List<Callable<Void>> tasks = new ArrayList<>();
+
+        for (int from = 0; from < size; from += chunkSize) {
+
+            final int start = from;
+            final int end = Math.min(size, from + chunkSize);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+
+                    for (int i = start; i < end; i++)
+                        chunk.process(i);
+                    return null;
+                }
+            });
+        }
+
+        return tasks;
+    }
+
+    /**
+     * Runs the tasks on the pool and waits for all of them, rethrowing the first failure unchecked.
+     */
+    static void invokeAll(ForkJoinPool pool, List<Callable<Void>> tasks) {
+
+        for (Future<Void> future : pool.invokeAll(tasks)) {
+            try {
+
+                future.get();
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while checking duplicates", e);
+
+            } catch (ExecutionException e) {
+
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                if (e.getCause() instanceof Error)
+                    throw (Error) e.getCause();
+                throw new IllegalStateException("Checking duplicates failed", e.getCause());
+            }
+        }
+    }
+
+    private static abstract class Chunk {
+
+        abstract void process(int i);
+    }
+}
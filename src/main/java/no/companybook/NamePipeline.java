@@ -0,0 +1,242 @@
+package no.companybook;
+
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Checks names in three stages connected by bounded lock free rings, for
+ * {@link NameDuplicationDetector#checkDuplicatesPipelined(Iterator, DuplicateSink, NameIndex, int)}.
+ * <ul>
+ * <li>a reader thread pulls the names from the input and publishes them in chunks of consecutive names,</li>
+ * <li>worker threads claim the chunks in turn and prepare every name, see {@link PreparedName},</li>
+ * <li>the calling thread takes the prepared chunks in input order and probes and updates the index.</li>
+ * </ul>
+ * Every chunk has a sequence number and a fixed slot in both rings, so workers may finish out of order
+ * while the indexer still sees the names in input order, and a single writer and reader per slot need no
+ * locks. The reader only publishes a chunk once the chunk a ring length before it has been checked, which
+ * bounds the names in flight whatever the speed of the stages. Threads waiting on another stage spin
+ * briefly and then park.
+ */
+final class NamePipeline {
+
+    private static final int CHUNK_SIZE = 256;
+    private static final int CHUNKS_PER_WORKER = 4;
+    private static final int SPINS = 64;
+    private static final long PARK_NANOS = 50000;
+
+    private final NameDuplicationDetector detector;
+    private final int workers;
+    private final int capacity;
+
+    private final AtomicReferenceArray<String[]> inputChunks;
+    private final AtomicReferenceArray<PreparedName[]> preparedChunks;
+    private final AtomicLong claimed = new AtomicLong();
+
+    // chunks published by the reader, and checked by the indexer.
+    private volatile long published;
+    private volatile long consumed;
+
+    // the number of chunks, known once the input is exhausted.
+    private volatile long chunkCount = Long.MAX_VALUE;
+
+    // a failure of any stage stops the others, a failure of the input only ends it.
+    private volatile Throwable failure;
+    private volatile Throwable readFailure;
+
+
+    NamePipeline(NameDuplicationDetector detector, int workers) {
+
+        this.detector = detector;
+        this.workers = workers;
+        this.capacity = Math.max(2, workers * CHUNKS_PER_WORKER);
+        this.inputChunks = new AtomicReferenceArray<>(capacity);
+        this.preparedChunks = new AtomicReferenceArray<>(capacity);
+    }
+
+    void run(final Iterator<String> inputNames, DuplicateSink sink, NameIndex nameIndex) {
+
+        List<Thread> threads = new ArrayList<>();
+        threads.add(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                read(inputNames);
+            }
+        }, "name-pipeline-reader"));
+
+        for (int i = 0; i < workers; i++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    prepare();
+                }
+            }, "name-pipeline-worker-" + i));
+        }
+
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        try {
+            index(sink, nameIndex);
+        } catch (RuntimeException | Error e) {
+            fail(e);
+            throw e;
+        }
+
+        join(threads);
+    }
+
+    private void read(Iterator<String> inputNames) {
+
+        long sequence = 0;
+        List<String> chunk = new ArrayList<>(CHUNK_SIZE);
+        try {
+
+            while (inputNames.hasNext()) {
+
+                while (chunk.size() < CHUNK_SIZE && inputNames.hasNext())
+                    chunk.add(inputNames.next());
+
+                if (!publish(sequence, chunk))
+                    return;
+                sequence++;
+                chunk = new ArrayList<>(CHUNK_SIZE);
+            }
+
+        } catch (RuntimeException | Error e) {
+
+            // the names read before still get checked, like in the sequential check, those of the chunk too.
+            if (!chunk.isEmpty() && publish(sequence, chunk))
+                sequence++;
+            readFailure = e;
+        }
+
+        chunkCount = sequence;
+    }
+
+    /**
+     * Publishes the chunk under the sequence number once its slot is free, returns false if the pipeline
+     * failed meanwhile.
+     */
+    private boolean publish(long sequence, List<String> chunk) {
+
+        // backpressure : the slot is free once its previous chunk has been checked.
+        for (int round = 0; sequence - consumed >= capacity; round++) {
+            if (failure != null)
+                return false;
+            pause(round);
+        }
+
+        inputChunks.set(slot(sequence), chunk.toArray(new String[chunk.size()]));
+        published = sequence + 1;
+        return true;
+    }
+
+    private void prepare() {
+
+        try {
+
+            while (true) {
+
+                long sequence = claimed.getAndIncrement();
+                for (int round = 0; sequence >= published; round++) {
+                    if (sequence >= chunkCount || failure != null)
+                        return;
+                    pause(round);
+                }
+
+                String[] names = inputChunks.getAndSet(slot(sequence), null);
+                PreparedName[] prepared = new PreparedName[names.length];
+                for (int i = 0; i < names.length; i++)
+                    prepared[i] = detector.prepareName(names[i]);
+
+                preparedChunks.set(slot(sequence), prepared);
+            }
+
+        } catch (RuntimeException | Error e) {
+            fail(e);
+        }
+    }
+
+    private void index(DuplicateSink sink, NameIndex nameIndex) {
+
+        for (long sequence = 0; ; sequence++) {
+
+            PreparedName[] chunk;
+            for (int round = 0; (chunk = preparedChunks.get(slot(sequence))) == null; round++) {
+
+                if (sequence >= chunkCount) {
+                    rethrow(readFailure);
+                    return;
+                }
+                rethrow(failure);
+                pause(round);
+            }
+            preparedChunks.set(slot(sequence), null);
+
+            for (PreparedName name : chunk) {
+
+                String match = detector.findDuplicate(name, nameIndex);
+
+                if (match != null) {
+                    sink.accept(new Pair<String, String>(name.originalName, match));
+                } else {
+                    detector.acceptName(name, nameIndex);
+                }
+            }
+
+            consumed = sequence + 1;
+        }
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % capacity);
+    }
+
+    private void fail(Throwable e) {
+
+        if (failure == null)
+            failure = e;
+    }
+
+    // failures of the reader and the workers surface on the calling thread.
+    private static void rethrow(Throwable e) {
+
+        if (e instanceof RuntimeException)
+            throw (RuntimeException) e;
+        if (e instanceof Error)
+            throw (Error) e;
+    }
+
+    private static void pause(int round) {
+
+        if (round < SPINS)
+            Thread.yield();
+        else
+            LockSupport.parkNanos(PARK_NANOS);
+    }
+
+    private static void join(List<Thread> threads) {
+
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+}
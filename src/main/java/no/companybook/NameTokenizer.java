@@ -0,0 +1,268 @@
+package no.companybook;
+
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Single pass tokenizer producing the name parts and sorted keys {@link NameDuplicationDetector} works with,
+ * without regular expressions and without intermediate Strings.
+ * <p>
+ * A name is scanned once into the offsets of its first and last token, and sorted keys are produced by a
+ * counting sort into a reusable char buffer, which is handed out as a {@link CharSequence} and only valid
+ * until the next call. Only names in the common form are handled: tokens separated by single spaces,
+ * no surrounding whitespace and all chars below U+0100, where lower casing a single char gives the same
+ * result as {@link String#toLowerCase()}. For any other name {@link #tokenize(String)} returns false and
+ * callers use the String based methods of the detector, which remain the reference for the semantics.
+ * <p>
+ * For a name in the common form the sorted key of the first and last name equals the sorted key of the
+ * flipped first and last name, as both consist of the same chars.
+ * <p>
+ * The blocking keys of {@link NameBlocks} are built into a second buffer the same way.
+ * <p>
+ * Instances hold the buffers and are not thread safe, the detector keeps one per thread.
+ */
+final class NameTokenizer {
+
+    private static final int CHAR_LIMIT = 0x100;
+
+    private final int[] counts = new int[CHAR_LIMIT];
+    private final KeyBuffer sortedKey = new KeyBuffer();
+    private final KeyBuffer blockingKey = new KeyBuffer();
+
+    private String name;
+    private int tokenCount;
+    private int firstTokenEnd;
+    private int lastTokenStart;
+
+
+    /**
+     * Scans the name, returning false if it is not in the common form.
+     */
+    boolean tokenize(String name) {
+
+        this.name = null;
+
+        int length = name.length();
+        if (length == 0 || name.charAt(0) == ' ' || name.charAt(length - 1) == ' ' || !hasSimpleLowerCasing())
+            return false;
+
+        int tokens = 1;
+        int firstEnd = length;
+        int lastStart = 0;
+
+        for (int i = 0; i < length; i++) {
+
+            char c = name.charAt(i);
+            if (c >= CHAR_LIMIT)
+                return false;
+
+            if (c <= ' ') {
+
+                // tabs, line breaks and runs of spaces are left to the regular expression based methods.
+                if (c != ' ' || name.charAt(i - 1) == ' ')
+                    return false;
+
+                if (tokens == 1)
+                    firstEnd = i;
+                lastStart = i + 1;
+                tokens++;
+            }
+        }
+
+        this.name = name;
+        this.tokenCount = tokens;
+        this.firstTokenEnd = firstEnd;
+        this.lastTokenStart = lastStart;
+
+        return true;
+    }
+
+    /**
+     * Returns true if the name is the one tokenized last.
+     */
+    boolean isTokenized(String name) {
+        return this.name == name;
+    }
+
+    int getTokenCount() {
+        return tokenCount;
+    }
+
+    String getFirstName() {
+        return name.substring(0, firstTokenEnd);
+    }
+
+    String getLastName() {
+        return name.substring(lastTokenStart);
+    }
+
+    /**
+     * The sorted key of the name without its middle names, the same as
+     * sortString(eliminateMiddleNames(name)).
+     */
+    CharSequence getFirstLastNameKey() {
+
+        if (tokenCount < 3)
+            return getNameKey();
+
+        int minimum = count(name, 0, firstTokenEnd, ' ');
+        minimum = count(name, lastTokenStart, name.length(), minimum);
+        counts[' ']++;
+
+        return emit(minimum, firstTokenEnd + 1 + name.length() - lastTokenStart);
+    }
+
+    /**
+     * The sorted key of the whole name, the same as sortString(name).
+     */
+    CharSequence getNameKey() {
+
+        int minimum = count(name, 0, name.length(), CHAR_LIMIT);
+        return emit(minimum, name.length());
+    }
+
+    /**
+     * Sorts the lower cased chars of any char sequence, or returns null if it contains chars outside of the
+     * range handled here.
+     */
+    CharSequence sort(CharSequence value) {
+
+        if (!hasSimpleLowerCasing())
+            return null;
+
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= CHAR_LIMIT)
+                return null;
+        }
+
+        int minimum = count(value, 0, value.length(), CHAR_LIMIT);
+        return emit(minimum, value.length());
+    }
+
+    /**
+     * The blocking key of a first name cluster and a last name, see {@link NameBlocks}.
+     */
+    CharSequence blockingKey(int clusterId, CharSequence lastName) {
+
+        // the digits of the id are written from the back.
+        int digits = 1;
+        for (int value = clusterId; value >= 10; value /= 10)
+            digits++;
+
+        char[] chars = blockingKey.ensureCapacity(digits + 2 + lastName.length());
+        chars[0] = NameBlocks.CLUSTER_TAG;
+        for (int i = digits, value = clusterId; i > 0; i--, value /= 10)
+            chars[i] = (char) ('0' + value % 10);
+
+        return appendLastName(chars, digits + 1, lastName);
+    }
+
+    /**
+     * The blocking key of a first name without cluster and a last name, see {@link NameBlocks}.
+     */
+    CharSequence blockingKey(CharSequence firstName, CharSequence lastName) {
+
+        char[] chars = blockingKey.ensureCapacity(firstName.length() + 2 + lastName.length());
+        chars[0] = NameBlocks.NAME_TAG;
+        for (int i = 0; i < firstName.length(); i++)
+            chars[i + 1] = Character.toLowerCase(firstName.charAt(i));
+
+        return appendLastName(chars, firstName.length() + 1, lastName);
+    }
+
+    // the last name goes in with its lower cased chars sorted, like in the sorted keys.
+    private CharSequence appendLastName(char[] chars, int position, CharSequence lastName) {
+
+        chars[position++] = ' ';
+        int from = position;
+        for (int i = 0; i < lastName.length(); i++)
+            chars[position++] = Character.toLowerCase(lastName.charAt(i));
+        Arrays.sort(chars, from, position);
+
+        blockingKey.length = position;
+        return blockingKey;
+    }
+
+    private int count(CharSequence value, int from, int to, int minimum) {
+
+        for (int i = from; i < to; i++) {
+
+            char c = Character.toLowerCase(value.charAt(i));
+            counts[c]++;
+            if (c < minimum)
+                minimum = c;
+        }
+
+        return minimum;
+    }
+
+    /**
+     * Writes the counted chars in ascending order into the key buffer, clearing the counts on the way.
+     */
+    private CharSequence emit(int minimum, int length) {
+
+        char[] chars = sortedKey.ensureCapacity(length);
+        int position = 0;
+
+        for (int c = minimum; position < length; c++) {
+
+            for (int n = counts[c]; n > 0; n--)
+                chars[position++] = (char) c;
+            counts[c] = 0;
+        }
+
+        sortedKey.length = length;
+        return sortedKey;
+    }
+
+    /**
+     * Turkish, Azeri and Lithuanian have locale specific lower casing rules for I, which
+     * String.toLowerCase() applies and Character.toLowerCase(char) does not.
+     */
+    private static boolean hasSimpleLowerCasing() {
+
+        String language = Locale.getDefault().getLanguage();
+        return !"tr".equals(language) && !"az".equals(language) && !"lt".equals(language);
+    }
+
+    /**
+     * Reusable char buffer exposed as a char sequence, one for the sorted keys and one for the blocking keys,
+     * so that both can be used at the same time.
+     */
+    static final class KeyBuffer implements CharSequence {
+
+        private char[] chars = new char[64];
+        private int length;
+
+        private char[] ensureCapacity(int capacity) {
+
+            if (chars.length < capacity)
+                chars = new char[Math.max(capacity, chars.length << 1)];
+            return chars;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+
+            if (index >= length)
+                throw new IndexOutOfBoundsException("Index " + index + " exceeds length " + length);
+            return chars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, length);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package no.companybook;
+
+
+import java.util.*;
+
+/**
+ * Bounded cache of last name neighbourhoods, i.e. of the indexed last names within distance one of a last
+ * name, see {@link CachingNameIndex}.
+ * <p>
+ * Last names are Zipf distributed, a few of them recur all the time while most are seen once. Eviction
+ * follows W-TinyLFU: new entries go into a small LRU window, and an entry leaving the window only enters
+ * the main space, a segmented LRU of a probation and a protected part, if its estimated access frequency
+ * is higher than the one of the entry it would evict. Frequencies are estimated by a count-min sketch of
+ * counters saturating at 15, which are halved every time ten accesses per cache entry have been counted, so that
+ * the estimates follow changes of the distribution. A burst of one-off names thus never flushes the
+ * frequent names, while a name that becomes frequent enters the main space after a few accesses.
+ * <p>
+ * The cached last names are also kept under their deletion keys, see {@link LastNameIndex}, which lets
+ * {@link #invalidateNeighbours(String)} drop every entry a new or removed last name may belong to without
+ * scanning the cache. Instances are not thread safe.
+ */
+public class NeighbourhoodCache {
+
+    private static final int SKETCH_DEPTH = 4;
+    private static final int MAX_FREQUENCY = 15;
+    private static final int SAMPLES_PER_ENTRY = 10;
+    private static final int[] SKETCH_SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+    private final int maximumSize;
+    private final int windowSize;
+    private final int protectedSize;
+
+    private final LinkedHashMap<String, List<String>> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, List<String>> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, List<String>> protectedSpace = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Set<String>> cachedByDeletionKey = new HashMap<>();
+
+    private final byte[] sketch;
+    private final int sketchMask;
+    private final int sampleLimit;
+    private int samples;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+
+    public NeighbourhoodCache(int maximumSize) {
+
+        if (maximumSize < 1)
+            throw new IllegalArgumentException("The maximum size must be at least one");
+
+        this.maximumSize = maximumSize;
+        this.windowSize = Math.max(1, maximumSize / 100);
+        this.protectedSize = (maximumSize - windowSize) * 4 / 5;
+
+        int width = Integer.highestOneBit(Math.max(16, maximumSize) * 2 - 1) * 4;
+        this.sketch = new byte[width];
+        this.sketchMask = width - 1;
+        this.sampleLimit = Math.max(maximumSize, 16) * SAMPLES_PER_ENTRY;
+    }
+
+    /**
+     * Returns the cached neighbourhood of the last name, or null, and counts the access.
+     */
+    public List<String> get(String lastName) {
+
+        if (lastName == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        increment(lastName);
+
+        List<String> neighbours = window.get(lastName);
+        if (neighbours == null)
+            neighbours = protectedSpace.get(lastName);
+
+        if (neighbours == null) {
+
+            // a second hit in probation makes the entry protected.
+            neighbours = probation.remove(lastName);
+            if (neighbours != null)
+                protect(lastName, neighbours);
+        }
+
+        if (neighbours == null)
+            misses++;
+        else
+            hits++;
+
+        return neighbours;
+    }
+
+    /**
+     * Caches the neighbourhood of a last name which {@link #get(String)} has just missed.
+     */
+    public void put(String lastName, List<String> neighbours) {
+
+        if (lastName == null || neighbours == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        if (contains(lastName))
+            invalidate(lastName);
+
+        window.put(lastName, neighbours);
+        addDeletionKeys(lastName);
+
+        if (window.size() <= windowSize)
+            return;
+
+        Map.Entry<String, List<String>> candidate = eldest(window);
+        window.remove(candidate.getKey());
+
+        if (probation.size() + protectedSpace.size() < maximumSize - windowSize) {
+            probation.put(candidate.getKey(), candidate.getValue());
+            return;
+        }
+
+        // case : a cache of a single entry, which has no main space.
+        if (probation.isEmpty() && protectedSpace.isEmpty()) {
+            removeDeletionKeys(candidate.getKey());
+            evictions++;
+            return;
+        }
+
+        // the admission filter : the more frequent one of the window candidate and the probation victim stays.
+        Map.Entry<String, List<String>> victim = probation.isEmpty() ? eldest(protectedSpace) : eldest(probation);
+        if (frequency(candidate.getKey()) > frequency(victim.getKey())) {
+
+            probation.remove(victim.getKey());
+            protectedSpace.remove(victim.getKey());
+            removeDeletionKeys(victim.getKey());
+            probation.put(candidate.getKey(), candidate.getValue());
+
+        } else {
+            removeDeletionKeys(candidate.getKey());
+        }
+
+        evictions++;
+    }
+
+    /**
+     * Drops every cached neighbourhood the last name may belong to, to be called whenever the last name
+     * enters or leaves the index.
+     */
+    public void invalidateNeighbours(String lastName) {
+
+        if (lastName == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        for (String key : LastNameIndex.getDeletionKeys(lastName)) {
+
+            Set<String> cached = cachedByDeletionKey.get(key);
+            if (cached == null)
+                continue;
+
+            for (String cachedLastName : new ArrayList<>(cached)) {
+                invalidate(cachedLastName);
+                invalidations++;
+            }
+        }
+    }
+
+    public int size() {
+        return window.size() + probation.size() + protectedSpace.size();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * The entries dropped for lack of space, including window candidates rejected by the admission filter.
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * The entries dropped by {@link #invalidateNeighbours(String)}.
+     */
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    private boolean contains(String lastName) {
+        return window.containsKey(lastName) || probation.containsKey(lastName) || protectedSpace.containsKey(lastName);
+    }
+
+    private void invalidate(String lastName) {
+
+        if (window.remove(lastName) != null || probation.remove(lastName) != null || protectedSpace.remove(lastName) != null)
+            removeDeletionKeys(lastName);
+    }
+
+    private void protect(String lastName, List<String> neighbours) {
+
+        protectedSpace.put(lastName, neighbours);
+        if (protectedSpace.size() <= protectedSize)
+            return;
+
+        // the least recently used protected entry gets another chance in probation.
+        Map.Entry<String, List<String>> demoted = eldest(protectedSpace);
+        protectedSpace.remove(demoted.getKey());
+        probation.put(demoted.getKey(), demoted.getValue());
+    }
+
+    private void addDeletionKeys(String lastName) {
+
+        for (String key : LastNameIndex.getDeletionKeys(lastName)) {
+
+            Set<String> cached = cachedByDeletionKey.get(key);
+            if (cached == null) {
+                cached = new HashSet<>(2);
+                cachedByDeletionKey.put(key, cached);
+            }
+            cached.add(lastName);
+        }
+    }
+
+    private void removeDeletionKeys(String lastName) {
+
+        for (String key : LastNameIndex.getDeletionKeys(lastName)) {
+
+            Set<String> cached = cachedByDeletionKey.get(key);
+            if (cached != null) {
+                cached.remove(lastName);
+                if (cached.isEmpty())
+                    cachedByDeletionKey.remove(key);
+            }
+        }
+    }
+
+    private static Map.Entry<String, List<String>> eldest(LinkedHashMap<String, List<String>> segment) {
+        return segment.entrySet().iterator().next();
+    }
+
+    private void increment(String lastName) {
+
+        int hash = lastName.hashCode();
+        for (int i = 0; i < SKETCH_DEPTH; i++) {
+
+            int slot = slot(hash, i);
+            if (sketch[slot] < MAX_FREQUENCY)
+                sketch[slot]++;
+        }
+
+        if (++samples >= sampleLimit) {
+
+            // aging : halving every counter keeps the estimates recent.
+            for (int i = 0; i < sketch.length; i++)
+                sketch[i] >>= 1;
+            samples /= 2;
+        }
+    }
+
+    private int frequency(String lastName) {
+
+        int hash = lastName.hashCode();
+        int frequency = MAX_FREQUENCY;
+        for (int i = 0; i < SKETCH_DEPTH; i++)
+            frequency = Math.min(frequency, sketch[slot(hash, i)]);
+
+        return frequency;
+    }
+
+    private int slot(int hash, int row) {
+
+        int mixed = (hash ^ (hash >>> 16)) * SKETCH_SEEDS[row];
+        return (mixed ^ (mixed >>> 15)) & sketchMask;
+    }
+}
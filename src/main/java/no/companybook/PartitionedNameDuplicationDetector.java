@@ -0,0 +1,549 @@
+package no.companybook;
+
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Checks an input by splitting it into partitions which are checked by separate worker processes, and merging
+ * their duplicates back into input order.
+ * <p>
+ * The splitter reads the input twice to find the blocks of names which can take part in each other's check,
+ * see {@link NamePartitioner}, and assigns every block as a whole to one of the partition files, writing each
+ * name together with its position in the input in a third pass. Only the last names and hashes of the keys
+ * are kept while splitting. Every worker checks one partition sequentially in input order with its own index,
+ * and the merger reads the duplicates of every partition, each already in input order, and interleaves them
+ * by position. The result is exactly the one of {@link NameDuplicationDetector#checkDuplicates(List)}, for
+ * any number of partitions and processes, but a block can only go to one worker : a few common first names
+ * tie most names of a large input into a single block, see {@link #run} for what that costs.
+ * <p>
+ * The approximate split, see {@link #setApproximate(boolean)}, routes every name in a single pass by its
+ * partition key instead, see {@link NameDuplicationDetector#getPartitionKey(String)}, which spreads the names
+ * evenly but loses duplicates : a name of two known first names whose duplicate misspells one of them, or a
+ * name without a known first name whose duplicate changes the consonants of its parts, can be sent to another
+ * partition than its original, where it is not found.
+ */
+public class PartitionedNameDuplicationDetector {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // the detector settings handed to the workers, see getDetectorOptions.
+    private static final String DISTANCE_THRESHOLD_OPTION = "--distance-threshold=";
+    private static final String NEIGHBOURHOOD_CACHE_SIZE_OPTION = "--neighbourhood-cache-size=";
+    private static final String PHONETIC_ENCODING_OPTION = "--phonetic-encoding=";
+    private static final String PREFILTER_OPTION = "--prefilter";
+
+    private final NameDuplicationDetector detector;
+
+    private volatile boolean approximate;
+
+    public PartitionedNameDuplicationDetector() {
+        this(new NameDuplicationDetector());
+    }
+
+    public PartitionedNameDuplicationDetector(NameDuplicationDetector detector) {
+
+        if (detector == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        this.detector = detector;
+    }
+
+    public static Path partitionFile(Path directory, int partition) {
+        return directory.resolve("partition-" + partition + ".names");
+    }
+
+    public static Path resultFile(Path directory, int partition) {
+        return directory.resolve("partition-" + partition + ".duplicates");
+    }
+
+    public boolean isApproximate() {
+        return approximate;
+    }
+
+    /**
+     * Routes the names by their partition key rather than by their blocks, which splits in a single pass and
+     * spreads the names evenly, but may lose duplicates, see the class comment. Off by default.
+     */
+    public void setApproximate(boolean approximate) {
+        this.approximate = approximate;
+    }
+
+    /**
+     * Returns the partition the approximate split routes the name to.
+     */
+    int partitionOf(String name, int partitions) {
+
+        long hash = CompactNameStore.hash(detector.getPartitionKey(name));
+        return (int) ((hash >>> 1) % partitions);
+    }
+
+    /**
+     * Splits the UTF-8 encoded input of one name per line into the given number of partition files in the
+     * directory, and returns the number of names.
+     */
+    public long split(Path inputFile, Path directory, int partitions) throws IOException {
+
+        if (inputFile == null || directory == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        if (partitions < 1)
+            throw new IllegalArgumentException("The number of partitions must be at least one");
+
+        Files.createDirectories(directory);
+        int[] partitionOfName = approximate ? null : partitionBlocks(inputFile, partitions);
+        DataOutputStream[] outputs = new DataOutputStream[partitions];
+
+        try (BufferedReader reader = Files.newBufferedReader(inputFile, StandardCharsets.UTF_8)) {
+
+            for (int i = 0; i < partitions; i++)
+                outputs[i] = newOutput(partitionFile(directory, i));
+
+            long position = 0;
+            String name;
+            while ((name = reader.readLine()) != null) {
+
+                if (partitionOfName != null && position >= partitionOfName.length)
+                    throw new IOException("The input file changed while splitting");
+
+                int partition = approximate ? partitionOf(name, partitions) : partitionOfName[(int) position];
+                DataOutputStream output = outputs[partition];
+                output.writeLong(position++);
+                output.writeUTF(name);
+            }
+
+            return position;
+
+        } finally {
+            close(outputs);
+        }
+    }
+
+    // the partition of every input position, a block of names going to a single partition.
+    private int[] partitionBlocks(Path inputFile, int partitions) throws IOException {
+
+        StreamingNamePartitioner partitioner = new StreamingNamePartitioner(detector);
+
+        try (BufferedReader reader = Files.newBufferedReader(inputFile, StandardCharsets.UTF_8)) {
+            String name;
+            while ((name = reader.readLine()) != null)
+                partitioner.add(name);
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(inputFile, StandardCharsets.UTF_8)) {
+            int position = 0;
+            String name;
+            while ((name = reader.readLine()) != null && position < partitioner.size())
+                partitioner.link(position++, name);
+        }
+
+        return partitioner.assign(partitions);
+    }
+
+    /**
+     * Checks the names of one partition file and writes its duplicates, in input order, to the result file.
+     */
+    public void work(Path partitionFile, Path resultFile) throws IOException {
+
+        if (partitionFile == null || resultFile == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        try (DataInputStream input = newInput(partitionFile);
+             final DataOutputStream output = newOutput(resultFile)) {
+
+            final PartitionReader names = new PartitionReader(input);
+            final IOException[] writeFailure = new IOException[1];
+
+            detector.checkDuplicates(names, new DuplicateSink() {
+                @Override
+                public void accept(Pair<String, String> duplicate) {
+
+                    if (writeFailure[0] != null)
+                        return;
+
+                    try {
+                        output.writeLong(names.getPosition());
+                        output.writeUTF(duplicate.getL());
+                        output.writeUTF(duplicate.getR());
+                    } catch (IOException e) {
+                        writeFailure[0] = e;
+                    }
+                }
+            });
+
+            if (names.getFailure() != null)
+                throw names.getFailure();
+            if (writeFailure[0] != null)
+                throw writeFailure[0];
+        }
+    }
+
+    /**
+     * Merges the result files of the partitions in the directory and hands the duplicates to the sink in
+     * input order.
+     */
+    public void merge(Path directory, int partitions, DuplicateSink sink) throws IOException {
+
+        if (directory == null || sink == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        if (partitions < 1)
+            throw new IllegalArgumentException("The number of partitions must be at least one");
+
+        DataInputStream[] inputs = new DataInputStream[partitions];
+        PriorityQueue<Result> heads = new PriorityQueue<>(partitions);
+
+        try {
+
+            for (int i = 0; i < partitions; i++) {
+                inputs[i] = newInput(resultFile(directory, i));
+                Result head = Result.read(inputs[i], i);
+                if (head != null)
+                    heads.add(head);
+            }
+
+            // k-way merge : the smallest position among the heads of the partitions comes next.
+            Result next;
+            while ((next = heads.poll()) != null) {
+
+                sink.accept(new Pair<String, String>(next.name, next.match));
+
+                Result head = Result.read(inputs[next.partition], next.partition);
+                if (head != null)
+                    heads.add(head);
+            }
+
+        } finally {
+            close(inputs);
+        }
+    }
+
+    /**
+     * Splits the input into the directory, checks every partition in a worker process, running up to the
+     * given number of processes at a time, and merges their duplicates into the sink. The workers run on the
+     * class path and with the heap and system property settings of this JVM, and with the settings of the
+     * detector, see {@link #getDetectorOptions(NameDuplicationDetector)}.
+     * <p>
+     * The exact split does not scale with the number of processes beyond the share of the largest block : of
+     * a sample of 400,000 company people about three fifths of the names fall into one block, so the check
+     * takes at least three fifths of the sequential time however many processes run, and the worker of that
+     * block needs a heap for three fifths of the names. Only the approximate split spreads such an input
+     * evenly.
+     */
+    public void run(Path inputFile, Path directory, int partitions, int processes, DuplicateSink sink) throws IOException, InterruptedException {
+
+        if (inputFile == null || directory == null || sink == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        if (partitions < 1 || processes < 1)
+            throw new IllegalArgumentException("The number of partitions and processes must be at least one");
+
+        split(inputFile, directory, partitions);
+
+        Deque<Process> running = new ArrayDeque<>();
+        Map<Process, Integer> partitionOfProcess = new HashMap<>();
+
+        try {
+
+            for (int i = 0; i < partitions; i++) {
+
+                if (running.size() == processes)
+                    awaitWorker(running.removeFirst(), partitionOfProcess);
+
+                Process worker = workerCommand(partitionFile(directory, i), resultFile(directory, i)).inheritIO().start();
+                running.addLast(worker);
+                partitionOfProcess.put(worker, i);
+            }
+
+            while (!running.isEmpty())
+                awaitWorker(running.removeFirst(), partitionOfProcess);
+
+        } finally {
+            for (Process worker : running)
+                worker.destroy();
+        }
+
+        merge(directory, partitions, sink);
+    }
+
+    private static void awaitWorker(Process worker, Map<Process, Integer> partitionOfProcess) throws IOException, InterruptedException {
+
+        int exitCode = worker.waitFor();
+        if (exitCode != 0)
+            throw new IOException("Worker of partition " + partitionOfProcess.get(worker) + " exited with " + exitCode);
+    }
+
+    private ProcessBuilder workerCommand(Path partitionFile, Path resultFile) {
+
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+
+        // the heap, GC and system property settings, but no agents or debuggers.
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if ((argument.startsWith("-X") && !argument.startsWith("-Xrun")) || argument.startsWith("-D"))
+                command.add(argument);
+        }
+
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(PartitionedNameDuplicationDetector.class.getName());
+        command.add("work");
+        command.add(partitionFile.toString());
+        command.add(resultFile.toString());
+        command.addAll(getDetectorOptions(detector));
+
+        return new ProcessBuilder(command);
+    }
+
+    /**
+     * Returns the options of {@link #main(String[])} which give a detector the distance threshold, phonetic
+     * encoding, prefilter and neighbourhood cache size of the given one. Metrics are not passed on, they
+     * would be recorded in the JVM of the worker.
+     */
+    static List<String> getDetectorOptions(NameDuplicationDetector detector) {
+
+        DistanceThreshold distanceThreshold = detector.getDistanceThreshold();
+        StringBuilder minimumLengths = new StringBuilder(DISTANCE_THRESHOLD_OPTION);
+        for (int distance = 1; distance <= distanceThreshold.getMaxDistance(); distance++)
+            minimumLengths.append((distance > 1) ? "," : "").append(distanceThreshold.getMinimumLength(distance));
+
+        List<String> options = new ArrayList<>();
+        options.add(minimumLengths.toString());
+        options.add(NEIGHBOURHOOD_CACHE_SIZE_OPTION + detector.getNeighbourhoodCacheSize());
+        if (detector.getPhoneticEncoding() != null)
+            options.add(PHONETIC_ENCODING_OPTION + detector.getPhoneticEncoding().name());
+        if (detector.isPrefilter())
+            options.add(PREFILTER_OPTION);
+
+        return options;
+    }
+
+    /**
+     * Removes the options of {@link #getDetectorOptions(NameDuplicationDetector)} from the arguments and sets
+     * them on the detector.
+     */
+    static void setDetectorOptions(List<String> arguments, NameDuplicationDetector detector) {
+
+        for (Iterator<String> iterator = arguments.iterator(); iterator.hasNext(); ) {
+
+            String argument = iterator.next();
+            if (argument.startsWith(DISTANCE_THRESHOLD_OPTION)) {
+
+                String value = argument.substring(DISTANCE_THRESHOLD_OPTION.length());
+                String[] lengths = value.isEmpty() ? new String[0] : value.split(",", -1);
+                int[] minimumLengths = new int[lengths.length];
+                for (int i = 0; i < lengths.length; i++)
+                    minimumLengths[i] = Integer.parseInt(lengths[i]);
+
+                detector.setDistanceThreshold(DistanceThreshold.byLength(minimumLengths));
+
+            } else if (argument.startsWith(NEIGHBOURHOOD_CACHE_SIZE_OPTION)) {
+                detector.setNeighbourhoodCacheSize(Integer.parseInt(argument.substring(NEIGHBOURHOOD_CACHE_SIZE_OPTION.length())));
+            } else if (argument.startsWith(PHONETIC_ENCODING_OPTION)) {
+                detector.setPhoneticEncoding(PhoneticEncoding.valueOf(argument.substring(PHONETIC_ENCODING_OPTION.length())));
+            } else if (argument.equals(PREFILTER_OPTION)) {
+                detector.setPrefilter(true);
+            } else {
+                continue;
+            }
+
+            iterator.remove();
+        }
+    }
+
+    private static DataOutputStream newOutput(Path file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE));
+    }
+
+    private static DataInputStream newInput(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+    }
+
+    private static void close(Closeable[] closeables) throws IOException {
+
+        IOException failure = null;
+        for (Closeable closeable : closeables) {
+            try {
+                if (closeable != null)
+                    closeable.close();
+            } catch (IOException e) {
+                if (failure == null)
+                    failure = e;
+            }
+        }
+
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * The names of a partition file, and the input position of the name returned last. A read failure ends
+     * the names, and is rethrown by the worker once the check is done.
+     */
+    private static final class PartitionReader implements Iterator<String> {
+
+        private final DataInputStream input;
+        private long nextPosition = -1;
+        private long position = -1;
+        private IOException failure;
+
+        PartitionReader(DataInputStream input) {
+            this.input = input;
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            if (nextPosition >= 0)
+                return true;
+
+            if (failure != null)
+                return false;
+
+            try {
+                nextPosition = input.readLong();
+                return true;
+            } catch (EOFException e) {
+                return false;
+            } catch (IOException e) {
+                failure = e;
+                return false;
+            }
+        }
+
+        @Override
+        public String next() {
+
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            position = nextPosition;
+            nextPosition = -1;
+
+            try {
+                return input.readUTF();
+            } catch (IOException e) {
+                // the position was read, so the name is missing : stop after this one.
+                failure = e;
+                return "";
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        long getPosition() {
+            return position;
+        }
+
+        IOException getFailure() {
+            return failure;
+        }
+    }
+
+    /**
+     * A duplicate read back from a result file, ordered by input position.
+     */
+    private static final class Result implements Comparable<Result> {
+
+        private final long position;
+        private final String name;
+        private final String match;
+        private final int partition;
+
+        private Result(long position, String name, String match, int partition) {
+            this.position = position;
+            this.name = name;
+            this.match = match;
+            this.partition = partition;
+        }
+
+        static Result read(DataInputStream input, int partition) throws IOException {
+
+            long position;
+            try {
+                position = input.readLong();
+            } catch (EOFException e) {
+                return null;
+            }
+
+            return new Result(position, input.readUTF(), input.readUTF(), partition);
+        }
+
+        @Override
+        public int compareTo(Result other) {
+            return Long.compare(position, other.position);
+        }
+    }
+
+
+    public static void main(String[] args) {
+
+        NameDuplicationDetector detector = new NameDuplicationDetector();
+        PartitionedNameDuplicationDetector partitionedDetector = new PartitionedNameDuplicationDetector(detector);
+
+        // the approximate split and the detector settings are options of any mode, anywhere in the arguments.
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        partitionedDetector.setApproximate(arguments.remove("--approximate"));
+
+        try {
+            setDetectorOptions(arguments, detector);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Illegal detector option : " + e.getMessage());
+            System.exit(2);
+        }
+
+        args = arguments.toArray(new String[arguments.size()]);
+
+        DuplicateSink printer = new DuplicateSink() {
+            @Override
+            public void accept(Pair<String, String> duplicate) {
+                System.out.println(duplicate.getL() + "\t" + duplicate.getR());
+            }
+        };
+
+        try {
+
+            String mode = (args.length > 0) ? args[0] : "";
+            switch (mode) {
+
+                case "split":
+                    partitionedDetector.split(Paths.get(args[1]), Paths.get(args[2]), Integer.parseInt(args[3]));
+                    break;
+
+                case "work":
+                    partitionedDetector.work(Paths.get(args[1]), Paths.get(args[2]));
+                    break;
+
+                case "merge":
+                    partitionedDetector.merge(Paths.get(args[1]), Integer.parseInt(args[2]), printer);
+                    break;
+
+                case "run":
+                    int partitions = Integer.parseInt(args[3]);
+                    int processes = (args.length > 4) ? Integer.parseInt(args[4]) : partitions;
+                    partitionedDetector.run(Paths.get(args[1]), Paths.get(args[2]), partitions, processes, printer);
+                    break;
+
+                default:
+                    System.err.println("Usage : split <input> <directory> <partitions> [--approximate] | work <partition file> <result file>"
+                            + " | merge <directory> <partitions> | run <input> <directory> <partitions> [<processes>] [--approximate]"
+                            + ", with the detector options [--distance-threshold=<shortest length of distance 1>,<of distance 2>,..]"
+                            + " [--neighbourhood-cache-size=<size>] [--phonetic-encoding=CONSONANTS|COLOGNE] [--prefilter]");
+                    System.exit(2);
+            }
+
+        } catch (IOException | InterruptedException | RuntimeException e) {
+
+            System.err.println("Partitioned check failed due to " + e);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package no.companybook;
+
+
+/**
+ * The phonetic codes {@link PhoneticNameIndex} groups last names by, see
+ * {@link NameDuplicationDetector#setPhoneticEncoding(PhoneticEncoding)}.
+ */
+public enum PhoneticEncoding {
+
+    /**
+     * Soundex classes of the consonants after the first letter, see {@link PhoneticKeys#consonantKey(CharSequence)}.
+     * Groups a misspelled first letter of the same sound, but also many short names under few codes.
+     */
+    CONSONANTS {
+        @Override
+        public String encode(CharSequence lastName) {
+            return PhoneticKeys.consonantKey(lastName);
+        }
+    },
+
+    /**
+     * Kölner Phonetik, see {@link PhoneticKeys#cologneKey(CharSequence)}. Keeps the first sound, and tells
+     * apart more consonants than the Soundex classes.
+     */
+    COLOGNE {
+        @Override
+        public String encode(CharSequence lastName) {
+            return PhoneticKeys.cologneKey(lastName);
+        }
+    };
+
+    public abstract String encode(CharSequence lastName);
+}
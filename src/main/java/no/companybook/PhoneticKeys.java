@@ -0,0 +1,148 @@
+package no.companybook;
+
+
+/**
+ * Phonetic keys of name parts, equal for spellings that differ only in vowels, doubled letters or letters of
+ * similar sound.
+ * <p>
+ * The consonant key follows the Soundex classes: every consonant is replaced by the digit of its class,
+ * h and w are skipped, vowels separate consonants of the same class, and repeated digits are collapsed.
+ * Unlike Soundex, the first letter is dropped instead of kept, as a misspelled first letter is as likely as
+ * any other, so Gates, Gatez and Yates all get the key 32, and the key is not cut to a fixed length. Letters
+ * outside a to z are kept as they are.
+ * <p>
+ * The Cologne key follows the Kölner Phonetik, which is made for German and fits the Nordic names well:
+ * every letter is replaced by a digit depending on its neighbours, repeated digits are collapsed and the
+ * vowels are dropped but at the start, so Hansen, Hanssen and Hanzen all get the key 686. The Nordic and
+ * German vowels count as vowels, ß as s, other letters are skipped.
+ */
+final class PhoneticKeys {
+
+    // the class of every letter from a to z, '0' for the vowels and y, ' ' for the skipped h and w.
+    private static final String CLASSES = "0123012 02245501262301 202";
+
+    // the vowels beyond a to z which the Cologne key knows, the Nordic and German ones.
+    private static final String COLOGNE_VOWELS = "æøåäöüéèáàóòúíýÿ";
+
+    private static final char VOWEL = '0';
+    private static final char SKIPPED = ' ';
+
+
+    private PhoneticKeys() {
+    }
+
+    static String consonantKey(CharSequence namePart) {
+
+        if (namePart == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        StringBuilder key = new StringBuilder(namePart.length());
+
+        // the first letter is dropped, but still collapses with the letters of its class following it.
+        char previous = (namePart.length() > 0) ? letterClass(namePart.charAt(0)) : VOWEL;
+        for (int i = 1; i < namePart.length(); i++) {
+
+            char current = letterClass(namePart.charAt(i));
+            if (current == SKIPPED)
+                continue;
+
+            if (current != VOWEL && current != previous)
+                key.append(current);
+
+            previous = current;
+        }
+
+        return key.toString();
+    }
+
+    static String cologneKey(CharSequence namePart) {
+
+        if (namePart == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        // the letters only, lower cased, as the codes depend on the neighbouring letters.
+        StringBuilder letters = new StringBuilder(namePart.length());
+        for (int i = 0; i < namePart.length(); i++) {
+            char c = Character.toLowerCase(namePart.charAt(i));
+            if (c == 'ß')
+                letters.append('s');
+            else if ((c >= 'a' && c <= 'z') || COLOGNE_VOWELS.indexOf(c) >= 0)
+                letters.append(c);
+        }
+
+        StringBuilder key = new StringBuilder(letters.length() + 1);
+        char previous = SKIPPED;
+        for (int i = 0; i < letters.length(); i++) {
+
+            char before = (i > 0) ? letters.charAt(i - 1) : SKIPPED;
+            char after = (i + 1 < letters.length()) ? letters.charAt(i + 1) : SKIPPED;
+            String code = cologneCode(letters.charAt(i), before, after, i == 0);
+
+            for (int j = 0; j < code.length(); j++) {
+
+                char current = code.charAt(j);
+                if (current != previous && (current != VOWEL || i == 0))
+                    key.append(current);
+
+                previous = current;
+            }
+
+            // h keeps the letters on both sides apart, like vowels.
+            if (code.isEmpty())
+                previous = SKIPPED;
+        }
+
+        return key.toString();
+    }
+
+    private static String cologneCode(char c, char before, char after, boolean initial) {
+
+        switch (c) {
+
+            case 'h':
+                return "";
+            case 'b':
+                return "1";
+            case 'p':
+                return (after == 'h') ? "3" : "1";
+            case 'd':
+            case 't':
+                return (after == 'c' || after == 's' || after == 'z') ? "8" : "2";
+            case 'f':
+            case 'v':
+            case 'w':
+                return "3";
+            case 'g':
+            case 'k':
+            case 'q':
+                return "4";
+            case 'c':
+                if (initial)
+                    return ("ahkloqrux".indexOf(after) >= 0) ? "4" : "8";
+                return ("ahkoqux".indexOf(after) >= 0 && before != 's' && before != 'z') ? "4" : "8";
+            case 'x':
+                return (before == 'c' || before == 'k' || before == 'q') ? "8" : "48";
+            case 'l':
+                return "5";
+            case 'm':
+            case 'n':
+                return "6";
+            case 'r':
+                return "7";
+            case 's':
+            case 'z':
+                return "8";
+            default:
+                return String.valueOf(VOWEL);
+        }
+    }
+
+    private static char letterClass(char c) {
+
+        char lowerCase = Character.toLowerCase(c);
+        if (lowerCase >= 'a' && lowerCase <= 'z')
+            return CLASSES.charAt(lowerCase - 'a');
+
+        return Character.isLetter(lowerCase) ? lowerCase : SKIPPED;
+    }
+}
@@ -0,0 +1,161 @@
+package no.companybook;
+
+
+import java.util.*;
+
+/**
+ * {@link NameIndex} which groups the indexed last names by their phonetic code, on top of any other index,
+ * so that the fuzzy matching stage can look up the sound-alikes of a last name with a single hash lookup.
+ * <p>
+ * The code of a last name is computed once, when the last name enters the index, and the last names of a
+ * code are kept sorted, so {@link #getPhoneticCandidates(String)} answers in lexicographic order like the
+ * other lookups of last names. The candidates still have to be verified by the caller. The groups are built
+ * from the last names of the wrapped index in the first place, so an index saved by a previous run can be
+ * wrapped as well. Everything else is passed on to the wrapped index. Instances are not thread safe.
+ */
+public class PhoneticNameIndex implements NameIndex {
+
+    private final NameIndex nameIndex;
+    private final PhoneticEncoding encoding;
+
+    // number of accepted names per last name, like the wrapped index, and the last names of every code.
+    private final Map<String, Integer> lastNameCounts = new HashMap<>();
+    private final Map<String, SortedSet<String>> lastNamesByCode = new HashMap<>();
+
+
+    public PhoneticNameIndex(NameIndex nameIndex, PhoneticEncoding encoding) {
+
+        if (nameIndex == null || encoding == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        this.nameIndex = nameIndex;
+        this.encoding = encoding;
+
+        for (Iterator<Pair<String, Integer>> lastNames = nameIndex.lastNames(); lastNames.hasNext(); ) {
+            Pair<String, Integer> lastName = lastNames.next();
+            addPhoneticLastName(lastName.getL(), lastName.getR());
+        }
+    }
+
+    public NameIndex getNameIndex() {
+        return nameIndex;
+    }
+
+    public PhoneticEncoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Returns the indexed last names with the phonetic code of the given last name, in lexicographic order.
+     */
+    public List<String> getPhoneticCandidates(String lastName) {
+
+        if (lastName == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        SortedSet<String> lastNames = lastNamesByCode.get(encoding.encode(lastName));
+        return (lastNames == null) ? Collections.<String>emptyList() : new ArrayList<>(lastNames);
+    }
+
+    @Override
+    public String get(CharSequence sortedName) {
+        return nameIndex.get(sortedName);
+    }
+
+    @Override
+    public String put(CharSequence sortedName, String originalName) {
+        return nameIndex.put(sortedName, originalName);
+    }
+
+    @Override
+    public void addLastName(String lastName) {
+
+        nameIndex.addLastName(lastName);
+        addPhoneticLastName(lastName, 1);
+    }
+
+    @Override
+    public void removeLastName(String lastName) {
+
+        nameIndex.removeLastName(lastName);
+
+        Integer count = lastNameCounts.get(lastName);
+        if (count == null)
+            return;
+
+        if (count > 1) {
+            lastNameCounts.put(lastName, count - 1);
+            return;
+        }
+
+        lastNameCounts.remove(lastName);
+        String code = encoding.encode(lastName);
+        SortedSet<String> lastNames = lastNamesByCode.get(code);
+        lastNames.remove(lastName);
+        if (lastNames.isEmpty())
+            lastNamesByCode.remove(code);
+    }
+
+    @Override
+    public boolean containsLastName(String lastName) {
+        return nameIndex.containsLastName(lastName);
+    }
+
+    @Override
+    public List<String> getLastNameCandidates(String lastName) {
+        return nameIndex.getLastNameCandidates(lastName);
+    }
+
+    @Override
+    public List<String> getLastNamesWithinDistance(String lastName, int maxDistance) {
+        return nameIndex.getLastNamesWithinDistance(lastName, maxDistance);
+    }
+
+    @Override
+    public String getBlockedName(CharSequence blockingKey) {
+        return nameIndex.getBlockedName(blockingKey);
+    }
+
+    @Override
+    public void addBlockedName(CharSequence blockingKey, String originalName) {
+        nameIndex.addBlockedName(blockingKey, originalName);
+    }
+
+    @Override
+    public int size() {
+        return nameIndex.size();
+    }
+
+    @Override
+    public Iterator<Pair<String, String>> entries() {
+        return nameIndex.entries();
+    }
+
+    @Override
+    public Iterator<Pair<String, Integer>> lastNames() {
+        return nameIndex.lastNames();
+    }
+
+    @Override
+    public Iterator<Pair<String, String>> blockedNames() {
+        return nameIndex.blockedNames();
+    }
+
+    private void addPhoneticLastName(String lastName, int count) {
+
+        Integer indexedCount = lastNameCounts.get(lastName);
+        if (indexedCount != null) {
+            lastNameCounts.put(lastName, indexedCount + count);
+            return;
+        }
+
+        lastNameCounts.put(lastName, count);
+        String code = encoding.encode(lastName);
+        SortedSet<String> lastNames = lastNamesByCode.get(code);
+        if (lastNames == null) {
+            lastNames = new TreeSet<>();
+            lastNamesByCode.put(code, lastNames);
+        }
+        lastNames.add(lastName);
+    }
+}
@@ -0,0 +1,216 @@
+package no.companybook;
+
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * {@link NameIndex} which keeps a {@link BloomFilter} over the neighbourhoods of its blocking keys, on top of
+ * any other index, so that the fuzzy matching stage can prove cheaply that a name has no fuzzy duplicate.
+ * <p>
+ * A blocking key is a first name block followed by the sorted lower cased chars of a last name, see
+ * {@link NameBlocks}. A last name within edit distance one of another one has the same chars but for at most
+ * one inserted, deleted or replaced char, so either both sorted keys are equal, or one of them is the other
+ * one less a char, or both are equal once a char is taken out of each. Every key is therefore added to the
+ * filter together with the key less each of its chars, and {@link #mayHaveBlockedNameNear(CharSequence)}
+ * asks for the probed key and each of its deletions: if none is in the filter, none of the blocking keys the
+ * stage would probe can be registered, whichever last names are within distance one. The filter has no false
+ * negatives, its false positives only cost the regular check.
+ * <p>
+ * The filter is rebuilt from the blocking keys of the wrapped index with twice the capacity whenever it is
+ * full, and it is built from them in the first place, so an index saved by a previous run can be wrapped as
+ * well. Everything else is passed on to the wrapped index. Instances are not thread safe.
+ */
+public class PrefilteredNameIndex implements NameIndex {
+
+    private static final int INITIAL_CAPACITY = 1 << 12;
+
+    private final NameIndex nameIndex;
+    private BloomFilter filter;
+
+    // buffers of the hashes of a key's neighbourhood.
+    private long[] prefixHashes = new long[32];
+    private long[] hashes = new long[32];
+
+
+    public PrefilteredNameIndex(NameIndex nameIndex) {
+
+        if (nameIndex == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        this.nameIndex = nameIndex;
+        this.filter = buildFilter(INITIAL_CAPACITY);
+    }
+
+    public NameIndex getNameIndex() {
+        return nameIndex;
+    }
+
+    /**
+     * Returns false if no blocking key within one char insertion, deletion or replacement of the given one
+     * has been registered, true if one may have been.
+     */
+    public boolean mayHaveBlockedNameNear(CharSequence blockingKey) {
+
+        if (blockingKey == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        int count = neighbourhoodHashes(blockingKey);
+        for (int i = 0; i < count; i++) {
+            if (filter.mightContain(hashes[i]))
+                return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public String get(CharSequence sortedName) {
+        return nameIndex.get(sortedName);
+    }
+
+    @Override
+    public String put(CharSequence sortedName, String originalName) {
+        return nameIndex.put(sortedName, originalName);
+    }
+
+    @Override
+    public void addLastName(String lastName) {
+        nameIndex.addLastName(lastName);
+    }
+
+    @Override
+    public void removeLastName(String lastName) {
+        nameIndex.removeLastName(lastName);
+    }
+
+    @Override
+    public boolean containsLastName(String lastName) {
+        return nameIndex.containsLastName(lastName);
+    }
+
+    @Override
+    public List<String> getLastNameCandidates(String lastName) {
+        return nameIndex.getLastNameCandidates(lastName);
+    }
+
+    @Override
+    public List<String> getLastNamesWithinDistance(String lastName, int maxDistance) {
+        return nameIndex.getLastNamesWithinDistance(lastName, maxDistance);
+    }
+
+    @Override
+    public String getBlockedName(CharSequence blockingKey) {
+        return nameIndex.getBlockedName(blockingKey);
+    }
+
+    @Override
+    public void addBlockedName(CharSequence blockingKey, String originalName) {
+
+        nameIndex.addBlockedName(blockingKey, originalName);
+
+        // the key and its deletions may be added again, which only makes the filter grow a little earlier.
+        if (filter.size() + blockingKey.length() > filter.getCapacity())
+            filter = buildFilter(filter.getCapacity() * 2);
+        else
+            addToFilter(filter, blockingKey);
+    }
+
+    @Override
+    public int size() {
+        return nameIndex.size();
+    }
+
+    @Override
+    public Iterator<Pair<String, String>> entries() {
+        return nameIndex.entries();
+    }
+
+    @Override
+    public Iterator<Pair<String, Integer>> lastNames() {
+        return nameIndex.lastNames();
+    }
+
+    @Override
+    public Iterator<Pair<String, String>> blockedNames() {
+        return nameIndex.blockedNames();
+    }
+
+    private BloomFilter buildFilter(int capacity) {
+
+        // the keys of the wrapped index are counted first, to size the filter once.
+        int hashes = 0;
+        for (Iterator<Pair<String, String>> blockedNames = nameIndex.blockedNames(); blockedNames.hasNext(); )
+            hashes += blockedNames.next().getL().length();
+
+        while (capacity < hashes * 2L && capacity < (1 << 30))
+            capacity <<= 1;
+
+        BloomFilter built = new BloomFilter(capacity);
+        for (Iterator<Pair<String, String>> blockedNames = nameIndex.blockedNames(); blockedNames.hasNext(); )
+            addToFilter(built, blockedNames.next().getL());
+
+        return built;
+    }
+
+    private void addToFilter(BloomFilter filter, CharSequence blockingKey) {
+
+        int count = neighbourhoodHashes(blockingKey);
+        for (int i = 0; i < count; i++)
+            filter.add(hashes[i]);
+    }
+
+    /**
+     * Puts the hashes of the key and of the key less each char of its last name into the hashes, and returns
+     * their number. The hash of a deletion is put together from the hash of the chars before and the hash of
+     * the chars after it, so all of them take a single pass over the key.
+     */
+    private int neighbourhoodHashes(CharSequence blockingKey) {
+
+        int separator = separatorOf(blockingKey);
+        int length = blockingKey.length() - separator - 1;
+
+        if (prefixHashes.length < length + 1) {
+            prefixHashes = new long[length + 1];
+            hashes = new long[length + 1];
+        }
+
+        long hash = 0;
+        for (int i = 0; i <= separator; i++)
+            hash = 31 * hash + blockingKey.charAt(i);
+
+        prefixHashes[0] = hash;
+        for (int i = 0; i < length; i++)
+            prefixHashes[i + 1] = 31 * prefixHashes[i] + blockingKey.charAt(separator + 1 + i);
+
+        int count = 0;
+        hashes[count++] = BloomFilter.mix(prefixHashes[length]);
+
+        long suffixHash = 0;
+        long power = 1;
+        for (int i = length - 1; i >= 0; i--) {
+
+            char c = blockingKey.charAt(separator + 1 + i);
+
+            // equal neighbours leave the same key behind.
+            if (i == length - 1 || c != blockingKey.charAt(separator + 2 + i))
+                hashes[count++] = BloomFilter.mix(prefixHashes[i] * power + suffixHash);
+
+            suffixHash += c * power;
+            power *= 31;
+        }
+
+        return count;
+    }
+
+    // the first name block ends with the first space, the sorted last name follows, see NameTokenizer.
+    private static int separatorOf(CharSequence blockingKey) {
+
+        for (int i = 0; i < blockingKey.length(); i++) {
+            if (blockingKey.charAt(i) == ' ')
+                return i;
+        }
+
+        throw new IllegalArgumentException("Not a blocking key");
+    }
+}
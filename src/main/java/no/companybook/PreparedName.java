@@ -0,0 +1,43 @@
+package no.companybook;
+
+
+/**
+ * The parts of a name's check which do not depend on the index, computed ahead of the check by
+ * {@link NameDuplicationDetector#prepareName(String)}: the sorted keys probed by the identical and changed
+ * order cases, the first and last name of the fuzzy case, and the key and last name the name is indexed
+ * under once accepted.
+ * <p>
+ * A failure of the preprocessing is kept and thrown when the check gets to the name, so that it surfaces
+ * at the same point of the input as in the sequential check.
+ */
+final class PreparedName {
+
+    final String originalName;
+
+    // the probed keys, the flipped key is null for the common form of a name, whose sorted key covers both cases.
+    final String firstLastNameKey;
+    final String flippedKey;
+    final String[] firstLastNameSplits;
+    final RuntimeException findFailure;
+
+    final String nameKey;
+    final String indexedLastName;
+    final boolean blocked;
+    final RuntimeException acceptFailure;
+
+
+    PreparedName(String originalName, String firstLastNameKey, String flippedKey, String[] firstLastNameSplits,
+                 RuntimeException findFailure, String nameKey, String indexedLastName, boolean blocked,
+                 RuntimeException acceptFailure) {
+
+        this.originalName = originalName;
+        this.firstLastNameKey = firstLastNameKey;
+        this.flippedKey = flippedKey;
+        this.firstLastNameSplits = firstLastNameSplits;
+        this.findFailure = findFailure;
+        this.nameKey = nameKey;
+        this.indexedLastName = indexedLastName;
+        this.blocked = blocked;
+        this.acceptFailure = acceptFailure;
+    }
+}
@@ -0,0 +1,128 @@
+package no.companybook;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The slowest names checked by a detector, at most the capacity of them, and none faster than the threshold.
+ * <p>
+ * The names are kept in a heap with the fastest of them on top, which a slower name replaces once the
+ * reservoir is full. The duration of that fastest name is also kept outside of the lock, so the names which
+ * cannot make it into the reservoir, nearly all of them once it has filled up, are turned away without
+ * locking. Safe to use from any thread.
+ */
+public final class SlowNameReservoir {
+
+    private final int capacity;
+    private final long thresholdNanos;
+    private final PriorityQueue<SlowName> slowNames;
+
+    // names no slower than this are not kept, the threshold until the reservoir is full.
+    private volatile long floorNanos;
+
+
+    public SlowNameReservoir(int capacity, long thresholdNanos) {
+
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be at least one");
+
+        if (thresholdNanos < 0)
+            throw new IllegalArgumentException("Threshold must not be negative");
+
+        this.capacity = capacity;
+        this.thresholdNanos = thresholdNanos;
+        this.slowNames = new PriorityQueue<>(capacity);
+        this.floorNanos = thresholdNanos;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getThresholdNanos() {
+        return thresholdNanos;
+    }
+
+    /**
+     * Offers a checked name, with the stage which decided it and the time its check took.
+     */
+    public void record(String name, DetectorStage stage, long durationNanos) {
+
+        if (durationNanos < floorNanos)
+            return;
+
+        synchronized (this) {
+
+            if (slowNames.size() == capacity) {
+                if (durationNanos <= slowNames.peek().getDurationNanos())
+                    return;
+                slowNames.poll();
+            }
+
+            slowNames.add(new SlowName(name, stage, durationNanos));
+            if (slowNames.size() == capacity)
+                floorNanos = slowNames.peek().getDurationNanos();
+        }
+    }
+
+    /**
+     * Returns the names kept, the slowest first.
+     */
+    public synchronized List<SlowName> getSlowNames() {
+
+        List<SlowName> names = new ArrayList<>(slowNames);
+        Collections.sort(names, Collections.reverseOrder());
+
+        return names;
+    }
+
+    public synchronized void reset() {
+
+        slowNames.clear();
+        floorNanos = thresholdNanos;
+    }
+
+    /**
+     * A checked name, ordered by the time its check took.
+     */
+    public static final class SlowName implements Comparable<SlowName> {
+
+        private final String name;
+        private final DetectorStage stage;
+        private final long durationNanos;
+
+        SlowName(String name, DetectorStage stage, long durationNanos) {
+            this.name = name;
+            this.stage = stage;
+            this.durationNanos = durationNanos;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the stage which found the duplicate, or the last stage for a new name.
+         */
+        public DetectorStage getStage() {
+            return stage;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        @Override
+        public int compareTo(SlowName other) {
+            return Long.compare(durationNanos, other.durationNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s : %s, %d chars, %.3f ms", name, stage, name.length(), durationNanos / 1e6);
+        }
+    }
+}
@@ -0,0 +1,416 @@
+package no.companybook;
+
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Runs the identical and flipped stages of the check over an input of any size on a bounded heap, by an
+ * external sort of the names on their sorted keys instead of an index in memory.
+ * <p>
+ * Both stages only probe the sorted key of the first and last name, the flipped name has the same chars and
+ * therefore the same key. Every name becomes a record of that key and the name, the records are sorted in runs
+ * of the run size in memory and written to files in the directory, and the runs are merged on the key, run by
+ * run for equal keys, so the names of a key come in input order. The first name of a key which the index of
+ * {@link NameDuplicationDetector} would hold under it is the accepted one, every later name of the key is its
+ * duplicate. Names with middle names are indexed under all their names, so they are duplicates of an accepted
+ * first and last name, but are never accepted under it themselves, just like in the index. No more than
+ * {@link #MERGE_WIDTH} runs are merged at once, more are merged into longer runs first.
+ * <p>
+ * The duplicates are handed to the sink in the order of their keys, not in input order. The fuzzy stage needs
+ * the accepted names in input order and is not run, so a name is matched to the first name of its key even
+ * where the full check would have matched that one to another name before. The run files are deleted when the
+ * check is done.
+ */
+public class SortingNameDuplicationDetector {
+
+    static final int MERGE_WIDTH = 64;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int DEFAULT_RUN_SIZE = 1 << 18;
+
+    private final NameDuplicationDetector detector;
+    private final int runSize;
+
+
+    public SortingNameDuplicationDetector() {
+        this(new NameDuplicationDetector());
+    }
+
+    public SortingNameDuplicationDetector(NameDuplicationDetector detector) {
+        this(detector, DEFAULT_RUN_SIZE);
+    }
+
+    /**
+     * A detector which sorts up to the run size of names at a time in memory.
+     */
+    public SortingNameDuplicationDetector(NameDuplicationDetector detector, int runSize) {
+
+        if (detector == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        if (runSize < 1)
+            throw new IllegalArgumentException("The run size must be at least one");
+
+        this.detector = detector;
+        this.runSize = runSize;
+    }
+
+    public int getRunSize() {
+        return runSize;
+    }
+
+    /**
+     * Checks the UTF-8 encoded input of one name per line, with the run files in the directory.
+     */
+    public void checkDuplicates(Path inputFile, Path directory, DuplicateSink sink) throws IOException {
+
+        if (inputFile == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        try (BufferedReader reader = Files.newBufferedReader(inputFile, StandardCharsets.UTF_8)) {
+
+            LineReader names = new LineReader(reader);
+            checkDuplicates(names, directory, sink);
+
+            if (names.getFailure() != null)
+                throw names.getFailure();
+        }
+    }
+
+    public void checkDuplicates(Iterator<String> inputNames, Path directory, DuplicateSink sink) throws IOException {
+
+        if (inputNames == null || directory == null || sink == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        Files.createDirectories(directory);
+        List<Path> runs = new ArrayList<>();
+
+        try {
+
+            writeRuns(inputNames, directory, runs);
+
+            // merge passes until the runs can be merged at once.
+            while (runs.size() > MERGE_WIDTH) {
+
+                List<Path> mergedRuns = new ArrayList<>();
+                for (int from = 0; from < runs.size(); from += MERGE_WIDTH) {
+
+                    List<Path> group = runs.subList(from, Math.min(from + MERGE_WIDTH, runs.size()));
+                    Path mergedRun = newRun(directory);
+                    mergedRuns.add(mergedRun);
+                    mergeRuns(group, mergedRun);
+                }
+
+                deleteRuns(runs);
+                runs = mergedRuns;
+            }
+
+            emitDuplicates(runs, sink);
+
+        } finally {
+            deleteRuns(runs);
+        }
+    }
+
+    private void writeRuns(Iterator<String> inputNames, Path directory, List<Path> runs) throws IOException {
+
+        SortRecord[] records = new SortRecord[runSize];
+        int size = 0;
+
+        while (inputNames.hasNext()) {
+
+            records[size++] = toRecord(inputNames.next());
+            if (size == runSize) {
+                runs.add(writeRun(records, size, directory));
+                size = 0;
+            }
+        }
+
+        if (size > 0)
+            runs.add(writeRun(records, size, directory));
+    }
+
+    // the keys the index of the detector would be probed with and would hold the name under.
+    private SortRecord toRecord(String originalName) {
+
+        PreparedName name = detector.prepareName(originalName);
+        if (name.findFailure != null)
+            throw name.findFailure;
+        if (name.acceptFailure != null)
+            throw name.acceptFailure;
+
+        return new SortRecord(name.firstLastNameKey, name.nameKey.equals(name.firstLastNameKey), originalName);
+    }
+
+    private static Path writeRun(SortRecord[] records, int size, Path directory) throws IOException {
+
+        // the sort is stable, so the names of a key stay in input order.
+        Arrays.sort(records, 0, size);
+
+        Path run = newRun(directory);
+        try (DataOutputStream output = newOutput(run)) {
+            for (int i = 0; i < size; i++) {
+                records[i].write(output);
+                records[i] = null;
+            }
+        }
+
+        return run;
+    }
+
+    private static void mergeRuns(List<Path> runs, Path mergedRun) throws IOException {
+
+        try (RunMerger merger = new RunMerger(runs);
+             DataOutputStream output = newOutput(mergedRun)) {
+
+            SortRecord record;
+            while ((record = merger.next()) != null)
+                record.write(output);
+        }
+    }
+
+    private static void emitDuplicates(List<Path> runs, DuplicateSink sink) throws IOException {
+
+        try (RunMerger merger = new RunMerger(runs)) {
+
+            String key = null;
+            String acceptedName = null;
+
+            SortRecord record;
+            while ((record = merger.next()) != null) {
+
+                if (!record.key.equals(key)) {
+                    key = record.key;
+                    acceptedName = null;
+                }
+
+                if (acceptedName != null)
+                    sink.accept(new Pair<String, String>(record.name, acceptedName));
+                else if (record.indexed)
+                    acceptedName = record.name;
+            }
+        }
+    }
+
+    private static Path newRun(Path directory) throws IOException {
+        return Files.createTempFile(directory, "run-", ".records");
+    }
+
+    private static void deleteRuns(List<Path> runs) throws IOException {
+
+        for (Path run : runs)
+            Files.deleteIfExists(run);
+    }
+
+    private static DataOutputStream newOutput(Path file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE));
+    }
+
+    private static DataInputStream newInput(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+    }
+
+    /**
+     * A name with the key it is probed with, and whether the index would hold it under that key.
+     */
+    private static final class SortRecord implements Comparable<SortRecord> {
+
+        private final String key;
+        private final boolean indexed;
+        private final String name;
+
+        private SortRecord(String key, boolean indexed, String name) {
+            this.key = key;
+            this.indexed = indexed;
+            this.name = name;
+        }
+
+        static SortRecord read(DataInputStream input) throws IOException {
+
+            String key;
+            try {
+                key = input.readUTF();
+            } catch (EOFException e) {
+                return null;
+            }
+
+            return new SortRecord(key, input.readBoolean(), input.readUTF());
+        }
+
+        void write(DataOutputStream output) throws IOException {
+
+            output.writeUTF(key);
+            output.writeBoolean(indexed);
+            output.writeUTF(name);
+        }
+
+        @Override
+        public int compareTo(SortRecord other) {
+            return key.compareTo(other.key);
+        }
+    }
+
+    /**
+     * K-way merge of runs in input order : the smallest key among the heads of the runs comes next, and of
+     * equal keys the one of the earliest run.
+     */
+    private static final class RunMerger implements Closeable {
+
+        private final DataInputStream[] inputs;
+        private final PriorityQueue<RunHead> heads;
+
+        RunMerger(List<Path> runs) throws IOException {
+
+            inputs = new DataInputStream[runs.size()];
+            heads = new PriorityQueue<>(Math.max(1, runs.size()));
+
+            try {
+                for (int i = 0; i < inputs.length; i++) {
+                    inputs[i] = newInput(runs.get(i));
+                    advance(i);
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        SortRecord next() throws IOException {
+
+            RunHead head = heads.poll();
+            if (head == null)
+                return null;
+
+            advance(head.run);
+            return head.record;
+        }
+
+        private void advance(int run) throws IOException {
+
+            SortRecord record = SortRecord.read(inputs[run]);
+            if (record != null)
+                heads.add(new RunHead(record, run));
+        }
+
+        @Override
+        public void close() throws IOException {
+
+            IOException failure = null;
+            for (DataInputStream input : inputs) {
+                try {
+                    if (input != null)
+                        input.close();
+                } catch (IOException e) {
+                    if (failure == null)
+                        failure = e;
+                }
+            }
+
+            if (failure != null)
+                throw failure;
+        }
+    }
+
+    private static final class RunHead implements Comparable<RunHead> {
+
+        private final SortRecord record;
+        private final int run;
+
+        private RunHead(SortRecord record, int run) {
+            this.record = record;
+            this.run = run;
+        }
+
+        @Override
+        public int compareTo(RunHead other) {
+
+            int order = record.compareTo(other.record);
+            return (order != 0) ? order : Integer.compare(run, other.run);
+        }
+    }
+
+    /**
+     * The lines of a reader. A read failure ends the lines, and is rethrown once the check is done.
+     */
+    private static final class LineReader implements Iterator<String> {
+
+        private final BufferedReader reader;
+        private String nextLine;
+        private IOException failure;
+
+        LineReader(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            if (nextLine != null)
+                return true;
+
+            if (failure != null)
+                return false;
+
+            try {
+                nextLine = reader.readLine();
+            } catch (IOException e) {
+                failure = e;
+            }
+
+            return nextLine != null;
+        }
+
+        @Override
+        public String next() {
+
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            String line = nextLine;
+            nextLine = null;
+            return line;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        IOException getFailure() {
+            return failure;
+        }
+    }
+
+
+    public static void main(String[] args) {
+
+        if (args.length < 2) {
+            System.err.println("Usage : <input> <directory> [<run size>]");
+            System.exit(2);
+        }
+
+        DuplicateSink printer = new DuplicateSink() {
+            @Override
+            public void accept(Pair<String, String> duplicate) {
+                System.out.println(duplicate.getL() + "\t" + duplicate.getR());
+            }
+        };
+
+        try {
+
+            int runSize = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_RUN_SIZE;
+            new SortingNameDuplicationDetector(new NameDuplicationDetector(), runSize)
+                    .checkDuplicates(Paths.get(args[0]), Paths.get(args[1]), printer);
+
+        } catch (IOException | RuntimeException e) {
+
+            System.err.println("Sorting check failed due to " + e);
+            System.exit(1);
+        }
+    }
+}
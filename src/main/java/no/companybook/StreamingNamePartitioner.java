@@ -0,0 +1,207 @@
+package no.companybook;
+
+
+import java.util.*;
+
+/**
+ * Splits names into the blocks of {@link NamePartitioner} without holding the names, for inputs which are
+ * read from a file rather than kept in memory.
+ * <p>
+ * The names are added one at a time in input order, and linked in a second pass over the same input once all
+ * of them are added, after which the block of every input position is known. Instead of the keys themselves,
+ * 64 bit hashes of the sorted keys and blocking keys map to the first position holding them. The last names
+ * are the only strings kept, in the index their variants are looked up in. Two keys of the same hash put
+ * their names into one block, which can merge blocks that were independent but never splits one, so the
+ * blocks stay closed under the relations of {@link NamePartitioner}. Instances are not thread safe.
+ */
+final class StreamingNamePartitioner {
+
+    private final NameDuplicationDetector nameDuplicationDetector;
+
+    private final UnionFind unionFind = new UnionFind(0);
+    private final KeyOwners sortedKeyOwners = new KeyOwners();
+    private final KeyOwners blockingKeyOwners = new KeyOwners();
+    private final KeyOwners lastNameOwners = new KeyOwners();
+    private final NameIndex allLastNames = new InMemoryNameIndex();
+
+
+    StreamingNamePartitioner(NameDuplicationDetector nameDuplicationDetector) {
+
+        if (nameDuplicationDetector == null)
+            throw new NullPointerException("Null Input is not allowed");
+
+        this.nameDuplicationDetector = nameDuplicationDetector;
+    }
+
+    /**
+     * Adds the next name of the input and returns its position : names sharing a sorted key, a blocking key
+     * or a last name with it join its block.
+     */
+    int add(String name) {
+
+        if (unionFind.size() == Integer.MAX_VALUE)
+            throw new IllegalStateException("Too many names to partition");
+
+        int position = unionFind.add();
+
+        for (String key : NamePartitioner.getSortedKeys(nameDuplicationDetector, name))
+            unionWithOwner(sortedKeyOwners, key, position);
+        for (String key : nameDuplicationDetector.getBlockingKeys(name))
+            unionWithOwner(blockingKeyOwners, key, position);
+
+        String indexedLastName = nameDuplicationDetector.getLastNameOnly(name);
+        unionWithOwner(lastNameOwners, indexedLastName, position);
+        allLastNames.addLastName(indexedLastName);
+
+        return position;
+    }
+
+    /**
+     * Links the name at the position, once every name of the input is added : names with a last name within
+     * the distance threshold, and names registered under a blocking key its fuzzy case may probe, join its
+     * block.
+     */
+    void link(int position, String name) {
+
+        if (position < 0 || position >= unionFind.size())
+            throw new IndexOutOfBoundsException("Position " + position + " is not in 0 .. " + (unionFind.size() - 1));
+
+        String[] firstLastNameSplits = NamePartitioner.getFirstLastNameSplits(nameDuplicationDetector, name);
+        if (firstLastNameSplits.length < 2)
+            return;
+
+        List<String> variants = nameDuplicationDetector.getAllLastNameVariants(firstLastNameSplits[1], allLastNames);
+        for (String variant : variants)
+            unionFind.union(position, lastNameOwners.get(CompactNameStore.hash(variant)));
+
+        for (String key : nameDuplicationDetector.getProbedBlockingKeys(firstLastNameSplits[0], firstLastNameSplits[1], variants)) {
+            int owner = blockingKeyOwners.get(CompactNameStore.hash(key));
+            if (owner != KeyOwners.ABSENT)
+                unionFind.union(position, owner);
+        }
+    }
+
+    int size() {
+        return unionFind.size();
+    }
+
+    /**
+     * Returns the partition of every position, given the number of partitions : the blocks are assigned
+     * largest first, each to the partition with the fewest names so far, the lowest of them on a tie.
+     */
+    int[] assign(int partitions) {
+
+        if (partitions < 1)
+            throw new IllegalArgumentException("The number of partitions must be at least one");
+
+        int size = unionFind.size();
+        int[] roots = new int[size];
+        int[] blockSizes = new int[size];
+        List<Integer> blocks = new ArrayList<>();
+
+        for (int i = 0; i < size; i++) {
+            roots[i] = unionFind.find(i);
+            if (blockSizes[roots[i]]++ == 0)
+                blocks.add(roots[i]);
+        }
+
+        // stable, so blocks of the same size keep the order of their first names.
+        final int[] sizes = blockSizes;
+        Collections.sort(blocks, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                return Integer.compare(sizes[second], sizes[first]);
+            }
+        });
+
+        long[] loads = new long[partitions];
+        int[] partitionOfBlock = new int[size];
+        for (int block : blocks) {
+
+            int partition = 0;
+            for (int i = 1; i < partitions; i++) {
+                if (loads[i] < loads[partition])
+                    partition = i;
+            }
+
+            partitionOfBlock[block] = partition;
+            loads[partition] += blockSizes[block];
+        }
+
+        for (int i = 0; i < size; i++)
+            roots[i] = partitionOfBlock[roots[i]];
+
+        return roots;
+    }
+
+    private void unionWithOwner(KeyOwners owners, String key, int position) {
+
+        long hash = CompactNameStore.hash(key);
+        int owner = owners.get(hash);
+        if (owner == KeyOwners.ABSENT)
+            owners.put(hash, position);
+        else
+            unionFind.union(position, owner);
+    }
+
+    /**
+     * Map from key hashes to the first position holding the key, an open addressing table of a long and an
+     * int array with linear probing.
+     */
+    private static final class KeyOwners {
+
+        static final int ABSENT = -1;
+
+        // never returned by CompactNameStore.hash, so it marks an empty slot.
+        private static final long EMPTY = 0L;
+
+        private long[] hashes = new long[16];
+        private int[] owners = new int[16];
+        private int size;
+
+        int get(long hash) {
+
+            int slot = findSlot(hashes, hash);
+            return (hashes[slot] == EMPTY) ? ABSENT : owners[slot];
+        }
+
+        void put(long hash, int owner) {
+
+            if ((size + 1) * 4L > hashes.length * 3L)
+                resize();
+
+            int slot = findSlot(hashes, hash);
+            if (hashes[slot] == EMPTY) {
+                hashes[slot] = hash;
+                size++;
+            }
+            owners[slot] = owner;
+        }
+
+        private void resize() {
+
+            long[] oldHashes = hashes;
+            int[] oldOwners = owners;
+            hashes = new long[oldHashes.length << 1];
+            owners = new int[oldHashes.length << 1];
+
+            for (int i = 0; i < oldHashes.length; i++) {
+                if (oldHashes[i] != EMPTY) {
+                    int slot = findSlot(hashes, oldHashes[i]);
+                    hashes[slot] = oldHashes[i];
+                    owners[slot] = oldOwners[i];
+                }
+            }
+        }
+
+        private static int findSlot(long[] hashes, long hash) {
+
+            int mask = hashes.length - 1;
+            int slot = (int) (hash ^ (hash >>> 32)) & mask;
+            while (hashes[slot] != EMPTY && hashes[slot] != hash)
+                slot = (slot + 1) & mask;
+
+            return slot;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package no.companybook;
+
+
+import java.util.Arrays;
+
+/**
+ * Disjoint sets over the integers 0 .. size - 1, backed by two primitive arrays and using path
+ * compression together with union by rank. Elements can be added one at a time, the arrays grow on demand.
+ */
+public final class UnionFind {
+
+    private int[] parent;
+    private byte[] rank;
+    private int size;
+
+
+    public UnionFind(int size) {
+
+        if (size < 0)
+            throw new IllegalArgumentException("Size must not be negative");
+
+        this.parent = new int[size];
+        this.rank = new byte[size];
+        this.size = size;
+
+        for (int i = 0; i < size; i++)
+            parent[i] = i;
+    }
+
+    /**
+     * Adds a new element in a set of its own and returns it.
+     */
+    public int add() {
+
+        if (size == parent.length)
+            ensureCapacity(Math.max(16, parent.length + (parent.length >> 1)));
+
+        parent[size] = size;
+        return size++;
+    }
+
+    /**
+     * Makes room for the given number of elements, so that adding up to them does not grow the arrays.
+     */
+    public void ensureCapacity(int capacity) {
+
+        if (capacity > parent.length) {
+            parent = Arrays.copyOf(parent, capacity);
+            rank = Arrays.copyOf(rank, capacity);
+        }
+    }
+
+    public int find(int element) {
+
+        if (element < 0 || element >= size)
+            throw new IndexOutOfBoundsException("Element " + element + " is not in 0 .. " + (size - 1));
+
+        int root = element;
+        while (parent[root] != root)
+            root = parent[root];
+
+        // path compression: point every element on the way directly to the root.
+        while (parent[element] != root) {
+            int next = parent[element];
+            parent[element] = root;
+            element = next;
+        }
+
+        return root;
+    }
+
+    /**
+     * Merges the sets of both elements and returns the root of the merged set.
+     */
+    public int union(int first, int second) {
+
+        int firstRoot = find(first);
+        int secondRoot = find(second);
+
+        if (firstRoot == secondRoot)
+            return firstRoot;
+
+        if (rank[firstRoot] < rank[secondRoot]) {
+            parent[firstRoot] = secondRoot;
+            return secondRoot;
+        }
+
+        if (rank[firstRoot] == rank[secondRoot])
+            rank[firstRoot]++;
+
+        parent[secondRoot] = firstRoot;
+        return firstRoot;
+    }
+
+    public boolean connected(int first, int second) {
+        return find(first) == find(second);
+    }
+
+    public int size() {
+        return size;
+    }
+}
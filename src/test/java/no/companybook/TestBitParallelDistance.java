@@ -0,0 +1,96 @@
+package no.companybook;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class TestBitParallelDistance {
+
+    private BitParallelDistance bitParallelDistance;
+    private NameDuplicationDetector nameDuplicationDetector;
+
+
+    @Before
+    public void setUp() {
+
+        bitParallelDistance = new BitParallelDistance();
+        nameDuplicationDetector = new NameDuplicationDetector();
+    }
+
+    @Test
+    public void testDistance() {
+
+        Assert.assertTrue("Pattern is rejected", bitParallelDistance.setPattern("GUMBO"));
+        Assert.assertEquals("Wrong distance", 2, bitParallelDistance.distance("GAMBOL"));
+        Assert.assertEquals("Wrong distance to itself", 0, bitParallelDistance.distance("GUMBO"));
+        Assert.assertEquals("Wrong distance to empty target", 5, bitParallelDistance.distance(""));
+        Assert.assertFalse("Distance two is within one", bitParallelDistance.withinDistance("GAMBOL", 1));
+        Assert.assertTrue("Distance two is not within two", bitParallelDistance.withinDistance("GAMBOL", 2));
+
+        Assert.assertTrue("Empty pattern is rejected", bitParallelDistance.setPattern(""));
+        Assert.assertEquals("Wrong distance of empty pattern", 3, bitParallelDistance.distance("abc"));
+
+        Assert.assertFalse("Pattern longer than 64 chars is accepted", bitParallelDistance.setPattern(repeat('a', 65)));
+    }
+
+    @Test
+    public void testDistanceMatchesDynamicProgramming() throws IOException {
+
+        List<String> inputNames = FileUtils.readLines(new File(getClass().getClassLoader().getResource("data/names.input").getFile()), "UTF-8");
+
+        Set<String> lastNames = new LinkedHashSet<>();
+        for (String name : inputNames)
+            lastNames.add(nameDuplicationDetector.getLastNameOnly(name));
+
+        List<String> words = new ArrayList<>(lastNames);
+
+        // random words over a small alphabet with chars beyond Latin-1, up to and beyond 64 chars.
+        Random random = new Random(42);
+        char[] alphabet = {'a', 'b', 'c', 'Ø', 'ş', 'İ', '中'};
+        for (int i = 0; i < 300; i++) {
+
+            char[] chars = new char[1 + random.nextInt(i < 250 ? 12 : 70)];
+            for (int j = 0; j < chars.length; j++)
+                chars[j] = alphabet[random.nextInt(alphabet.length)];
+            words.add(new String(chars));
+        }
+
+        for (int i = 0; i < words.size(); i++) {
+
+            String pattern = words.get(i);
+            if (!bitParallelDistance.setPattern(pattern)) {
+                Assert.assertTrue("Short pattern is rejected", pattern.length() > BitParallelDistance.MAX_PATTERN_LENGTH);
+                continue;
+            }
+
+            // every pattern against a stretch of the other words, which keeps the test quick.
+            for (int j = Math.max(0, i - 60); j < Math.min(words.size(), i + 60); j++) {
+
+                String target = words.get(j);
+                int expected = nameDuplicationDetector.computeLevenshteinDistance(pattern, target);
+
+                Assert.assertEquals("Wrong distance of " + pattern + " and " + target, expected, bitParallelDistance.distance(target));
+                for (int max = 0; max <= 2; max++)
+                    Assert.assertEquals("Wrong distance check of " + pattern + " and " + target + " for " + max,
+                            expected <= max, bitParallelDistance.withinDistance(target, max));
+            }
+        }
+    }
+
+    private static String repeat(char c, int count) {
+
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,93 @@
+package no.companybook;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+public class TestCompactNameStore {
+
+    private CompactNameStore compactNameStore;
+
+
+    @Before
+    public void setUp() {
+
+        compactNameStore = new CompactNameStore();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testPutNullException() {
+
+        compactNameStore.put(null, "Bill Gates");
+    }
+
+    @Test
+    public void testPutAndGet() {
+
+        Assert.assertNull("New key must not replace anything", compactNameStore.put(" abeggillst", "Bill Gates"));
+        Assert.assertTrue("Key must be contained", compactNameStore.containsKey(" abeggillst"));
+        Assert.assertEquals("Stored name is not correct", "Bill Gates", compactNameStore.get(" abeggillst"));
+        Assert.assertEquals("Stored name is not correct", "Bill Gates", compactNameStore.get(new StringBuilder(" abeggillst")));
+        Assert.assertFalse("Unknown key must not be contained", compactNameStore.containsKey(" abeggills"));
+        Assert.assertNull("Unknown key must not be found", compactNameStore.get("unknown"));
+
+        Assert.assertEquals("Replaced name is not correct", "Bill Gates", compactNameStore.put(" abeggillst", "Gates Bill"));
+        Assert.assertEquals("Stored name is not correct", "Gates Bill", compactNameStore.get(" abeggillst"));
+        Assert.assertEquals("Store size is not correct", 1, compactNameStore.size());
+    }
+
+    @Test
+    public void testNonAsciiNames() {
+
+        String[] names = {"Thorsten Hübschen", "Horacio Gutiérrez", "李小龙", "Broken \ud800 Surrogate", "Emoji 😀"};
+
+        for (String name : names)
+            compactNameStore.put(name.toLowerCase(), name);
+
+        for (String name : names)
+            Assert.assertEquals("Stored name is not correct", name, compactNameStore.get(name.toLowerCase()));
+    }
+
+    @Test
+    public void testAgreesWithHashMap() {
+
+        Map<String, String> expected = new HashMap<>();
+        Random random = new Random(7);
+
+        for (int i = 0; i < 50000; i++) {
+
+            String key = Integer.toString(random.nextInt(30000), 36);
+            String value = key + " " + i;
+            Assert.assertEquals("Replaced name is not correct", expected.put(key, value), compactNameStore.put(key, value));
+        }
+
+        Assert.assertEquals("Store size is not correct", expected.size(), compactNameStore.size());
+        for (Map.Entry<String, String> entry : expected.entrySet())
+            Assert.assertEquals("Stored name is not correct", entry.getValue(), compactNameStore.get(entry.getKey()));
+
+        Map<String, String> iterated = new HashMap<>();
+        for (Iterator<Pair<String, String>> entries = compactNameStore.entries(); entries.hasNext(); ) {
+            Pair<String, String> entry = entries.next();
+            iterated.put(entry.getL(), entry.getR());
+        }
+        Assert.assertEquals("Iterated entries are not correct", expected, iterated);
+    }
+
+    @Test
+    public void testLongNames() {
+
+        char[] chars = new char[3 << 20];
+        Arrays.fill(chars, 'a');
+        String longName = new String(chars);
+
+        compactNameStore.put("short", "Short Name");
+        compactNameStore.put(longName, longName);
+        compactNameStore.put("after", "After Long Name");
+
+        Assert.assertEquals("Stored name is not correct", longName, compactNameStore.get(longName));
+        Assert.assertEquals("Stored name is not correct", "Short Name", compactNameStore.get("short"));
+        Assert.assertEquals("Stored name is not correct", "After Long Name", compactNameStore.get("after"));
+    }
+}
@@ -0,0 +1,179 @@
+package no.companybook;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestConcurrentNameDuplicationDetector {
+
+    private static final int THREADS = 32;
+
+    private NameDuplicationDetector nameDuplicationDetector;
+    private List<String> inputNames;
+
+
+    @Before
+    public void setUp() throws IOException {
+
+        nameDuplicationDetector = new NameDuplicationDetector();
+        inputNames = FileUtils.readLines(new File(getClass().getClassLoader().getResource("data/names.input").getFile()), "UTF-8");
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testCheckAndInsertNullException() {
+
+        new ConcurrentNameDuplicationDetector().checkAndInsert(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStripesIllegalArgumentException() {
+
+        new ConcurrentNameDuplicationDetector(nameDuplicationDetector, new ConcurrentNameIndex(), 3);
+    }
+
+    @Test
+    public void testCheckAndInsertSequentially() {
+
+        ConcurrentNameDuplicationDetector concurrentDetector = new ConcurrentNameDuplicationDetector(nameDuplicationDetector, new ConcurrentNameIndex(), 1024);
+        List<Pair<String, String>> actual = new ArrayList<>();
+
+        for (String name : inputNames) {
+            String match = concurrentDetector.checkAndInsert(name);
+            if (match != null)
+                actual.add(new Pair<>(name, match));
+        }
+
+        List<Pair<String, String>> expected = nameDuplicationDetector.checkDuplicates(inputNames);
+
+        Assert.assertEquals("Number of duplicates differs from the batch check", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals("Duplicate differs from the batch check", expected.get(i).getL(), actual.get(i).getL());
+            Assert.assertEquals("Match differs from the batch check", expected.get(i).getR(), actual.get(i).getR());
+        }
+
+        // a name sharing the sorted key of an accepted name with other middle names replaces it, as in the batch check.
+        NameIndex nameIndex = new InMemoryNameIndex();
+        for (String name : inputNames) {
+            if (nameDuplicationDetector.findDuplicate(name, nameIndex) == null)
+                nameDuplicationDetector.acceptName(name, nameIndex);
+        }
+        Assert.assertEquals("Number of accepted names is not correct", nameIndex.size(), concurrentDetector.size());
+    }
+
+    @Test
+    public void testCheckAndInsertWithDistanceThreshold() {
+
+        nameDuplicationDetector.setDistanceThreshold(DistanceThreshold.byLength(1, 6));
+        ConcurrentNameDuplicationDetector concurrentDetector = new ConcurrentNameDuplicationDetector(nameDuplicationDetector, new ConcurrentNameIndex(), 1024);
+        List<Pair<String, String>> actual = new ArrayList<>();
+
+        for (String name : inputNames) {
+            String match = concurrentDetector.checkAndInsert(name);
+            if (match != null)
+                actual.add(new Pair<>(name, match));
+        }
+
+        List<Pair<String, String>> expected = nameDuplicationDetector.checkDuplicates(inputNames);
+
+        Assert.assertEquals("Number of duplicates differs from the batch check", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals("Duplicate differs from the batch check", expected.get(i).getL(), actual.get(i).getL());
+            Assert.assertEquals("Match differs from the batch check", expected.get(i).getR(), actual.get(i).getR());
+        }
+    }
+
+    @Test
+    public void testConcurrentNearDuplicatesAreAcceptedOnce() throws Exception {
+
+        // every two of these names are duplicates of each other, whichever comes first.
+        final String[] nearDuplicates = {"Bill Gates", "William Gates", "Will Gates", "Billy Gates", "Bill Gatez", "Liam Gates"};
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        try {
+
+            for (int round = 0; round < 50; round++) {
+
+                final ConcurrentNameDuplicationDetector concurrentDetector = new ConcurrentNameDuplicationDetector(nameDuplicationDetector, new ConcurrentNameIndex(), 1024);
+                final CyclicBarrier start = new CyclicBarrier(THREADS);
+                final AtomicInteger accepted = new AtomicInteger();
+                List<Future<?>> futures = new ArrayList<>();
+
+                for (int thread = 0; thread < THREADS; thread++) {
+
+                    final String name = nearDuplicates[thread % nearDuplicates.length];
+                    futures.add(executor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+
+                            start.await();
+                            if (concurrentDetector.checkAndInsert(name) == null)
+                                accepted.incrementAndGet();
+                            return null;
+                        }
+                    }));
+                }
+
+                for (Future<?> future : futures)
+                    future.get();
+
+                Assert.assertEquals("Exactly one of the near duplicates must be accepted", 1, accepted.get());
+                Assert.assertEquals("Index must hold exactly one name", 1, concurrentDetector.size());
+            }
+
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentIngestion() throws Exception {
+
+        final ConcurrentNameDuplicationDetector concurrentDetector = new ConcurrentNameDuplicationDetector();
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger accepted = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        try {
+
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+
+                        for (int i = next.getAndIncrement(); i < inputNames.size(); i = next.getAndIncrement()) {
+                            if (concurrentDetector.checkAndInsert(inputNames.get(i)) == null)
+                                accepted.incrementAndGet();
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures)
+                future.get();
+
+        } finally {
+            executor.shutdown();
+        }
+
+        Assert.assertTrue("Index holds names which were not accepted", concurrentDetector.size() <= accepted.get());
+
+        // every name in the index is a duplicate now, names with middle names are stored under a key never probed.
+        for (Iterator<Pair<String, String>> entries = concurrentDetector.getNameIndex().entries(); entries.hasNext(); ) {
+            String name = entries.next().getR();
+            if (!name.equals(nameDuplicationDetector.eliminateMiddleNames(name)))
+                continue;
+            Assert.assertNotNull("Accepted name must be found again : " + name, concurrentDetector.checkAndInsert(name));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package no.companybook;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+public class TestDetectorMetrics {
+
+    private NameDuplicationDetector nameDuplicationDetector;
+    private DetectorMetrics detectorMetrics;
+    private List<String> inputNames;
+
+
+    @Before
+    public void setUp() throws IOException {
+
+        nameDuplicationDetector = new NameDuplicationDetector();
+        detectorMetrics = new DetectorMetrics();
+        inputNames = FileUtils.readLines(new File(getClass().getClassLoader().getResource("data/names.input").getFile()), "UTF-8");
+    }
+
+    @Test
+    public void testMetricsOffByDefault() {
+
+        Assert.assertNull("Metrics are on by default", nameDuplicationDetector.getMetrics());
+        nameDuplicationDetector.checkDuplicates(inputNames);
+        Assert.assertEquals("Metrics recorded while off", 0, detectorMetrics.getNamesChecked());
+    }
+
+    @Test
+    public void testStageCounts() {
+
+        nameDuplicationDetector.setMetrics(detectorMetrics);
+        List<Pair<String, String>> duplicates = nameDuplicationDetector.checkDuplicates(inputNames);
+        MetricsSnapshot snapshot = detectorMetrics.getSnapshot();
+
+        Assert.assertEquals("Wrong number of names checked", inputNames.size(), snapshot.getNamesChecked());
+        Assert.assertEquals("Wrong number of duplicates", duplicates.size(), snapshot.getDuplicatesFound());
+
+        // a name reaches a stage if the stages before did not find a duplicate, the flipped one only outside the common form.
+        long missed = snapshot.getIdentical().getProbes() - snapshot.getIdentical().getHits() - snapshot.getFlipped().getHits();
+        Assert.assertEquals("Names missing from the fuzzy stage", missed, snapshot.getCombinations().getProbes());
+        Assert.assertTrue("Flipped stage probed more than missed by the identical one",
+                snapshot.getFlipped().getProbes() <= snapshot.getIdentical().getProbes() - snapshot.getIdentical().getHits());
+
+        for (DetectorStage stage : DetectorStage.values())
+            Assert.assertEquals("Latencies missing for " + stage, snapshot.getStage(stage).getProbes(), snapshot.getStage(stage).getLatency().getCount());
+
+        Assert.assertTrue("No hits of the fuzzy stage", snapshot.getCombinations().getHits() > 0);
+        Assert.assertTrue("No levenshtein evaluations", snapshot.getLevenshteinEvaluations() > 0);
+        Assert.assertTrue("Fewer block probes than fuzzy checks", snapshot.getBlockProbes() >= snapshot.getCombinations().getProbes());
+        Assert.assertTrue("Index size exceeds the new names", snapshot.getIndexSize() <= inputNames.size() - duplicates.size());
+
+        detectorMetrics.reset();
+        Assert.assertEquals("Counters not reset", 0, detectorMetrics.getSnapshot().getNamesChecked());
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+
+        nameDuplicationDetector.setMetrics(detectorMetrics);
+        nameDuplicationDetector.checkDuplicates(inputNames);
+
+        ObjectName objectName = detectorMetrics.registerMBean("test");
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+
+            Assert.assertEquals("Wrong names checked attribute", (long) inputNames.size(), mBeanServer.getAttribute(objectName, "NamesChecked"));
+
+            CompositeData snapshot = (CompositeData) mBeanServer.getAttribute(objectName, "Snapshot");
+            CompositeData combinations = (CompositeData) snapshot.get("combinations");
+            Assert.assertEquals("Wrong fuzzy stage hits attribute",
+                    detectorMetrics.getSnapshot().getCombinations().getHits(), combinations.get("hits"));
+
+        } finally {
+            mBeanServer.unregisterMBean(objectName);
+        }
+    }
+
+    @Test
+    public void testSlowNames() throws Exception {
+
+        detectorMetrics.setSlowNames(new SlowNameReservoir(5, 0));
+        nameDuplicationDetector.setMetrics(detectorMetrics);
+        nameDuplicationDetector.checkDuplicates(inputNames);
+
+        List<SlowNameReservoir.SlowName> slowNames = detectorMetrics.getSlowNames().getSlowNames();
+        Assert.assertEquals("Wrong number of slow names", 5, slowNames.size());
+        for (SlowNameReservoir.SlowName slowName : slowNames)
+            Assert.assertTrue("Slow name is not an input name", inputNames.contains(slowName.getName()));
+
+        // case : the dump is an operation of the MBean, the slowest name first.
+        ObjectName objectName = detectorMetrics.registerMBean("slow");
+        try {
+            String[] dump = (String[]) ManagementFactory.getPlatformMBeanServer().invoke(objectName, "dumpSlowNames", null, null);
+            Assert.assertEquals("Wrong slowest name", slowNames.get(0).toString(), dump[0]);
+        } finally {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        }
+
+        detectorMetrics.reset();
+        Assert.assertTrue("Slow names not reset", detectorMetrics.dumpSlowNames().isEmpty());
+    }
+
+    @Test
+    public void testCheckRecorder() {
+
+        // case : the flight recorder events on a JVM with jdk.jfr, like this one.
+        Assert.assertTrue("Flight recorder events are not recorded", NameDuplicationDetector.newCheckRecorder() instanceof JfrCheckRecorder);
+
+        // case : the recorder of a JVM without jdk.jfr records nothing, and needs no state.
+        Object check = CheckRecorder.NONE.beginNameCheck();
+        Assert.assertNull("Check without recorder has a state", check);
+        CheckRecorder.NONE.endNameCheck(check, "Bill Gates", DetectorStage.IDENTICAL, true);
+    }
+}
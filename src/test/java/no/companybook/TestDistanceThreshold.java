@@ -0,0 +1,34 @@
+package no.companybook;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestDistanceThreshold {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testByLengthIllegalArgumentException() {
+
+        DistanceThreshold.byLength(8, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetMinimumLengthIllegalArgumentException() {
+
+        DistanceThreshold.fixed(1).getMinimumLength(2);
+    }
+
+    @Test
+    public void testGetMaxDistance() {
+
+        Assert.assertEquals("Fixed distance is not correct", 2, DistanceThreshold.fixed(2).getMaxDistance(3));
+        Assert.assertEquals("Distance zero is not correct", 0, DistanceThreshold.fixed(0).getMaxDistance(12));
+
+        DistanceThreshold distanceThreshold = DistanceThreshold.byLength(1, 8);
+        Assert.assertEquals("Distance of an empty last name is not correct", 0, distanceThreshold.getMaxDistance(0));
+        Assert.assertEquals("Distance of a short last name is not correct", 1, distanceThreshold.getMaxDistance(7));
+        Assert.assertEquals("Distance of a long last name is not correct", 2, distanceThreshold.getMaxDistance(8));
+        Assert.assertEquals("Largest distance is not correct", 2, distanceThreshold.getMaxDistance());
+        Assert.assertEquals("Shortest length of distance two is not correct", 8, distanceThreshold.getMinimumLength(2));
+        Assert.assertEquals("Distance one must be the default", DistanceThreshold.fixed(1), DistanceThreshold.DISTANCE_ONE);
+    }
+}
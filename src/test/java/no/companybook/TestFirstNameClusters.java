@@ -0,0 +1,114 @@
+package no.companybook;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+public class TestFirstNameClusters {
+
+    private FirstNameClusters firstNameClusters;
+
+
+    @Before
+    public void setUp() {
+
+        firstNameClusters = FirstNameClusters.parse(Arrays.asList(
+                "Albert - Al, Bert",
+                "Alfred - Al, Alf, Fred",
+                "Stephen - Steve - Stevie",
+                "William - Will, Bill, Billy"));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testParseNullException() {
+
+        FirstNameClusters.parse(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseMalformedLineException() {
+
+        FirstNameClusters.parse(Arrays.asList("William"));
+    }
+
+    @Test
+    public void testGetVariants() {
+
+        List<String> variants = Arrays.asList(firstNameClusters.getVariants("Bill"));
+
+        Assert.assertEquals("Variants of a nickname are incorrect", Arrays.asList("William", "Will", "Bill", "Billy"), variants);
+        Assert.assertArrayEquals("Lookup must ignore case", firstNameClusters.getVariants("William"), firstNameClusters.getVariants("wILLIAM"));
+        Assert.assertTrue("Variants after a second dash are missing", Arrays.asList(firstNameClusters.getVariants("Stephen")).contains("Stevie"));
+        Assert.assertNull("Unknown name must not have variants", firstNameClusters.getVariants("Satya"));
+    }
+
+    @Test
+    public void testSharedNicknameDoesNotMergeClusters() {
+
+        Assert.assertEquals("Shared nickname must belong to both clusters", 2, firstNameClusters.getClusterIds("Al").length);
+        Assert.assertTrue("Nickname must be a variant of its canonical name", firstNameClusters.areVariants("Al", "Alfred"));
+        Assert.assertTrue("Variants must be symmetric", firstNameClusters.areVariants("Bert", "Albert"));
+        Assert.assertFalse("Clusters sharing a nickname must stay apart", firstNameClusters.areVariants("Albert", "Alfred"));
+        Assert.assertFalse("Albert cluster must not contain Fred", Arrays.asList(firstNameClusters.getVariants("Albert")).contains("Fred"));
+        Assert.assertTrue("Equal unknown names are variants", firstNameClusters.areVariants("Satya", "satya"));
+    }
+
+    @Test
+    public void testWriteRead() throws IOException {
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        firstNameClusters.write(output);
+        FirstNameClusters readClusters = FirstNameClusters.read(new ByteArrayInputStream(output.toByteArray()));
+
+        assertSameClusters(Arrays.asList("Albert", "Al", "Bert", "Alfred", "Alf", "Fred", "Stephen", "Steve", "Stevie",
+                "William", "Will", "Bill", "Billy", "Satya"), firstNameClusters, readClusters);
+        Assert.assertTrue("Lookup must ignore case", readClusters.areVariants("bILL", "william"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadMalformedException() throws IOException {
+
+        FirstNameClusters.read(new ByteArrayInputStream(new byte[]{'A', 'l', ' ', '-'}));
+    }
+
+    @Test
+    public void testCompiledFirstNames() throws IOException {
+
+        // the build compiles the first names file next to it.
+        List<String> lines = FileUtils.readLines(new File(getClass().getClassLoader().getResource("data/Firstnames.txt").getFile()), "UTF-8");
+        FirstNameClusters parsedClusters = FirstNameClusters.parse(lines);
+
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream("data/Firstnames.bin")) {
+
+            Assert.assertNotNull("Compiled first names are missing", input);
+            FirstNameClusters compiledClusters = FirstNameClusters.read(input);
+
+            for (String line : lines)
+                assertSameClusters(Arrays.asList(line.split("[-,]")), parsedClusters, compiledClusters);
+        }
+    }
+
+    private void assertSameClusters(List<String> names, FirstNameClusters expected, FirstNameClusters actual) {
+
+        Assert.assertEquals("Number of names differs", expected.size(), actual.size());
+        Assert.assertEquals("Number of clusters differs", expected.getClusterCount(), actual.getClusterCount());
+
+        for (String name : names) {
+
+            name = name.trim();
+            Assert.assertEquals("Name id differs", expected.indexOf(name), actual.indexOf(name));
+            Assert.assertArrayEquals("Cluster ids differ", expected.getClusterIds(name), actual.getClusterIds(name));
+            Assert.assertArrayEquals("Variants differ", expected.getVariants(name), actual.getVariants(name));
+        }
+    }
+}
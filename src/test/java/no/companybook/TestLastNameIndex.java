@@ -0,0 +1,82 @@
+package no.companybook;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+public class TestLastNameIndex {
+
+    private LastNameIndex lastNameIndex;
+
+
+    @Before
+    public void setUp() {
+
+        lastNameIndex = new LastNameIndex();
+        lastNameIndex.add("Gates");
+        lastNameIndex.add("Gatez");
+        lastNameIndex.add("Gate");
+        lastNameIndex.add("Hansen");
+        lastNameIndex.add("Yates");
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testAddNullException() {
+
+        lastNameIndex.add(null);
+    }
+
+    @Test
+    public void testGetCandidates() {
+
+        List<String> candidates = lastNameIndex.getCandidates("Gates");
+
+        Assert.assertTrue("Missing identical last name", candidates.contains("Gates"));
+        Assert.assertTrue("Missing substituted last name", candidates.contains("Gatez"));
+        Assert.assertTrue("Missing shorter last name", candidates.contains("Gate"));
+        Assert.assertTrue("Missing substituted last name", candidates.contains("Yates"));
+        Assert.assertFalse("Unrelated last name must not be a candidate", candidates.contains("Hansen"));
+
+        candidates = lastNameIndex.getCandidates("Gatess");
+        Assert.assertTrue("Missing longer last name", candidates.contains("Gates"));
+        Assert.assertFalse("Last name two edits away must not be a candidate", candidates.contains("Gate"));
+    }
+
+    @Test
+    public void testGetCandidatesAreSorted() {
+
+        List<String> candidates = lastNameIndex.getCandidates("Gates");
+
+        for (int i = 1; i < candidates.size(); i++)
+            Assert.assertTrue("Candidates are not sorted", candidates.get(i - 1).compareTo(candidates.get(i)) < 0);
+    }
+
+    @Test
+    public void testRemove() {
+
+        lastNameIndex.add("Gates");
+        lastNameIndex.remove("Gates");
+        Assert.assertTrue("Last name removed while still referenced", lastNameIndex.contains("Gates"));
+
+        lastNameIndex.remove("Gates");
+        Assert.assertFalse("Last name must be removed", lastNameIndex.contains("Gates"));
+        Assert.assertFalse("Removed last name is still a candidate", lastNameIndex.getCandidates("Gates").contains("Gates"));
+        Assert.assertTrue("Removal affected other last names", lastNameIndex.getCandidates("Gates").contains("Gatez"));
+        Assert.assertEquals("Index size is not correct", 4, lastNameIndex.size());
+    }
+
+    @Test
+    public void testWithinDistanceOne() {
+
+        String[] names = {"Gates", "Gatez", "Gate", "Gatess", "Yates", "Hansen", "Agtes", "ates", "Gaets", "G", ""};
+        NameDuplicationDetector nameDuplicationDetector = new NameDuplicationDetector();
+
+        for (String source : names) {
+            for (String target : names)
+                Assert.assertEquals("Wrong distance check of " + source + " and " + target,
+                        nameDuplicationDetector.withinDistance(source, target, 1), LastNameIndex.withinDistanceOne(source, target));
+        }
+    }
+}
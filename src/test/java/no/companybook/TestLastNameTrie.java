@@ -0,0 +1,98 @@
+package no.companybook;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+public class TestLastNameTrie {
+
+    private LastNameTrie lastNameTrie;
+
+
+    @Before
+    public void setUp() {
+
+        lastNameTrie = new LastNameTrie();
+        lastNameTrie.add("Gates");
+        lastNameTrie.add("Gatez");
+        lastNameTrie.add("Gatesby");
+        lastNameTrie.add("Yates");
+        lastNameTrie.add("Nadella");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFindWithinDistanceIllegalArgumentException() {
+
+        lastNameTrie.findWithinDistance("Gates", -1);
+    }
+
+    @Test
+    public void testFindWithinDistance() {
+
+        Assert.assertEquals("Distance zero must find the last name only", Arrays.asList("Gates"), lastNameTrie.findWithinDistance("Gates", 0));
+        Assert.assertEquals("Last names within distance one are not correct",
+                Arrays.asList("Gates", "Gatez", "Yates"), lastNameTrie.findWithinDistance("Gates", 1));
+        Assert.assertEquals("Last names within distance two are not correct",
+                Arrays.asList("Gates", "Gatesby", "Gatez", "Yates"), lastNameTrie.findWithinDistance("Gates", 2));
+        Assert.assertEquals("Unknown last name must find nothing", Collections.emptyList(), lastNameTrie.findWithinDistance("Nadela", 0));
+    }
+
+    @Test
+    public void testAddRemove() {
+
+        Assert.assertFalse("Last name must be added once", lastNameTrie.add("Gates"));
+        Assert.assertEquals("Size is not correct", 5, lastNameTrie.size());
+
+        Assert.assertTrue("Last name must be removed", lastNameTrie.remove("Gatesby"));
+        Assert.assertFalse("Removed last name must be gone", lastNameTrie.contains("Gatesby"));
+        Assert.assertTrue("Prefix of a removed last name must stay", lastNameTrie.contains("Gates"));
+        Assert.assertFalse("Prefix must not be removed as a last name", lastNameTrie.remove("Gate"));
+
+        Assert.assertTrue("Last name must be removed", lastNameTrie.remove("Gates"));
+        Assert.assertEquals("Last names within distance two are not correct",
+                Arrays.asList("Gatez", "Yates"), lastNameTrie.findWithinDistance("Gates", 2));
+        Assert.assertEquals("Size is not correct", 3, lastNameTrie.size());
+    }
+
+    @Test
+    public void testFindWithinDistanceAgreesWithLevenshteinDistance() {
+
+        NameDuplicationDetector nameDuplicationDetector = new NameDuplicationDetector();
+        Random random = new Random(42);
+
+        Set<String> lastNames = new TreeSet<>();
+        for (int i = 0; i < 2000; i++)
+            lastNames.add(randomString(random));
+        for (String lastName : lastNames)
+            lastNameTrie.add(lastName);
+        lastNames.addAll(Arrays.asList("Gates", "Gatez", "Gatesby", "Yates", "Nadella"));
+
+        for (int i = 0; i < 200; i++) {
+
+            String lastName = randomString(random);
+            for (int maxDistance = 0; maxDistance <= 3; maxDistance++) {
+
+                List<String> expected = new ArrayList<>();
+                for (String candidate : lastNames) {
+                    if (nameDuplicationDetector.computeLevenshteinDistance(lastName, candidate) <= maxDistance)
+                        expected.add(candidate);
+                }
+
+                Assert.assertEquals("Last names within distance " + maxDistance + " of " + lastName + " are not correct",
+                        expected, lastNameTrie.findWithinDistance(lastName, maxDistance));
+            }
+        }
+    }
+
+    // short strings over few chars, which are close to each other often.
+    private String randomString(Random random) {
+
+        char[] chars = new char[1 + random.nextInt(7)];
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = "abcde\u00e9".charAt(random.nextInt(6));
+
+        return new String(chars);
+    }
+}
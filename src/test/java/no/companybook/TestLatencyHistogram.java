@@ -0,0 +1,68 @@
+package no.companybook;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestLatencyHistogram {
+
+    private LatencyHistogram latencyHistogram;
+
+
+    @Before
+    public void setUp() {
+        latencyHistogram = new LatencyHistogram();
+    }
+
+    @Test
+    public void testBuckets() {
+
+        // every bucket follows the previous one without a gap, up to the largest long.
+        long expectedLowest = 0;
+        for (int i = 0; i <= LatencyHistogram.bucketIndex(Long.MAX_VALUE); i++) {
+
+            Assert.assertEquals("Lowest value of bucket " + i + " falls elsewhere", i, LatencyHistogram.bucketIndex(expectedLowest));
+            long highest = LatencyHistogram.bucketHighestValue(i);
+            Assert.assertEquals("Highest value of bucket " + i + " falls elsewhere", i, LatencyHistogram.bucketIndex(highest));
+            Assert.assertTrue("Bucket " + i + " is too wide", highest - expectedLowest <= Math.max(0, expectedLowest / 16));
+
+            expectedLowest = highest + 1;
+        }
+
+        Assert.assertEquals("Buckets end before the largest long", Long.MIN_VALUE, expectedLowest);
+    }
+
+    @Test
+    public void testPercentiles() {
+
+        for (long value = 1; value <= 10000; value++)
+            latencyHistogram.record(value * 1000);
+
+        LatencyHistogram.Snapshot snapshot = latencyHistogram.snapshot();
+
+        Assert.assertEquals("Wrong count", 10000, snapshot.getCount());
+        Assert.assertEquals("Wrong mean", 5000500, snapshot.getMeanNanos());
+        Assert.assertEquals("Wrong max", 10000000, snapshot.getMaxNanos());
+        assertWithinPrecision("Wrong median", 5000000, snapshot.getP50Nanos());
+        assertWithinPrecision("Wrong 99th percentile", 9900000, snapshot.getP99Nanos());
+        assertWithinPrecision("Wrong 99.9th percentile", 9990000, snapshot.getP999Nanos());
+        Assert.assertEquals("Percentiles exceed the max", 10000000, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testReset() {
+
+        latencyHistogram.record(42);
+        latencyHistogram.record(-1);
+        latencyHistogram.reset();
+
+        LatencyHistogram.Snapshot snapshot = latencyHistogram.snapshot();
+        Assert.assertEquals("Count not reset", 0, snapshot.getCount());
+        Assert.assertEquals("Max not reset", 0, snapshot.getMaxNanos());
+        Assert.assertEquals("Empty histogram has percentiles", 0, snapshot.getP99Nanos());
+    }
+
+    private static void assertWithinPrecision(String message, long expected, long actual) {
+        Assert.assertTrue(message + " : " + actual, actual >= expected && actual <= expected + expected / 16);
+    }
+}
@@ -0,0 +1,181 @@
+package no.companybook;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+public class TestMappedNameIndex {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private NameDuplicationDetector nameDuplicationDetector;
+    private List<String> inputNames;
+    private Path indexFile;
+
+
+    @Before
+    public void setUp() throws IOException {
+
+        nameDuplicationDetector = new NameDuplicationDetector();
+        inputNames = FileUtils.readLines(new File(getClass().getClassLoader().getResource("data/names.input").getFile()), "UTF-8");
+        indexFile = temporaryFolder.getRoot().toPath().resolve("names.index");
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenIOException() throws IOException {
+
+        MappedNameIndex.open(temporaryFolder.newFile("empty.index").toPath());
+    }
+
+    @Test
+    public void testWriteAndOpen() throws IOException {
+
+        NameIndex inMemoryNameIndex = new InMemoryNameIndex();
+        nameDuplicationDetector.checkDuplicates(inputNames.iterator(), collectInto(new ArrayList<Pair<String, String>>()), inMemoryNameIndex);
+        MappedNameIndex.write(inMemoryNameIndex, indexFile);
+
+        try (MappedNameIndex mappedNameIndex = MappedNameIndex.open(indexFile)) {
+
+            Assert.assertEquals("Index size is not correct", inMemoryNameIndex.size(), mappedNameIndex.size());
+
+            for (Iterator<Pair<String, String>> entries = inMemoryNameIndex.entries(); entries.hasNext(); ) {
+                Pair<String, String> entry = entries.next();
+                Assert.assertEquals("Accepted name is not correct", entry.getR(), mappedNameIndex.get(entry.getL()));
+            }
+
+            Assert.assertNull("Unknown name must not be found", mappedNameIndex.get("unknown"));
+            Assert.assertEquals("Last name candidates are not correct",
+                    inMemoryNameIndex.getLastNameCandidates("Gates"), mappedNameIndex.getLastNameCandidates("Gates"));
+            Assert.assertEquals("Last name candidates are not correct",
+                    inMemoryNameIndex.getLastNameCandidates("Nadela"), mappedNameIndex.getLastNameCandidates("Nadela"));
+            Assert.assertEquals("Last names are not correct", toMap(inMemoryNameIndex.lastNames()), toMap(mappedNameIndex.lastNames()));
+
+            int blockedNames = 0;
+            for (Iterator<Pair<String, String>> iterator = inMemoryNameIndex.blockedNames(); iterator.hasNext(); blockedNames++) {
+                Pair<String, String> blockedName = iterator.next();
+                Assert.assertEquals("Blocked name is not correct", blockedName.getR(), mappedNameIndex.getBlockedName(blockedName.getL()));
+            }
+
+            int mappedBlockedNames = 0;
+            for (Iterator<Pair<String, String>> iterator = mappedNameIndex.blockedNames(); iterator.hasNext(); iterator.next())
+                mappedBlockedNames++;
+            Assert.assertEquals("Number of blocked names is not correct", blockedNames, mappedBlockedNames);
+        }
+    }
+
+    @Test
+    public void testGetLastNamesWithinDistance() throws IOException {
+
+        NameIndex inMemoryNameIndex = new InMemoryNameIndex();
+        nameDuplicationDetector.checkDuplicates(inputNames.iterator(), collectInto(new ArrayList<Pair<String, String>>()), inMemoryNameIndex);
+        MappedNameIndex.write(inMemoryNameIndex, indexFile);
+
+        try (MappedNameIndex mappedNameIndex = MappedNameIndex.open(indexFile)) {
+
+            Assert.assertEquals("Last names within distance two are not correct",
+                    inMemoryNameIndex.getLastNamesWithinDistance("Gates", 2), mappedNameIndex.getLastNamesWithinDistance("Gates", 2));
+
+            // case : changes after the trie has been built, of added and of mapped last names.
+            for (NameIndex nameIndex : new NameIndex[]{inMemoryNameIndex, mappedNameIndex}) {
+                nameIndex.addLastName("Gaters");
+                nameIndex.removeLastName("Gates");
+            }
+
+            Assert.assertTrue("Added last name is missing", mappedNameIndex.getLastNamesWithinDistance("Gates", 2).contains("Gaters"));
+            Assert.assertEquals("Last names within distance two are not correct",
+                    inMemoryNameIndex.getLastNamesWithinDistance("Gates", 2), mappedNameIndex.getLastNamesWithinDistance("Gates", 2));
+            Assert.assertEquals("Last names within distance three are not correct",
+                    inMemoryNameIndex.getLastNamesWithinDistance("Nadela", 3), mappedNameIndex.getLastNamesWithinDistance("Nadela", 3));
+        }
+    }
+
+    @Test
+    public void testContainsLastName() throws IOException {
+
+        NameIndex inMemoryNameIndex = new InMemoryNameIndex();
+        nameDuplicationDetector.checkDuplicates(inputNames.iterator(), collectInto(new ArrayList<Pair<String, String>>()), inMemoryNameIndex);
+        MappedNameIndex.write(inMemoryNameIndex, indexFile);
+
+        try (MappedNameIndex mappedNameIndex = MappedNameIndex.open(indexFile)) {
+
+            for (NameIndex nameIndex : new NameIndex[]{inMemoryNameIndex, mappedNameIndex}) {
+                Assert.assertTrue("Mapped last name is missing", nameIndex.containsLastName("Gates"));
+                Assert.assertFalse("Unknown last name is contained", nameIndex.containsLastName("Gaters"));
+                nameIndex.addLastName("Gaters");
+                Assert.assertTrue("Added last name is missing", nameIndex.containsLastName("Gaters"));
+            }
+
+            // case : the last name leaves with the last accepted name carrying it, in both indexes at once.
+            while (inMemoryNameIndex.containsLastName("Gates")) {
+                Assert.assertTrue("Mapped last name left too early", mappedNameIndex.containsLastName("Gates"));
+                inMemoryNameIndex.removeLastName("Gates");
+                mappedNameIndex.removeLastName("Gates");
+            }
+            Assert.assertFalse("Removed last name is contained", mappedNameIndex.containsLastName("Gates"));
+        }
+    }
+
+    @Test
+    public void testIncrementalRun() throws IOException {
+
+        int split = inputNames.size() / 2;
+        List<Pair<String, String>> expected = nameDuplicationDetector.checkDuplicates(inputNames);
+        List<Pair<String, String>> actual = new ArrayList<>();
+
+        // first run over the first half of the names.
+        NameIndex nameIndex = new InMemoryNameIndex();
+        nameDuplicationDetector.checkDuplicates(inputNames.subList(0, split).iterator(), collectInto(actual), nameIndex);
+        MappedNameIndex.write(nameIndex, indexFile);
+
+        // second run over the remaining names only, saved over the file it was opened from.
+        try (MappedNameIndex mappedNameIndex = MappedNameIndex.open(indexFile)) {
+            nameDuplicationDetector.checkDuplicates(inputNames.subList(split, inputNames.size()).iterator(), collectInto(actual), mappedNameIndex);
+            mappedNameIndex.save(indexFile);
+        }
+
+        Assert.assertEquals("Number of duplicates differs", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals("Duplicate differs", expected.get(i).getL(), actual.get(i).getL());
+            Assert.assertEquals("Matched name differs", expected.get(i).getR(), actual.get(i).getR());
+        }
+
+        NameIndex completeNameIndex = new InMemoryNameIndex();
+        nameDuplicationDetector.checkDuplicates(inputNames.iterator(), collectInto(new ArrayList<Pair<String, String>>()), completeNameIndex);
+
+        try (MappedNameIndex mappedNameIndex = MappedNameIndex.open(indexFile)) {
+
+            Assert.assertEquals("Index size is not correct", completeNameIndex.size(), mappedNameIndex.size());
+            Assert.assertEquals("Last names are not correct", toMap(completeNameIndex.lastNames()), toMap(mappedNameIndex.lastNames()));
+        }
+    }
+
+    private DuplicateSink collectInto(final List<Pair<String, String>> duplicates) {
+
+        return new DuplicateSink() {
+            @Override
+            public void accept(Pair<String, String> duplicate) {
+                duplicates.add(duplicate);
+            }
+        };
+    }
+
+    private Map<String, Integer> toMap(Iterator<Pair<String, Integer>> lastNames) {
+
+        Map<String, Integer> map = new HashMap<>();
+        while (lastNames.hasNext()) {
+            Pair<String, Integer> lastName = lastNames.next();
+            Assert.assertNull("Last name is listed twice", map.put(lastName.getL(), lastName.getR()));
+        }
+
+        return map;
+    }
+}
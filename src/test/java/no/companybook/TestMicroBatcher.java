@@ -0,0 +1,110 @@
+package no.companybook;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class TestMicroBatcher {
+
+    private NameDuplicationDetector nameDuplicationDetector;
+    private ConcurrentNameDuplicationDetector concurrentDetector;
+
+
+    @Before
+    public void setUp() {
+
+        nameDuplicationDetector = new NameDuplicationDetector();
+        concurrentDetector = new ConcurrentNameDuplicationDetector(nameDuplicationDetector, new ConcurrentNameIndex(), 1024);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalArgumentException() {
+
+        new MicroBatcher(concurrentDetector, 64, 0);
+    }
+
+    @Test
+    public void testAssignLanes() {
+
+        List<List<String>> requestNames = Arrays.asList(
+                Collections.singletonList("Bill Gates"),
+                Collections.singletonList("Steve Ballmer"),
+                Collections.singletonList("Gates Bill"),
+                Arrays.asList("Satya Nadella", "Bill Henry Gates"),
+                Collections.singletonList("Larry Page"));
+
+        // case : identical, flipped and middle names share a lane, the others go to the emptiest lane.
+        Assert.assertArrayEquals("Lanes are not correct", new int[]{0, 1, 0, 0, 1},
+                MicroBatcher.assignLanes(requestNames, 2, nameDuplicationDetector));
+        Assert.assertArrayEquals("Lanes are not correct", new int[]{0, 1, 0, 0, 2},
+                MicroBatcher.assignLanes(requestNames, 3, nameDuplicationDetector));
+
+        // case : a single lane.
+        Assert.assertArrayEquals("Lanes are not correct", new int[5], MicroBatcher.assignLanes(requestNames, 1, nameDuplicationDetector));
+    }
+
+    @Test
+    public void testCheckInOrder() throws IOException, InterruptedException {
+
+        List<String> inputNames = FileUtils.readLines(new File(getClass().getClassLoader().getResource("data/names.input").getFile()), "UTF-8");
+        List<Pair<String, String>> expected = nameDuplicationDetector.checkDuplicates(inputNames);
+
+        // case : the names of a request are checked in order.
+        try (MicroBatcher batcher = new MicroBatcher(concurrentDetector, 64, 4)) {
+
+            String[] matches = batcher.check(inputNames);
+
+            Iterator<Pair<String, String>> duplicates = expected.iterator();
+            for (int i = 0; i < matches.length; i++) {
+                if (matches[i] != null) {
+                    Pair<String, String> duplicate = duplicates.next();
+                    Assert.assertEquals("Duplicate differs", duplicate.getL(), inputNames.get(i));
+                    Assert.assertEquals("Matched name differs", duplicate.getR(), matches[i]);
+                }
+            }
+            Assert.assertFalse("Duplicates are missing", duplicates.hasNext());
+        }
+    }
+
+    @Test
+    public void testConcurrentRequests() throws Exception {
+
+        // groups which give one accepted name in any order, unlike near duplicates in general.
+        final String[] duplicates = {"Bill Gates", "Gates Bill", "Steve Ballmer", "Ballmer Steve", "Larry Page", "Page Larry"};
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+
+        // case : requests checked in several lanes accept one name of every group of duplicates.
+        try (final MicroBatcher batcher = new MicroBatcher(concurrentDetector, 64, 4)) {
+
+            List<Future<String[]>> answers = new ArrayList<>();
+            for (int i = 0; i < 256; i++) {
+
+                final String name = duplicates[i % duplicates.length];
+                answers.add(executor.submit(new Callable<String[]>() {
+                    @Override
+                    public String[] call() throws InterruptedException {
+                        return batcher.check(Collections.singletonList(name));
+                    }
+                }));
+            }
+
+            int newNames = 0;
+            for (Future<String[]> answer : answers) {
+                if (answer.get()[0] == null)
+                    newNames++;
+            }
+
+            Assert.assertEquals("Exactly one name of every group must be accepted", 3, newNames);
+            Assert.assertEquals("Wrong number of accepted names", 3, concurrentDetector.size());
+
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package no.companybook;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class TestNameBlocks {
+
+    private NameBlocks nameBlocks;
+    private NameTokenizer nameTokenizer;
+    private NameIndex nameIndex;
+
+
+    @Before
+    public void setUp() {
+
+        nameBlocks = new NameBlocks(FirstNameClusters.parse(Arrays.asList(
+                "Albert - Al, Bert",
+                "Alfred - Al, Alf, Fred",
+                "William - Will, Bill, Billy")));
+        nameTokenizer = new NameTokenizer();
+        nameIndex = new InMemoryNameIndex();
+
+        nameBlocks.register("William", "Gates", "William Gates", nameTokenizer, nameIndex);
+        nameBlocks.register("Nadella", "Satya", "Nadella Satya", nameTokenizer, nameIndex);
+        nameBlocks.register("Al", "Hansen", "Al Hansen", nameTokenizer, nameIndex);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullException() {
+
+        new NameBlocks(null);
+    }
+
+    @Test
+    public void testFind() {
+
+        Assert.assertEquals("Variant of first name must be found", "William Gates",
+                nameBlocks.find("bill", Collections.singletonList("GATES"), nameTokenizer, nameIndex, null));
+        Assert.assertEquals("Last name with the same chars must be found", "William Gates",
+                nameBlocks.find("Will", Collections.singletonList("Gaets"), nameTokenizer, nameIndex, null));
+        Assert.assertEquals("Name without cluster in flipped order must be found", "Nadella Satya",
+                nameBlocks.find("Satya", Arrays.asList("Nadela", "Nadella"), nameTokenizer, nameIndex, null));
+        Assert.assertEquals("Name in a cluster of a shared nickname must be found", "Al Hansen",
+                nameBlocks.find("Fred", Collections.singletonList("Hansen"), nameTokenizer, nameIndex, null));
+
+        Assert.assertNull("Unrelated first name must not be found",
+                nameBlocks.find("Walter", Collections.singletonList("Gates"), nameTokenizer, nameIndex, null));
+        Assert.assertNull("Other last name must not be found",
+                nameBlocks.find("Bill", Collections.singletonList("Gatez"), nameTokenizer, nameIndex, null));
+    }
+
+    @Test
+    public void testFirstRegisteredNameWins() {
+
+        nameBlocks.register("Bill", "Gates", "Bill Gates", nameTokenizer, nameIndex);
+
+        Assert.assertEquals("First registered name must be kept", "William Gates",
+                nameBlocks.find("Billy", Collections.singletonList("Gates"), nameTokenizer, nameIndex, null));
+    }
+
+    @Test
+    public void testKeys() {
+
+        Assert.assertTrue("Probed key must be among the registered keys",
+                nameBlocks.getKeys("Bill", "Gates", nameTokenizer).containsAll(
+                        nameBlocks.getProbedKeys("William", Collections.singletonList("Gates"), nameTokenizer)));
+        Assert.assertEquals("Names without cluster have a key per order of the name parts",
+                2, nameBlocks.getKeys("Satya", "Nadella", nameTokenizer).size());
+    }
+}
@@ -1,18 +1,32 @@
 package no.companybook;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Random;
 
 /**
  * Created by mustafa on 30.06.16.
  */
 public class TestNameDuplicationDetector {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private NameDuplicationDetector nameDuplicationDetector;
     private List<String> nullNames;
     private List<String> emptyNames;
@@ -77,6 +91,56 @@ public class TestNameDuplicationDetector {
         Assert.assertEquals("Levenshtein Distance is not correct", 2, distance);
     }
 
+    @Test(expected = NullPointerException.class)
+    public void testWithinDistanceNullException() {
+
+        nameDuplicationDetector.withinDistance(null, "test", 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithinDistanceIllegalArgumentException() {
+
+        nameDuplicationDetector.withinDistance("test", "test", -1);
+    }
+
+    @Test
+    public void testWithinDistance() {
+
+        Assert.assertTrue("withinDistance method has incorrect behavior", nameDuplicationDetector.withinDistance("test", "test", 0));
+        Assert.assertFalse("withinDistance method has incorrect behavior", nameDuplicationDetector.withinDistance("test", "tent", 0));
+        Assert.assertTrue("withinDistance method has incorrect behavior", nameDuplicationDetector.withinDistance("test", "tent", 1));
+        Assert.assertFalse("withinDistance method has incorrect behavior", nameDuplicationDetector.withinDistance("GUMBO", "GAMBOL", 1));
+        Assert.assertTrue("withinDistance method has incorrect behavior", nameDuplicationDetector.withinDistance("GUMBO", "GAMBOL", 2));
+        Assert.assertFalse("withinDistance method has incorrect behavior", nameDuplicationDetector.withinDistance("ab", "ba", 1));
+        Assert.assertFalse("withinDistance method has incorrect behavior", nameDuplicationDetector.withinDistance("Gates", "Gatesss", 1));
+        Assert.assertTrue("withinDistance method has incorrect behavior", nameDuplicationDetector.withinDistance("", "G", 1));
+    }
+
+    @Test
+    public void testWithinDistanceAgreesWithLevenshteinDistance() {
+
+        Random random = new Random(42);
+        for (int n = 0; n < 5000; n++) {
+
+            String source = randomString(random);
+            String target = randomString(random);
+            int distance = nameDuplicationDetector.computeLevenshteinDistance(source, target);
+
+            for (int max = 0; max < 4; max++)
+                Assert.assertEquals("withinDistance disagrees for " + source + " and " + target + " at " + max,
+                        distance <= max, nameDuplicationDetector.withinDistance(source, target, max));
+        }
+    }
+
+    private String randomString(Random random) {
+
+        char[] chars = new char[1 + random.nextInt(8)];
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = (char) ('a' + random.nextInt(3));
+
+        return new String(chars);
+    }
+
     @Test(expected = NullPointerException.class)
     public void testGetLastNameOnlyNullException() {
 
@@ -233,5 +297,443 @@ public class TestNameDuplicationDetector {
 
     }
 
+    @Test
+    public void testCheckDuplicatesByNicknameOfAcceptedName() {
+
+        List<String> inputNames = new ArrayList<>();
+        inputNames.add("William Gates");
+        inputNames.add("Bill Gatez");
+        inputNames.add("John Franka");
+        inputNames.add("John Frank");
+
+        List<Pair<String, String>> result = nameDuplicationDetector.checkDuplicates(inputNames);
+
+        Assert.assertEquals("Nickname must match its canonical name", 2, result.size());
+        Assert.assertEquals("Wrong match for the nickname", "William Gates", result.get(0).getR());
+        Assert.assertEquals("Misspelled last name with the same first name must match", "John Franka", result.get(1).getR());
+    }
+
+    @Test
+    public void testCheckDuplicatesOutsideCommonForm() {
+
+        // case : chars above U+00FF, misspelled last name.
+        List<Pair<String, String>> result = nameDuplicationDetector.checkDuplicates(Arrays.asList("Łukasz Nowak", "Łukasz Nowakk"));
+        Assert.assertEquals("Misspelled non Latin-1 name must match", 1, result.size());
+        Assert.assertEquals("Wrong match for the non Latin-1 name", "Łukasz Nowak", result.get(0).getR());
+
+        result = nameDuplicationDetector.checkDuplicates(Arrays.asList("Jan Dvořák", "Jan Dvořáka"));
+        Assert.assertEquals("Misspelled non Latin-1 last name must match", 1, result.size());
+        Assert.assertEquals("Wrong match for the non Latin-1 last name", "Jan Dvořák", result.get(0).getR());
+
+        // case : Turkish lower casing, where no name is in the common form.
+        Locale defaultLocale = Locale.getDefault();
+        try {
+
+            Locale.setDefault(new Locale("tr"));
+
+            result = nameDuplicationDetector.checkDuplicates(Arrays.asList("Bill Gates", "William Gatez"));
+            Assert.assertEquals("Nickname must match under the tr locale", 1, result.size());
+            Assert.assertEquals("Wrong match for the nickname under the tr locale", "Bill Gates", result.get(0).getR());
+
+            result = nameDuplicationDetector.checkDuplicates(Arrays.asList("Lukasz Nowak", "Lukasz Nowakk"));
+            Assert.assertEquals("Misspelled name must match under the tr locale", 1, result.size());
+
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    public void testCheckDuplicatesCharsAcrossNameParts() {
+
+        // case : the candidate "Bil Gatesl" has the chars of "Bill Gates", but trades one between the parts.
+        List<String> inputNames = Arrays.asList("Bill Gates", "Xyz Gatesl", "Bil Gatesk");
+        Assert.assertTrue("Chars trading places between the name parts must not match",
+                nameDuplicationDetector.checkDuplicates(inputNames).isEmpty());
+
+        // case : an anagram of the whole name is still an identical name.
+        List<Pair<String, String>> result = nameDuplicationDetector.checkDuplicates(Arrays.asList("Bill Gates", "Bil Gatesl"));
+        Assert.assertEquals("Anagram of the whole name must match", 1, result.size());
+        Assert.assertEquals("Wrong match for the anagram", "Bill Gates", result.get(0).getR());
+    }
+
+
+    @Test(expected = NullPointerException.class)
+    public void testCheckDuplicatesStreamingNullException() {
+
+        nameDuplicationDetector.checkDuplicates(combinationNames.iterator(), null);
+    }
+
+    @Test
+    public void testCheckDuplicatesStreaming() throws IOException {
+
+        List<Pair<String, String>> expected = nameDuplicationDetector.checkDuplicates(combinationNames);
+
+        final List<Pair<String, String>> fromReader = new ArrayList<>();
+        StringBuilder input = new StringBuilder();
+        for (String name : combinationNames)
+            input.append(name).append('\n');
+
+        nameDuplicationDetector.checkDuplicates(new StringReader(input.toString()), new DuplicateSink() {
+            @Override
+            public void accept(Pair<String, String> duplicate) {
+                fromReader.add(duplicate);
+            }
+        });
+        assertSameDuplicates(expected, fromReader);
+
+        final List<Pair<String, String>> fromFile = new ArrayList<>();
+        File inputFile = temporaryFolder.newFile("names.input");
+        FileUtils.writeLines(inputFile, "UTF-8", combinationNames);
+
+        nameDuplicationDetector.checkDuplicates(inputFile.toPath(), new DuplicateSink() {
+            @Override
+            public void accept(Pair<String, String> duplicate) {
+                fromFile.add(duplicate);
+            }
+        });
+        assertSameDuplicates(expected, fromFile);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCheckDuplicatesInParallelIllegalArgumentException() {
+
+        nameDuplicationDetector.checkDuplicates(combinationNames, 0);
+    }
+
+    @Test
+    public void testCheckDuplicatesInParallel() throws IOException {
+
+        List<String> inputNames = FileUtils.readLines(new File(getClass().getClassLoader().getResource("data/names.input").getFile()));
+        List<Pair<String, String>> expected = nameDuplicationDetector.checkDuplicates(inputNames);
+
+        for (int parallelism : new int[]{1, 2, 4, 16}) {
+
+            assertSameDuplicates(expected, nameDuplicationDetector.checkDuplicates(inputNames, parallelism));
+            assertSameDuplicates(nameDuplicationDetector.checkDuplicates(combinationNames),
+                    nameDuplicationDetector.checkDuplicates(combinationNames, parallelism));
+        }
+    }
+
+    @Test
+    public void testCheckDuplicatesWithNeighbourhoodCache() throws IOException {
+
+        List<String> inputNames = FileUtils.readLines(new File(getClass().getClassLoader().getResource("data/names.input").getFile()));
+
+        nameDuplicationDetector.setNeighbourhoodCacheSize(0);
+        List<Pair<String, String>> expected = nameDuplicationDetector.checkDuplicates(inputNames);
+        List<Pair<String, String>> expectedCombinations = nameDuplicationDetector.checkDuplicates(combinationNames);
+
+        // a tiny cache evicts all the time, a large one invalidates instead.
+        for (int cacheSize : new int[]{1, 4, 1 << 13}) {
+
+            nameDuplicationDetector.setNeighbourhoodCacheSize(cacheSize);
+            assertSameDuplicates(expected, nameDuplicationDetector.checkDuplicates(inputNames));
+            assertSameDuplicates(expectedCombinations, nameDuplicationDetector.checkDuplicates(combinationNames));
+        }
+    }
+
+    @Test
+    public void testCheckDuplicatesWithPrefilter() throws IOException {
+
+        List<String> inputNames = FileUtils.readLines(new File(getClass().getClassLoader().getResource("data/names.input").getFile()));
+        List<Pair<String, String>> expected = nameDuplicationDetector.checkDuplicates(inputNames);
+        List<Pair<String, String>> expectedCombinations = nameDuplicationDetector.checkDuplicates(combinationNames);
+
+        DetectorMetrics metrics = new DetectorMetrics();
+        nameDuplicationDetector.setMetrics(metrics);
+        nameDuplicationDetector.setPrefilter(true);
+
+        // with and without the neighbourhood cache underneath.
+        for (int cacheSize : new int[]{0, 1 << 13}) {
+
+            nameDuplicationDetector.setNeighbourhoodCacheSize(cacheSize);
+            assertSameDuplicates(expected, nameDuplicationDetector.checkDuplicates(inputNames));
+            assertSameDuplicates(expectedCombinations, nameDuplicationDetector.checkDuplicates(combinationNames));
+        }
+
+        Assert.assertTrue("Prefilter rejects no name", metrics.getSnapshot().getPrefilterRejections() > 0);
+    }
+
+    @Test
+    public void testCheckDuplicatesWithDistanceThreshold() {
+
+        List<String> inputNames = Arrays.asList("Andrew Rasmussen", "Andy Rasmusan", "Bill Gates", "Billy Getos");
+
+        Assert.assertTrue("Two edits must not match by default", nameDuplicationDetector.checkDuplicates(inputNames).isEmpty());
+
+        // case : two edits are allowed from eight chars on, which the short last name does not reach.
+        nameDuplicationDetector.setDistanceThreshold(DistanceThreshold.byLength(1, 8));
+        List<Pair<String, String>> result = nameDuplicationDetector.checkDuplicates(inputNames);
+
+        Assert.assertEquals("Number of duplicates is not correct", 1, result.size());
+        Assert.assertEquals("Duplicate is not correct", "Andy Rasmusan", result.get(0).getL());
+        Assert.assertEquals("Matched name is not correct", "Andrew Rasmussen", result.get(0).getR());
+
+        nameDuplicationDetector.setDistanceThreshold(DistanceThreshold.fixed(2));
+        Assert.assertEquals("Number of duplicates is not correct", 2, nameDuplicationDetector.checkDuplicates(inputNames).size());
+    }
+
+    @Test
+    public void testCheckDuplicatesWithPhoneticEncoding() throws IOException {
+
+        List<String> inputNames = Arrays.asList("Lars Christensen", "Lars Kristensen", "Lars Christiansan", "Lars Christensem");
+        nameDuplicationDetector.setDistanceThreshold(DistanceThreshold.fixed(2));
+        nameDuplicationDetector.setPhoneticEncoding(PhoneticEncoding.COLOGNE);
+
+        // case : two edits of the same sound match, two edits of another sound do not, one edit always does.
+        List<Pair<String, String>> result = nameDuplicationDetector.checkDuplicates(inputNames);
+        Assert.assertEquals("Number of duplicates is not correct", 2, result.size());
+        Assert.assertEquals("Duplicate is not correct", "Lars Kristensen", result.get(0).getL());
+        Assert.assertEquals("Duplicate is not correct", "Lars Christensem", result.get(1).getL());
+
+        // case : at distance one the result is the one of the edit distance lookup.
+        List<String> names = FileUtils.readLines(new File(getClass().getClassLoader().getResource("data/names.input").getFile()));
+        nameDuplicationDetector.setDistanceThreshold(DistanceThreshold.DISTANCE_ONE);
+        List<Pair<String, String>> expected = nameDuplicationDetector.checkDuplicates(names);
+        for (PhoneticEncoding encoding : PhoneticEncoding.values()) {
+            nameDuplicationDetector.setPhoneticEncoding(encoding);
+            assertSameDuplicates(expected, nameDuplicationDetector.checkDuplicates(names));
+        }
+    }
+
+    @Test
+    public void testCheckDuplicatesWithDistanceThresholdInParallel() throws IOException {
+
+        List<String> inputNames = FileUtils.readLines(new File(getClass().getClassLoader().getResource("data/names.input").getFile()));
+        nameDuplicationDetector.setDistanceThreshold(DistanceThreshold.byLength(1, 6));
+        List<Pair<String, String>> expected = nameDuplicationDetector.checkDuplicates(inputNames);
+
+        for (int parallelism : new int[]{1, 4}) {
+
+            assertSameDuplicates(expected, nameDuplicationDetector.checkDuplicates(inputNames, parallelism));
+            assertSameDuplicates(expected, checkDuplicatesPipelined(inputNames, parallelism));
+        }
+    }
+
+    @Test
+    public void testCheckDuplicatesPipelinedOutsideCommonForm() {
+
+        List<String> inputNames = Arrays.asList("Łukasz Nowak", "Jan Dvořák", "Łukasz Nowakk", "Jan  Dvořáka", "Jan Dvořáka",
+                "Nowak Łukasz", "Bill Gates", "William Gatez");
+
+        // case : names above U+00FF are registered in the blocks by the pipelined check and the partitioner too.
+        Assert.assertFalse("Blocking keys are missing", nameDuplicationDetector.getBlockingKeys("Łukasz Nowak").isEmpty());
+        Assert.assertTrue("Name with a double space must not be blocked", nameDuplicationDetector.getBlockingKeys("Jan  Dvořáka").isEmpty());
+        assertSameOutsideCommonForm(inputNames, 5);
+
+        // case : under the tr locale no name is in the common form.
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            Locale.setDefault(new Locale("tr"));
+            assertSameOutsideCommonForm(inputNames, 5);
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    private void assertSameOutsideCommonForm(List<String> inputNames, int duplicates) {
+
+        List<Pair<String, String>> expected = nameDuplicationDetector.checkDuplicates(inputNames);
+        Assert.assertEquals("Number of duplicates is not correct", duplicates, expected.size());
+
+        for (int parallelism : new int[]{1, 4}) {
+
+            assertSameDuplicates(expected, nameDuplicationDetector.checkDuplicates(inputNames, parallelism));
+            assertSameDuplicates(expected, checkDuplicatesPipelined(inputNames, parallelism));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCheckDuplicatesPipelinedIllegalArgumentException() {
+
+        nameDuplicationDetector.checkDuplicatesPipelined(combinationNames.iterator(), new DuplicateSink() {
+            @Override
+            public void accept(Pair<String, String> duplicate) {
+            }
+        }, 0);
+    }
+
+    @Test
+    public void testCheckDuplicatesPipelined() throws IOException {
+
+        // the names twice over, which takes many more chunks than the ring holds.
+        List<String> inputNames = FileUtils.readLines(new File(getClass().getClassLoader().getResource("data/names.input").getFile()));
+        inputNames.addAll(new ArrayList<>(inputNames));
+        List<Pair<String, String>> expected = nameDuplicationDetector.checkDuplicates(inputNames);
+
+        for (int workers : new int[]{1, 2, 4}) {
+
+            assertSameDuplicates(expected, checkDuplicatesPipelined(inputNames, workers));
+            assertSameDuplicates(nameDuplicationDetector.checkDuplicates(combinationNames),
+                    checkDuplicatesPipelined(combinationNames, workers));
+        }
+    }
+
+    @Test
+    public void testCheckDuplicatesPipelinedFailure() {
+
+        // case : a single name missing the index fails the check, after the duplicates before it.
+        List<String> inputNames = new ArrayList<>(combinationNames);
+        inputNames.add("Gates");
+
+        final List<Pair<String, String>> duplicates = new ArrayList<>();
+        try {
+            nameDuplicationDetector.checkDuplicatesPipelined(inputNames.iterator(), new DuplicateSink() {
+                @Override
+                public void accept(Pair<String, String> duplicate) {
+                    duplicates.add(duplicate);
+                }
+            }, 2);
+            Assert.fail("The single name should fail the check");
+
+        } catch (ArrayIndexOutOfBoundsException e) {
+            assertSameDuplicates(nameDuplicationDetector.checkDuplicates(combinationNames), duplicates);
+        }
+    }
+
+    @Test
+    public void testCheckDuplicatesPipelinedInputFailure() {
+
+        // case : the input fails within the first chunk, the names read before are checked like sequentially.
+        final List<Pair<String, String>> sequential = new ArrayList<>();
+        final List<Pair<String, String>> pipelined = new ArrayList<>();
+
+        try {
+            nameDuplicationDetector.checkDuplicates(failingIterator(combinationNames), new DuplicateSink() {
+                @Override
+                public void accept(Pair<String, String> duplicate) {
+                    sequential.add(duplicate);
+                }
+            });
+            Assert.fail("The input failure should fail the check");
+        } catch (IllegalStateException e) {
+            Assert.assertFalse("There must be duplicates before the failure", sequential.isEmpty());
+        }
+
+        try {
+            nameDuplicationDetector.checkDuplicatesPipelined(failingIterator(combinationNames), new DuplicateSink() {
+                @Override
+                public void accept(Pair<String, String> duplicate) {
+                    pipelined.add(duplicate);
+                }
+            }, 2);
+            Assert.fail("The input failure should fail the check");
+        } catch (IllegalStateException e) {
+            assertSameDuplicates(sequential, pipelined);
+        }
+    }
+
+    // the names, then a failure instead of the end of the input.
+    private static Iterator<String> failingIterator(final List<String> names) {
+
+        return new Iterator<String>() {
+
+            private int position;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public String next() {
+
+                if (position == names.size())
+                    throw new IllegalStateException("Input failed");
+                return names.get(position++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCheckDuplicateClustersIllegalArgumentException() {
+
+        nameDuplicationDetector.checkDuplicateClusters(emptyNames);
+    }
+
+    @Test
+    public void testCheckDuplicateClusters() {
+
+        List<String> inputNames = new ArrayList<>(combinationNames);
+        inputNames.add("Satya Nadella");
+        inputNames.add("Nadella Satya");
+
+        DuplicateClusters clusters = nameDuplicationDetector.checkDuplicateClusters(inputNames);
+
+        Assert.assertEquals("Size is not correct", inputNames.size(), clusters.size());
+        Assert.assertEquals("Number of duplicates is not correct", 5, clusters.getDuplicateCount());
+        Assert.assertEquals("Number of clusters is not correct", 2, clusters.getClusterCount());
+
+        // case : the accepted name comes first, followed by all its duplicates, and 'Walter Gates' stays single.
+        Assert.assertArrayEquals("Cluster is not correct", new int[]{0, 1, 2, 3, 5}, clusters.getMembers(0));
+        Assert.assertArrayEquals("Cluster is not correct", new int[]{6, 7}, clusters.getMembers(1));
+        Assert.assertEquals("Single name is not correct", -1, clusters.getCluster(4));
+        Assert.assertTrue("Duplicates must be in the same cluster", clusters.inSameCluster(1, 5));
+        Assert.assertFalse("Clusters must be apart", clusters.inSameCluster(0, 6));
+
+        Iterator<int[]> iterator = clusters.clusters();
+        Assert.assertArrayEquals("Cluster is not correct", clusters.getMembers(0), iterator.next());
+        Assert.assertArrayEquals("Cluster is not correct", clusters.getMembers(1), iterator.next());
+        Assert.assertFalse("There must be no more clusters", iterator.hasNext());
+    }
+
+    @Test
+    public void testCheckDuplicateClustersAgreesWithPairs() throws IOException {
+
+        List<String> inputNames = FileUtils.readLines(new File(getClass().getClassLoader().getResource("data/names.input").getFile()));
+        List<Pair<String, String>> expected = nameDuplicationDetector.checkDuplicates(inputNames);
+        DuplicateClusters clusters = nameDuplicationDetector.checkDuplicateClusters(inputNames);
+
+        Assert.assertEquals("Number of duplicates differs", expected.size(), clusters.getDuplicateCount());
+
+        // case : every duplicate, in input order, is in the cluster of the first occurrence of its match.
+        List<Integer> duplicatePositions = new ArrayList<>();
+        for (Iterator<int[]> iterator = clusters.clusters(); iterator.hasNext(); ) {
+            int[] members = iterator.next();
+            for (int i = 1; i < members.length; i++)
+                duplicatePositions.add(members[i]);
+        }
+        Collections.sort(duplicatePositions);
+
+        Assert.assertEquals("Number of duplicates differs", expected.size(), duplicatePositions.size());
+        for (int i = 0; i < expected.size(); i++) {
+
+            int position = duplicatePositions.get(i);
+            Assert.assertEquals("Duplicate differs", expected.get(i).getL(), inputNames.get(position));
+            Assert.assertTrue("Matched name differs", clusters.inSameCluster(position, inputNames.indexOf(expected.get(i).getR())));
+        }
+    }
+
+    private List<Pair<String, String>> checkDuplicatesPipelined(List<String> inputNames, int workers) {
+
+        final List<Pair<String, String>> duplicates = new ArrayList<>();
+        nameDuplicationDetector.checkDuplicatesPipelined(inputNames.iterator(), new DuplicateSink() {
+            @Override
+            public void accept(Pair<String, String> duplicate) {
+                duplicates.add(duplicate);
+            }
+        }, workers);
+
+        return duplicates;
+    }
+
+    private void assertSameDuplicates(List<Pair<String, String>> expected, List<Pair<String, String>> actual) {
+
+        Assert.assertEquals("Number of duplicates differs", expected.size(), actual.size());
+
+        Iterator<Pair<String, String>> actualIterator = actual.iterator();
+        for (Pair<String, String> expectedPair : expected) {
+
+            Pair<String, String> actualPair = actualIterator.next();
+            Assert.assertEquals("Duplicate differs", expectedPair.getL(), actualPair.getL());
+            Assert.assertEquals("Matched name differs", expectedPair.getR(), actualPair.getR());
+        }
+    }
 
 }
@@ -0,0 +1,155 @@
+package no.companybook;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class TestNameDuplicationService {
+
+    private NameDuplicationDetector nameDuplicationDetector;
+    private NameDuplicationService service;
+    private List<String> inputNames;
+
+
+    @Before
+    public void setUp() throws IOException {
+
+        nameDuplicationDetector = new NameDuplicationDetector();
+        service = new NameDuplicationService(new ConcurrentNameDuplicationDetector(nameDuplicationDetector, new ConcurrentNameIndex(), 1024),
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 64);
+        inputNames = FileUtils.readLines(new File(getClass().getClassLoader().getResource("data/names.input").getFile()), "UTF-8");
+    }
+
+    @After
+    public void tearDown() {
+        service.close();
+    }
+
+    @Test
+    public void testCheckBatch() throws IOException {
+
+        StringBuilder body = new StringBuilder();
+        for (String name : inputNames)
+            body.append(name).append('\n');
+
+        StringBuilder expected = new StringBuilder();
+        for (Pair<String, String> duplicate : nameDuplicationDetector.checkDuplicates(inputNames))
+            expected.append(duplicate.getL()).append('\t').append(duplicate.getR()).append('\n');
+
+        Assert.assertEquals("Duplicates differ from the batch check", expected.toString(), request("POST", "/check", body.toString()));
+    }
+
+    @Test
+    public void testConcurrentSingleNames() throws Exception {
+
+        final String[] nearDuplicates = {"Bill Gates", "William Gates", "Will Gates", "Billy Gates", "Bill Gatez", "Liam Gates"};
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+
+        try {
+
+            List<Future<String>> answers = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+
+                final String name = nearDuplicates[i % nearDuplicates.length];
+                answers.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws IOException {
+                        return request("POST", "/check", name + "\n");
+                    }
+                }));
+            }
+
+            int newNames = 0;
+            for (Future<String> answer : answers) {
+                if (answer.get().isEmpty())
+                    newNames++;
+            }
+
+            Assert.assertEquals("Exactly one of the near duplicates must be accepted", 1, newNames);
+            Assert.assertEquals("Wrong size reported", "1\n", request("GET", "/size", null));
+
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCheckRequiresPost() throws IOException {
+
+        HttpURLConnection connection = (HttpURLConnection) url("/check").openConnection();
+        Assert.assertEquals("GET must not be accepted", HttpURLConnection.HTTP_BAD_METHOD, connection.getResponseCode());
+    }
+
+    @Test
+    public void testCheckSingleTokenName() throws IOException {
+
+        // case : a name of a single token is a bad request, and fails the names of its request with it.
+        Assert.assertEquals("Single token name must not be accepted", HttpURLConnection.HTTP_BAD_REQUEST,
+                connect("POST", "/check", "Gates\n").getResponseCode());
+        Assert.assertEquals("Batch with a single token name must not be accepted", HttpURLConnection.HTTP_BAD_REQUEST,
+                connect("POST", "/check", "Bill Gates\n  Gates \n").getResponseCode());
+        Assert.assertEquals("Names of a bad request must not be accepted", "0\n", request("GET", "/size", null));
+
+        // case : the service goes on checking.
+        Assert.assertEquals("Name must be new", "", request("POST", "/check", "Bill Gates\n"));
+        Assert.assertEquals("Duplicate is not correct", "Gates Bill\tBill Gates\n", request("POST", "/check", "Gates Bill\n"));
+    }
+
+    @Test
+    public void testLoadGenerator() throws Exception {
+
+        long[] latencies = new NameLoadGenerator(url("/check"), inputNames).run(4, 200, 3);
+
+        Assert.assertEquals("Wrong number of latencies", 200, latencies.length);
+        Assert.assertTrue("Latencies must be positive", latencies[0] > 0);
+        Assert.assertTrue("Latencies must be sorted", latencies[0] <= NameLoadGenerator.percentile(latencies, 0.99));
+        Assert.assertTrue("Names must have been accepted", service.getDetector().size() > 0);
+    }
+
+    private URL url(String path) throws IOException {
+        return new URL("http", service.getAddress().getHostString(), service.getAddress().getPort(), path);
+    }
+
+    private String request(String method, String path, String body) throws IOException {
+
+        HttpURLConnection connection = connect(method, path, body);
+
+        Assert.assertEquals("Request failed", HttpURLConnection.HTTP_OK, connection.getResponseCode());
+        try (InputStream input = connection.getInputStream()) {
+            return IOUtils.toString(input, StandardCharsets.UTF_8);
+        }
+    }
+
+    // an exchange the service never answers fails the test instead of hanging it.
+    private HttpURLConnection connect(String method, String path, String body) throws IOException {
+
+        HttpURLConnection connection = (HttpURLConnection) url(path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setReadTimeout(10000);
+
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        return connection;
+    }
+}
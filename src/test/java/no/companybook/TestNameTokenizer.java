@@ -0,0 +1,92 @@
+package no.companybook;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+public class TestNameTokenizer {
+
+    private NameTokenizer nameTokenizer;
+    private NameDuplicationDetector nameDuplicationDetector;
+
+
+    @Before
+    public void setUp() {
+
+        nameTokenizer = new NameTokenizer();
+        nameDuplicationDetector = new NameDuplicationDetector();
+    }
+
+    @Test
+    public void testTokenize() {
+
+        Assert.assertTrue("Name in common form is rejected", nameTokenizer.tokenize("Bill Henry Gates"));
+        Assert.assertEquals("Wrong token count", 3, nameTokenizer.getTokenCount());
+        Assert.assertEquals("Wrong first name", "Bill", nameTokenizer.getFirstName());
+        Assert.assertEquals("Wrong last name", "Gates", nameTokenizer.getLastName());
+        Assert.assertEquals("Wrong first last name key", sort("Bill Gates"), nameTokenizer.getFirstLastNameKey().toString());
+        Assert.assertEquals("Wrong name key", sort("Bill Henry Gates"), nameTokenizer.getNameKey().toString());
+
+        Assert.assertTrue("Single token is rejected", nameTokenizer.tokenize("Gates"));
+        Assert.assertEquals("Wrong last name of single token", "Gates", nameTokenizer.getLastName());
+        Assert.assertEquals("Wrong first last name key of single token", "aegst", nameTokenizer.getFirstLastNameKey().toString());
+    }
+
+    @Test
+    public void testTokenizeRejectsIrregularNames() {
+
+        Assert.assertFalse("Empty name is accepted", nameTokenizer.tokenize(""));
+        Assert.assertFalse("Leading space is accepted", nameTokenizer.tokenize(" Bill Gates"));
+        Assert.assertFalse("Trailing space is accepted", nameTokenizer.tokenize("Bill Gates "));
+        Assert.assertFalse("Double space is accepted", nameTokenizer.tokenize("Bill  Gates"));
+        Assert.assertFalse("Tab is accepted", nameTokenizer.tokenize("Bill\tGates"));
+        Assert.assertFalse("Char above U+00FF is accepted", nameTokenizer.tokenize("Bill İzmir"));
+        Assert.assertFalse("Rejected name is still tokenized", nameTokenizer.isTokenized("Bill\tGates"));
+    }
+
+    @Test
+    public void testSort() {
+
+        Assert.assertEquals("Wrong sorted key", sort("Øystein Ås"), nameTokenizer.sort("Øystein Ås").toString());
+        Assert.assertNull("Char above U+00FF is sorted", nameTokenizer.sort("İzmir"));
+    }
+
+    @Test
+    public void testKeysMatchStringMethods() throws IOException {
+
+        List<String> inputNames = FileUtils.readLines(new File(getClass().getClassLoader().getResource("data/names.input").getFile()), "UTF-8");
+
+        for (String name : inputNames) {
+
+            if (!nameTokenizer.tokenize(name))
+                continue;
+
+            String firstLastNameOnly = nameDuplicationDetector.eliminateMiddleNames(name);
+
+            Assert.assertEquals("Wrong name key for " + name, sort(name), nameTokenizer.getNameKey().toString());
+            Assert.assertEquals("Wrong first last name key for " + name, sort(firstLastNameOnly), nameTokenizer.getFirstLastNameKey().toString());
+            Assert.assertEquals("Wrong last name for " + name, nameDuplicationDetector.getLastNameOnly(name), nameTokenizer.getLastName());
+
+            if (nameTokenizer.getTokenCount() > 1) {
+                Assert.assertEquals("Flipped name has another key for " + name,
+                        sort(nameDuplicationDetector.flipOrderOfNameParts(firstLastNameOnly)), nameTokenizer.getFirstLastNameKey().toString());
+                Assert.assertEquals("Wrong first name for " + name, firstLastNameOnly.split("\\s")[0], nameTokenizer.getFirstName());
+            }
+        }
+    }
+
+    // the sorted key as computed before the tokenizer.
+    private static String sort(String name) {
+
+        char[] chars = name.toLowerCase().toCharArray();
+        Arrays.sort(chars);
+
+        return new String(chars);
+    }
+}
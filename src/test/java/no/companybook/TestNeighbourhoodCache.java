@@ -0,0 +1,134 @@
+package no.companybook;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TestNeighbourhoodCache {
+
+    private NeighbourhoodCache neighbourhoodCache;
+
+
+    @Before
+    public void setUp() {
+        neighbourhoodCache = new NeighbourhoodCache(100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaximumSizeIllegalArgumentException() {
+
+        new NeighbourhoodCache(0);
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+
+        List<String> neighbours = Arrays.asList("Gates", "Gatz");
+
+        Assert.assertNull("Empty cache returns a neighbourhood", neighbourhoodCache.get("Gates"));
+        neighbourhoodCache.put("Gates", neighbours);
+        Assert.assertEquals("Wrong cached neighbourhood", neighbours, neighbourhoodCache.get("Gates"));
+
+        Assert.assertEquals("Wrong number of hits", 1, neighbourhoodCache.getHits());
+        Assert.assertEquals("Wrong number of misses", 1, neighbourhoodCache.getMisses());
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+
+        for (int i = 0; i < 1000; i++) {
+
+            String lastName = "Name" + i;
+            if (neighbourhoodCache.get(lastName) == null)
+                neighbourhoodCache.put(lastName, Collections.<String>emptyList());
+            Assert.assertTrue("Cache exceeds its maximum size", neighbourhoodCache.size() <= 100);
+        }
+
+        Assert.assertEquals("Wrong number of evictions", 900, neighbourhoodCache.getEvictions());
+    }
+
+    @Test
+    public void testFrequentNamesSurviveOneOffNames() {
+
+        // the frequent names are accessed many times before a scan of names seen once each.
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 50; i++) {
+
+                String lastName = "Frequent" + i;
+                if (neighbourhoodCache.get(lastName) == null)
+                    neighbourhoodCache.put(lastName, Collections.<String>emptyList());
+            }
+        }
+
+        for (int i = 0; i < 10000; i++) {
+
+            String lastName = "Once" + i;
+            if (neighbourhoodCache.get(lastName) == null)
+                neighbourhoodCache.put(lastName, Collections.<String>emptyList());
+        }
+
+        int cached = 0;
+        for (int i = 0; i < 50; i++) {
+            if (neighbourhoodCache.get("Frequent" + i) != null)
+                cached++;
+        }
+
+        Assert.assertTrue("Scan flushed the frequent names, " + cached + " left", cached >= 45);
+    }
+
+    @Test
+    public void testInvalidateNeighbours() {
+
+        neighbourhoodCache.put("Gates", Collections.singletonList("Gates"));
+        neighbourhoodCache.put("Gatez", Collections.<String>emptyList());
+        neighbourhoodCache.put("Hansen", Collections.singletonList("Hansen"));
+
+        neighbourhoodCache.invalidateNeighbours("Gate");
+
+        Assert.assertNull("Neighbourhood of a longer name not invalidated", neighbourhoodCache.get("Gates"));
+        Assert.assertNull("Neighbourhood of a longer name not invalidated", neighbourhoodCache.get("Gatez"));
+        Assert.assertNotNull("Unrelated neighbourhood invalidated", neighbourhoodCache.get("Hansen"));
+        Assert.assertEquals("Wrong number of invalidations", 2, neighbourhoodCache.getInvalidations());
+    }
+
+    @Test
+    public void testCachingNameIndex() {
+
+        CachingNameIndex nameIndex = new CachingNameIndex(new InMemoryNameIndex(), 100);
+        nameIndex.addLastName("Gates");
+        nameIndex.addLastName("Hansen");
+
+        Assert.assertEquals("Wrong neighbourhood", Collections.singletonList("Gates"), nameIndex.getLastNameCandidates("Gatez"));
+
+        // a new last name shows up in the cached neighbourhoods it belongs to, a known one changes nothing.
+        nameIndex.addLastName("Gatz");
+        Assert.assertEquals("Stale neighbourhood after adding", Arrays.asList("Gates", "Gatz"), nameIndex.getLastNameCandidates("Gatez"));
+
+        long invalidations = nameIndex.getNeighbourhoodCache().getInvalidations();
+        nameIndex.addLastName("Gates");
+        Assert.assertEquals("Known last name invalidated the cache", invalidations, nameIndex.getNeighbourhoodCache().getInvalidations());
+
+        nameIndex.removeLastName("Gates");
+        Assert.assertEquals("Last name left while still referenced", Arrays.asList("Gates", "Gatz"), nameIndex.getLastNameCandidates("Gatez"));
+        nameIndex.removeLastName("Gates");
+        Assert.assertEquals("Stale neighbourhood after removing", Collections.singletonList("Gatz"), nameIndex.getLastNameCandidates("Gatez"));
+    }
+
+    @Test
+    public void testAddingLastNamesCountsNoAccess() {
+
+        // case : the cache is only accessed by lookups, the last names added and removed are not counted.
+        CachingNameIndex nameIndex = new CachingNameIndex(new InMemoryNameIndex(), 100);
+        for (int i = 0; i < 2000; i++)
+            nameIndex.addLastName("Name" + i);
+        nameIndex.removeLastName("Name0");
+
+        Assert.assertEquals("Wrong number of hits", 0, nameIndex.getNeighbourhoodCache().getHits());
+        Assert.assertEquals("Wrong number of misses", 0, nameIndex.getNeighbourhoodCache().getMisses());
+        Assert.assertEquals("Cache filled without lookups", 0, nameIndex.getNeighbourhoodCache().size());
+    }
+}
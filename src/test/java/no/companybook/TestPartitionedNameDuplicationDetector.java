@@ -0,0 +1,222 @@
+package no.companybook;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+public class TestPartitionedNameDuplicationDetector {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private NameDuplicationDetector nameDuplicationDetector;
+    private PartitionedNameDuplicationDetector partitionedDetector;
+    private List<String> inputNames;
+    private Path inputFile;
+
+
+    @Before
+    public void setUp() throws IOException {
+
+        nameDuplicationDetector = new NameDuplicationDetector();
+        partitionedDetector = new PartitionedNameDuplicationDetector(nameDuplicationDetector);
+        inputNames = FileUtils.readLines(new File(getClass().getClassLoader().getResource("data/names.input").getFile()), "UTF-8");
+        inputFile = new File(getClass().getClassLoader().getResource("data/names.input").getFile()).toPath();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSplitIllegalArgumentException() throws IOException {
+
+        partitionedDetector.split(inputFile, temporaryFolder.getRoot().toPath(), 0);
+    }
+
+    @Test
+    public void testPartitionKey() {
+
+        // case : identical, flipped and misspelled names share the key of the first name.
+        String key = nameDuplicationDetector.getPartitionKey("Bill Gates");
+
+        Assert.assertEquals("Flipped name key is not correct", key, nameDuplicationDetector.getPartitionKey("Gates Bill"));
+        Assert.assertEquals("Misspelled name key is not correct", key, nameDuplicationDetector.getPartitionKey("Billy Gatez"));
+        Assert.assertEquals("Middle name key is not correct", key, nameDuplicationDetector.getPartitionKey("William Henry Gates"));
+        Assert.assertEquals("Variant key is not correct", nameDuplicationDetector.getPartitionKey("Steve Ballmer"),
+                nameDuplicationDetector.getPartitionKey("Steven Balmer"));
+        Assert.assertNotEquals("Other first name key is not correct", key, nameDuplicationDetector.getPartitionKey("Steve Gates"));
+
+        // case : names without a known first name are keyed phonetically.
+        Assert.assertEquals("Unknown first name key is not correct", nameDuplicationDetector.getPartitionKey("Xqz Rasmussen"),
+                nameDuplicationDetector.getPartitionKey("Xqz Rasmusen"));
+    }
+
+    @Test
+    public void testSinglePartition() throws IOException {
+
+        // case : one partition gives exactly the sequential result.
+        assertSameDuplicates(nameDuplicationDetector.checkDuplicates(inputNames), checkDuplicatesPartitioned(1));
+    }
+
+    @Test
+    public void testPartitions() throws IOException {
+
+        List<Pair<String, String>> expected = nameDuplicationDetector.checkDuplicates(inputNames);
+
+        // case : any number of partitions gives exactly the sequential result.
+        for (int partitions : new int[]{2, 4, 8})
+            assertSameDuplicates(expected, checkDuplicatesPartitioned(partitions));
+    }
+
+    @Test
+    public void testApproximatePartitions() throws IOException {
+
+        partitionedDetector.setApproximate(true);
+        Assert.assertTrue("Approximate split is not set", partitionedDetector.isApproximate());
+
+        Map<String, String> expected = new LinkedHashMap<>();
+        for (Pair<String, String> duplicate : nameDuplicationDetector.checkDuplicates(inputNames))
+            expected.put(duplicate.getL(), duplicate.getR());
+
+        List<Pair<String, String>> duplicates = checkDuplicatesPartitioned(4);
+
+        // case : the duplicates come in input order, and are names found by the sequential run.
+        int lastPosition = -1;
+        Map<String, String> actual = new LinkedHashMap<>();
+        for (Pair<String, String> duplicate : duplicates) {
+
+            int position = inputNames.subList(lastPosition + 1, inputNames.size()).indexOf(duplicate.getL());
+            Assert.assertTrue("Duplicates are not in input order", position >= 0);
+            Assert.assertTrue("Duplicate is not correct", expected.containsKey(duplicate.getL()));
+            lastPosition += position + 1;
+            actual.put(duplicate.getL(), duplicate.getR());
+        }
+
+        // case : lost are a last name which is another first name than its misspelling, a misspelled first name
+        // missing from the first names file, and names without a known first name whose misspelling changes
+        // the phonetic key. A name with a middle name then matches the other duplicate in its partition.
+        Map<String, String> lost = new LinkedHashMap<>(expected);
+        lost.keySet().removeAll(actual.keySet());
+        Assert.assertEquals("Lost duplicates are not correct", Arrays.asList("John Frank", "Michael Dunn", "Thorsten Hübschen",
+                "Horacio Gutierrez", "Shawn Sanford", "Tuula Rytilä"), new ArrayList<>(lost.keySet()));
+
+        Map<String, String> changed = new LinkedHashMap<>();
+        for (Map.Entry<String, String> duplicate : actual.entrySet()) {
+            if (!duplicate.getValue().equals(expected.get(duplicate.getKey())))
+                changed.put(duplicate.getKey(), duplicate.getValue());
+        }
+        Assert.assertEquals("Changed duplicates are not correct", Collections.singletonMap("John E Frank", "John Frank"), changed);
+        Assert.assertEquals("Sequential duplicate is not correct", "John Franka", expected.get("John E Frank"));
+    }
+
+    @Test
+    public void testRun() throws IOException, InterruptedException {
+
+        // case : the worker processes give the sequential result.
+        final List<Pair<String, String>> duplicates = new ArrayList<>();
+        partitionedDetector.run(inputFile, temporaryFolder.newFolder("run").toPath(), 3, 2, new DuplicateSink() {
+            @Override
+            public void accept(Pair<String, String> duplicate) {
+                duplicates.add(duplicate);
+            }
+        });
+
+        assertSameDuplicates(nameDuplicationDetector.checkDuplicates(inputNames), duplicates);
+    }
+
+    @Test
+    public void testRunWithDetectorSettings() throws IOException, InterruptedException {
+
+        nameDuplicationDetector.setDistanceThreshold(DistanceThreshold.byLength(1, 6));
+        List<Pair<String, String>> expected = nameDuplicationDetector.checkDuplicates(inputNames);
+        Assert.assertNotEquals("The threshold must change the result", new NameDuplicationDetector().checkDuplicates(inputNames).size(),
+                expected.size());
+
+        // case : the worker processes check with the settings of the detector.
+        final List<Pair<String, String>> duplicates = new ArrayList<>();
+        partitionedDetector.run(inputFile, temporaryFolder.newFolder("run").toPath(), 3, 2, new DuplicateSink() {
+            @Override
+            public void accept(Pair<String, String> duplicate) {
+                duplicates.add(duplicate);
+            }
+        });
+
+        assertSameDuplicates(expected, duplicates);
+    }
+
+    @Test
+    public void testDetectorOptions() {
+
+        nameDuplicationDetector.setDistanceThreshold(DistanceThreshold.byLength(1, 8));
+        nameDuplicationDetector.setNeighbourhoodCacheSize(0);
+        nameDuplicationDetector.setPhoneticEncoding(PhoneticEncoding.COLOGNE);
+        nameDuplicationDetector.setPrefilter(true);
+
+        // case : the options give a detector the same settings, and are removed from the arguments.
+        List<String> arguments = new ArrayList<>(Arrays.asList("work", "partition-0.names", "partition-0.duplicates"));
+        arguments.addAll(PartitionedNameDuplicationDetector.getDetectorOptions(nameDuplicationDetector));
+
+        NameDuplicationDetector workerDetector = new NameDuplicationDetector();
+        PartitionedNameDuplicationDetector.setDetectorOptions(arguments, workerDetector);
+
+        Assert.assertEquals("Arguments are not correct", Arrays.asList("work", "partition-0.names", "partition-0.duplicates"), arguments);
+        Assert.assertEquals("Distance threshold is not correct", DistanceThreshold.byLength(1, 8), workerDetector.getDistanceThreshold());
+        Assert.assertEquals("Cache size is not correct", 0, workerDetector.getNeighbourhoodCacheSize());
+        Assert.assertEquals("Phonetic encoding is not correct", PhoneticEncoding.COLOGNE, workerDetector.getPhoneticEncoding());
+        Assert.assertTrue("Prefilter is not set", workerDetector.isPrefilter());
+
+        // case : the default settings, a threshold of distance zero included.
+        arguments = PartitionedNameDuplicationDetector.getDetectorOptions(new NameDuplicationDetector());
+        workerDetector = new NameDuplicationDetector();
+        workerDetector.setDistanceThreshold(DistanceThreshold.fixed(0));
+        PartitionedNameDuplicationDetector.setDetectorOptions(arguments, workerDetector);
+
+        Assert.assertTrue("Arguments are not removed", arguments.isEmpty());
+        Assert.assertEquals("Default distance threshold is not correct", DistanceThreshold.DISTANCE_ONE, workerDetector.getDistanceThreshold());
+        Assert.assertNull("Default phonetic encoding is not correct", workerDetector.getPhoneticEncoding());
+        Assert.assertFalse("Default prefilter is not correct", workerDetector.isPrefilter());
+
+        workerDetector.setDistanceThreshold(DistanceThreshold.fixed(0));
+        arguments = PartitionedNameDuplicationDetector.getDetectorOptions(workerDetector);
+        PartitionedNameDuplicationDetector.setDetectorOptions(arguments, nameDuplicationDetector);
+        Assert.assertEquals("Zero distance threshold is not correct", DistanceThreshold.fixed(0), nameDuplicationDetector.getDistanceThreshold());
+    }
+
+    private List<Pair<String, String>> checkDuplicatesPartitioned(int partitions) throws IOException {
+
+        Path directory = temporaryFolder.newFolder().toPath();
+        partitionedDetector.split(inputFile, directory, partitions);
+
+        for (int i = 0; i < partitions; i++)
+            partitionedDetector.work(PartitionedNameDuplicationDetector.partitionFile(directory, i),
+                    PartitionedNameDuplicationDetector.resultFile(directory, i));
+
+        final List<Pair<String, String>> duplicates = new ArrayList<>();
+        partitionedDetector.merge(directory, partitions, new DuplicateSink() {
+            @Override
+            public void accept(Pair<String, String> duplicate) {
+                duplicates.add(duplicate);
+            }
+        });
+
+        return duplicates;
+    }
+
+    private void assertSameDuplicates(List<Pair<String, String>> expected, List<Pair<String, String>> actual) {
+
+        Assert.assertEquals("Number of duplicates differs", expected.size(), actual.size());
+
+        Iterator<Pair<String, String>> actualIterator = actual.iterator();
+        for (Pair<String, String> expectedPair : expected) {
+
+            Pair<String, String> actualPair = actualIterator.next();
+            Assert.assertEquals("Duplicate differs", expectedPair.getL(), actualPair.getL());
+            Assert.assertEquals("Matched name differs", expectedPair.getR(), actualPair.getR());
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package no.companybook;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestPhoneticKeys {
+
+    @Test(expected = NullPointerException.class)
+    public void testNullException() {
+
+        PhoneticKeys.consonantKey(null);
+    }
+
+    @Test
+    public void testConsonantKey() {
+
+        Assert.assertEquals("Key is not correct", "32", PhoneticKeys.consonantKey("Gates"));
+
+        // case : vowels, doubled letters, letters of the same class and the first letter do not count.
+        Assert.assertEquals("Misspelled vowel key is not correct", "32", PhoneticKeys.consonantKey("Gatos"));
+        Assert.assertEquals("Doubled letter key is not correct", "32", PhoneticKeys.consonantKey("Gattes"));
+        Assert.assertEquals("Same class key is not correct", "32", PhoneticKeys.consonantKey("Gatez"));
+        Assert.assertEquals("First letter key is not correct", "32", PhoneticKeys.consonantKey("Yates"));
+        Assert.assertEquals("Skipped letter key is not correct", "32", PhoneticKeys.consonantKey("Ghates"));
+
+        // case : vowels separate consonants of the same class.
+        Assert.assertEquals("Separated consonants key is not correct", "225", PhoneticKeys.consonantKey("Jaxsasen"));
+
+        Assert.assertEquals("Empty key is not correct", "", PhoneticKeys.consonantKey(""));
+        Assert.assertEquals("Single letter key is not correct", "", PhoneticKeys.consonantKey("A"));
+    }
+
+    @Test
+    public void testCologneKey() {
+
+        // case : the reference examples of the Kölner Phonetik.
+        Assert.assertEquals("Key is not correct", "65752682", PhoneticKeys.cologneKey("Müller-Lüdenscheidt"));
+        Assert.assertEquals("Key is not correct", "3412", PhoneticKeys.cologneKey("Wikipedia"));
+        Assert.assertEquals("Key is not correct", "17863", PhoneticKeys.cologneKey("Breschnew"));
+
+        // case : sound-alike spellings of Nordic last names.
+        Assert.assertEquals("Doubled letter key is not correct", PhoneticKeys.cologneKey("Hansen"), PhoneticKeys.cologneKey("Hanssen"));
+        Assert.assertEquals("Same sound key is not correct", PhoneticKeys.cologneKey("Hansen"), PhoneticKeys.cologneKey("Hanzen"));
+        Assert.assertEquals("First letter key is not correct", PhoneticKeys.cologneKey("Christensen"), PhoneticKeys.cologneKey("Kristensen"));
+        Assert.assertEquals("Nordic vowel key is not correct", "05822", PhoneticKeys.cologneKey("Ølstad"));
+
+        Assert.assertNotEquals("Other sound key is not correct", PhoneticKeys.cologneKey("Gates"), PhoneticKeys.cologneKey("Gales"));
+        Assert.assertEquals("Empty key is not correct", "", PhoneticKeys.cologneKey(""));
+    }
+}
@@ -0,0 +1,67 @@
+package no.companybook;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class TestPhoneticNameIndex {
+
+    private PhoneticNameIndex nameIndex;
+
+
+    @Before
+    public void setUp() {
+        nameIndex = new PhoneticNameIndex(new InMemoryNameIndex(), PhoneticEncoding.COLOGNE);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testPhoneticCandidatesNullException() {
+
+        nameIndex.getPhoneticCandidates(null);
+    }
+
+    @Test
+    public void testPhoneticCandidates() {
+
+        for (String lastName : new String[]{"Hanzen", "Hansen", "Gates", "Hanssen"})
+            nameIndex.addLastName(lastName);
+
+        // case : the sound-alikes of a last name, indexed or not, in lexicographic order.
+        Assert.assertEquals("Wrong candidates", Arrays.asList("Hansen", "Hanssen", "Hanzen"), nameIndex.getPhoneticCandidates("Hanssen"));
+        Assert.assertEquals("Wrong candidates", Arrays.asList("Hansen", "Hanssen", "Hanzen"), nameIndex.getPhoneticCandidates("Hanszen"));
+        Assert.assertEquals("Wrong candidates", Collections.emptyList(), nameIndex.getPhoneticCandidates("Gales"));
+
+        Assert.assertTrue("Last names are not passed on", nameIndex.getLastNameCandidates("Hansen").contains("Hanssen"));
+    }
+
+    @Test
+    public void testRemoveLastName() {
+
+        // case : a last name leaves its code once every accepted name carrying it is removed.
+        nameIndex.addLastName("Hansen");
+        nameIndex.addLastName("Hansen");
+        nameIndex.addLastName("Hanzen");
+
+        nameIndex.removeLastName("Hansen");
+        Assert.assertEquals("Wrong candidates", Arrays.asList("Hansen", "Hanzen"), nameIndex.getPhoneticCandidates("Hansen"));
+
+        nameIndex.removeLastName("Hansen");
+        Assert.assertEquals("Wrong candidates", Collections.singletonList("Hanzen"), nameIndex.getPhoneticCandidates("Hansen"));
+    }
+
+    @Test
+    public void testWrapsIndexedLastNames() {
+
+        InMemoryNameIndex wrapped = new InMemoryNameIndex();
+        wrapped.addLastName("Christensen");
+        wrapped.addLastName("Christensen");
+
+        // case : the last names of the wrapped index are grouped, with their counts.
+        nameIndex = new PhoneticNameIndex(wrapped, PhoneticEncoding.COLOGNE);
+        nameIndex.removeLastName("Christensen");
+        Assert.assertEquals("Wrong candidates", Collections.singletonList("Christensen"), nameIndex.getPhoneticCandidates("Kristensen"));
+    }
+}
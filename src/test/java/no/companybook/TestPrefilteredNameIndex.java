@@ -0,0 +1,58 @@
+package no.companybook;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPrefilteredNameIndex {
+
+    private PrefilteredNameIndex nameIndex;
+    private NameTokenizer tokenizer;
+
+
+    @Before
+    public void setUp() {
+        nameIndex = new PrefilteredNameIndex(new InMemoryNameIndex());
+        tokenizer = new NameTokenizer();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testMayHaveBlockedNameNearNullException() {
+
+        nameIndex.mayHaveBlockedNameNear(null);
+    }
+
+    @Test
+    public void testMayHaveBlockedNameNear() {
+
+        nameIndex.addBlockedName(tokenizer.blockingKey(7, "Gates"), "Bill Gates");
+
+        // case : the key itself, and a replaced, deleted, inserted and swapped char.
+        for (String lastName : new String[]{"Gates", "Gatez", "Gats", "Gaates", "Gaets"})
+            Assert.assertTrue("Prefilter rejects " + lastName, nameIndex.mayHaveBlockedNameNear(tokenizer.blockingKey(7, lastName)));
+
+        // case : another first name block or a last name two edits away.
+        Assert.assertFalse("Prefilter passes another block", nameIndex.mayHaveBlockedNameNear(tokenizer.blockingKey(8, "Gates")));
+        Assert.assertFalse("Prefilter passes a distant last name", nameIndex.mayHaveBlockedNameNear(tokenizer.blockingKey(7, "Jobs")));
+
+        Assert.assertEquals("Blocked name is not passed on", "Bill Gates", nameIndex.getBlockedName(tokenizer.blockingKey(7, "Gates")));
+    }
+
+    @Test
+    public void testNoFalseNegativesWhenGrowing() {
+
+        // many more keys than the initial capacity, and an index built before the prefilter wraps it.
+        InMemoryNameIndex wrapped = new InMemoryNameIndex();
+        for (int i = 0; i < 1000; i++)
+            wrapped.addBlockedName(tokenizer.blockingKey(i, "Hansen" + i), "Name" + i);
+
+        nameIndex = new PrefilteredNameIndex(wrapped);
+        for (int i = 1000; i < 5000; i++)
+            nameIndex.addBlockedName(tokenizer.blockingKey(i, "Hansen" + i), "Name" + i);
+
+        for (int i = 0; i < 5000; i++) {
+            Assert.assertTrue("Prefilter rejects a registered key", nameIndex.mayHaveBlockedNameNear(tokenizer.blockingKey(i, "Hansen" + i)));
+            Assert.assertTrue("Prefilter rejects a deletion", nameIndex.mayHaveBlockedNameNear(tokenizer.blockingKey(i, "Hanen" + i)));
+        }
+    }
+}
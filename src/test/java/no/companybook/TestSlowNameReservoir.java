@@ -0,0 +1,52 @@
+package no.companybook;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class TestSlowNameReservoir {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCapacityIllegalArgumentException() {
+
+        new SlowNameReservoir(0, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThresholdIllegalArgumentException() {
+
+        new SlowNameReservoir(1, -1);
+    }
+
+    @Test
+    public void testKeepsSlowestNames() {
+
+        SlowNameReservoir reservoir = new SlowNameReservoir(3, 0);
+        for (int i = 0; i < 100; i++)
+            reservoir.record("Name" + i, DetectorStage.IDENTICAL, (i * 37) % 100);
+
+        // case : the three slowest of the durations 0 .. 99, the slowest first.
+        List<SlowNameReservoir.SlowName> slowNames = reservoir.getSlowNames();
+        Assert.assertEquals("Wrong number of slow names", 3, slowNames.size());
+        Assert.assertEquals("Wrong slowest duration", 99, slowNames.get(0).getDurationNanos());
+        Assert.assertEquals("Wrong duration", 98, slowNames.get(1).getDurationNanos());
+        Assert.assertEquals("Wrong duration", 97, slowNames.get(2).getDurationNanos());
+
+        reservoir.reset();
+        Assert.assertTrue("Reservoir is not empty", reservoir.getSlowNames().isEmpty());
+    }
+
+    @Test
+    public void testThreshold() {
+
+        SlowNameReservoir reservoir = new SlowNameReservoir(10, 1000);
+        reservoir.record("Bill Gates", DetectorStage.IDENTICAL, 999);
+        reservoir.record("Steve Ballmer", DetectorStage.COMBINATIONS, 1000);
+
+        List<SlowNameReservoir.SlowName> slowNames = reservoir.getSlowNames();
+        Assert.assertEquals("Name below the threshold is kept", 1, slowNames.size());
+        Assert.assertEquals("Wrong slow name", "Steve Ballmer", slowNames.get(0).getName());
+        Assert.assertEquals("Wrong stage", DetectorStage.COMBINATIONS, slowNames.get(0).getStage());
+    }
+}
@@ -0,0 +1,126 @@
+package no.companybook;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+public class TestSortingNameDuplicationDetector {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private NameDuplicationDetector nameDuplicationDetector;
+    private List<String> inputNames;
+    private Path inputFile;
+
+
+    @Before
+    public void setUp() throws IOException {
+
+        nameDuplicationDetector = new NameDuplicationDetector();
+        inputNames = FileUtils.readLines(new File(getClass().getClassLoader().getResource("data/names.input").getFile()), "UTF-8");
+        inputFile = new File(getClass().getClassLoader().getResource("data/names.input").getFile()).toPath();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRunSizeIllegalArgumentException() {
+
+        new SortingNameDuplicationDetector(nameDuplicationDetector, 0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testCheckDuplicatesNullException() throws IOException {
+
+        new SortingNameDuplicationDetector().checkDuplicates((Iterator<String>) null, temporaryFolder.getRoot().toPath(), null);
+    }
+
+    @Test
+    public void testCheckDuplicates() throws IOException {
+
+        List<String> names = Arrays.asList("Steve Jobs Ballmer", "Bill Gates", "Steve Ballmer", "Gates Bill",
+                "Bill Henry Gates", "Steve Ballmer", "Bill Gates");
+        List<Pair<String, String>> duplicates = checkDuplicatesSorted(names, 2);
+
+        // case : a name with a middle name is a duplicate, but not accepted, and the keys come in sorted order.
+        Assert.assertEquals("Number of duplicates is not correct", 4, duplicates.size());
+        assertDuplicate("Steve Ballmer", "Steve Ballmer", duplicates.get(0));
+        assertDuplicate("Gates Bill", "Bill Gates", duplicates.get(1));
+        assertDuplicate("Bill Henry Gates", "Bill Gates", duplicates.get(2));
+        assertDuplicate("Bill Gates", "Bill Gates", duplicates.get(3));
+    }
+
+    @Test
+    public void testRunSizes() throws IOException {
+
+        List<Pair<String, String>> expected = checkDuplicatesSorted(inputNames, 1 << 18);
+        Assert.assertFalse("There must be duplicates", expected.isEmpty());
+
+        for (Pair<String, String> duplicate : expected)
+            Assert.assertEquals("Duplicate has another key", sortedKey(duplicate.getR()), sortedKey(duplicate.getL()));
+
+        // case : a few runs merged at once, and more runs than are merged at once.
+        for (int runSize : new int[]{100, 3})
+            assertSameDuplicates(expected, checkDuplicatesSorted(inputNames, runSize));
+    }
+
+    @Test
+    public void testCheckDuplicatesOfFile() throws IOException {
+
+        final List<Pair<String, String>> duplicates = new ArrayList<>();
+        Path directory = temporaryFolder.newFolder().toPath();
+        new SortingNameDuplicationDetector(nameDuplicationDetector, 10).checkDuplicates(inputFile, directory, new DuplicateSink() {
+            @Override
+            public void accept(Pair<String, String> duplicate) {
+                duplicates.add(duplicate);
+            }
+        });
+
+        assertSameDuplicates(checkDuplicatesSorted(inputNames, 10), duplicates);
+        Assert.assertEquals("Run files are not deleted", 0, directory.toFile().list().length);
+    }
+
+    private List<Pair<String, String>> checkDuplicatesSorted(List<String> names, int runSize) throws IOException {
+
+        final List<Pair<String, String>> duplicates = new ArrayList<>();
+        new SortingNameDuplicationDetector(nameDuplicationDetector, runSize).checkDuplicates(names.iterator(),
+                temporaryFolder.newFolder().toPath(), new DuplicateSink() {
+                    @Override
+                    public void accept(Pair<String, String> duplicate) {
+                        duplicates.add(duplicate);
+                    }
+                });
+
+        return duplicates;
+    }
+
+    private String sortedKey(String name) {
+        return nameDuplicationDetector.sortString(nameDuplicationDetector.eliminateMiddleNames(name));
+    }
+
+    private void assertDuplicate(String name, String match, Pair<String, String> duplicate) {
+
+        Assert.assertEquals("Duplicate is not correct", name, duplicate.getL());
+        Assert.assertEquals("Matched name is not correct", match, duplicate.getR());
+    }
+
+    private void assertSameDuplicates(List<Pair<String, String>> expected, List<Pair<String, String>> actual) {
+
+        Assert.assertEquals("Number of duplicates differs", expected.size(), actual.size());
+
+        Iterator<Pair<String, String>> actualIterator = actual.iterator();
+        for (Pair<String, String> expectedPair : expected) {
+
+            Pair<String, String> actualPair = actualIterator.next();
+            Assert.assertEquals("Duplicate differs", expectedPair.getL(), actualPair.getL());
+            Assert.assertEquals("Matched name differs", expectedPair.getR(), actualPair.getR());
+        }
+    }
+}